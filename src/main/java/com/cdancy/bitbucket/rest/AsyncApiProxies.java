@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Builds the async twins of the feature APIs on top of their blocking
+ * counterparts. Every method of a twin maps onto the blocking method with
+ * the same name and parameter types, which is invoked on the executor, so
+ * requests go through the very same endpoint definitions, fallbacks and
+ * error handling.
+ *
+ * <p>Each request runs within a child of the {@link Deadline} bound to the
+ * submitting thread, if any. Cancelling the returned future cancels that
+ * child, which aborts the request if it is in flight.</p>
+ */
+public final class AsyncApiProxies {
+
+    /**
+     * Create the async twin of the given BitbucketApi.
+     *
+     * @param api the blocking api to delegate to
+     * @param executor the executor to run requests on
+     * @return BitbucketAsyncApi backed by the given api
+     */
+    public static BitbucketAsyncApi create(BitbucketApi api, ListeningExecutorService executor) {
+        return create(BitbucketAsyncApi.class, api, executor);
+    }
+
+    /**
+     * Create an async twin of the given delegate. Methods of the twin
+     * returning a ListenableFuture are run on the executor, methods returning
+     * another interface (e.g. BitbucketAsyncApi.pullRequestApi()) return the
+     * async twin of whatever the delegate returns.
+     *
+     * @param asyncType the interface of the twin
+     * @param delegate the blocking object to delegate to
+     * @param executor the executor to run requests on
+     * @return proxy implementing asyncType
+     * @throws IllegalArgumentException if a method of the twin has no counterpart on the delegate
+     */
+    public static <A> A create(Class<A> asyncType, Object delegate, ListeningExecutorService executor) {
+        checkArgument(asyncType.isInterface(), "%s is not an interface", asyncType);
+        checkNotNull(delegate, "delegate");
+        checkNotNull(executor, "executor");
+
+        ImmutableMap.Builder<Method, Method> targets = ImmutableMap.builder();
+        for (Method method : asyncType.getMethods()) {
+            try {
+                targets.put(method, delegate.getClass().getMethod(method.getName(), method.getParameterTypes()));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(asyncType.getSimpleName() + "." + method.getName()
+                        + " has no blocking counterpart on " + delegate.getClass().getName(), e);
+            }
+        }
+        return asyncType.cast(Proxy.newProxyInstance(asyncType.getClassLoader(), new Class<?>[] { asyncType },
+                new AsyncInvocationHandler(delegate, targets.build(), executor)));
+    }
+
+    private static final class AsyncInvocationHandler implements InvocationHandler {
+
+        private final Object delegate;
+        private final Map<Method, Method> targets;
+        private final ListeningExecutorService executor;
+
+        private AsyncInvocationHandler(Object delegate, Map<Method, Method> targets, ListeningExecutorService executor) {
+            this.delegate = delegate;
+            this.targets = targets;
+            this.executor = executor;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, final Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return objectMethod(proxy, method, args);
+            }
+
+            final Method target = targets.get(method);
+            if (method.getReturnType() != ListenableFuture.class) {
+                // feature api accessor, hand out the twin of what the delegate returns
+                return create(method.getReturnType(), invokeTarget(target, args), executor);
+            }
+
+            Deadline current = Deadline.current();
+            final Deadline deadline = current != null ? current.child() : Deadline.unbounded();
+            final ListenableFuture<Object> future = executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return deadline.call(new Callable<Object>() {
+                        @Override
+                        public Object call() throws Exception {
+                            try {
+                                return invokeTarget(target, args);
+                            } catch (Throwable t) {
+                                Throwables.propagateIfPossible(t, Exception.class);
+                                throw Throwables.propagate(t);
+                            }
+                        }
+                    });
+                }
+            });
+            future.addListener(new Runnable() {
+                @Override
+                public void run() {
+                    if (future.isCancelled()) {
+                        deadline.cancel();
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            return future;
+        }
+
+        private Object invokeTarget(Method target, Object[] args) throws Throwable {
+            try {
+                return target.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object objectMethod(Object proxy, Method method, Object[] args) {
+            if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+            return "async " + delegate;
+        }
+    }
+
+    private AsyncApiProxies() {
+        throw new UnsupportedOperationException("intentionally unimplemented");
+    }
+}
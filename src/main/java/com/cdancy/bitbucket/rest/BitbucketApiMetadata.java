@@ -24,6 +24,7 @@ import org.jclouds.apis.ApiMetadata;
 import org.jclouds.rest.internal.BaseHttpApiMetadata;
 
 import com.cdancy.bitbucket.rest.config.BitbucketHttpApiModule;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.google.auto.service.AutoService;
 import com.google.common.collect.ImmutableSet;
 import com.google.inject.Module;
@@ -47,8 +48,15 @@ public class BitbucketApiMetadata extends BaseHttpApiMetadata<BitbucketApi> {
         super(builder);
     }
 
+    /**
+     * Default properties of the Bitbucket api, which leave the
+     * ConditionalRequestCache off.
+     *
+     * @return the default Properties
+     */
     public static Properties defaultProperties() {
         Properties properties = BaseHttpApiMetadata.defaultProperties();
+        properties.setProperty(ConditionalRequestCache.MAX_BYTES, "0");
         return properties;
     }
 
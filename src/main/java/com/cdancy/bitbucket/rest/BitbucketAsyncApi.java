@@ -0,0 +1,51 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import com.cdancy.bitbucket.rest.features.BranchAsyncApi;
+import com.cdancy.bitbucket.rest.features.CommentsAsyncApi;
+import com.cdancy.bitbucket.rest.features.CommitsAsyncApi;
+import com.cdancy.bitbucket.rest.features.ProjectAsyncApi;
+import com.cdancy.bitbucket.rest.features.PullRequestAsyncApi;
+import com.cdancy.bitbucket.rest.features.RepositoryAsyncApi;
+import com.cdancy.bitbucket.rest.features.SystemAsyncApi;
+import com.cdancy.bitbucket.rest.features.TagAsyncApi;
+
+/**
+ * Asynchronous counterpart of {@link BitbucketApi}. Instances are had from
+ * {@link BitbucketClient#async()} or {@link AsyncApiProxies#create(BitbucketApi,
+ * com.google.common.util.concurrent.ListeningExecutorService)}.
+ */
+public interface BitbucketAsyncApi {
+
+    BranchAsyncApi branchApi();
+
+    CommentsAsyncApi commentsApi();
+
+    CommitsAsyncApi commitsApi();
+
+    ProjectAsyncApi projectApi();
+
+    PullRequestAsyncApi pullRequestApi();
+
+    RepositoryAsyncApi repositoryApi();
+
+    SystemAsyncApi systemApi();
+
+    TagAsyncApi tagApi();
+}
@@ -17,25 +17,49 @@
 
 package com.cdancy.bitbucket.rest;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.Constants;
 import org.jclouds.ContextBuilder;
+import org.jclouds.concurrent.config.ExecutorServiceModule;
 import org.jclouds.javax.annotation.Nullable;
 
-public final class BitbucketClient {
+import com.cdancy.bitbucket.rest.config.ConnectionPoolSettings;
+import com.cdancy.bitbucket.rest.config.ConnectionStats;
+import com.cdancy.bitbucket.rest.config.ExecutionMode;
+import com.cdancy.bitbucket.rest.config.HttpClientDriverModule;
+import com.cdancy.bitbucket.rest.config.HttpDriver;
+import com.cdancy.bitbucket.rest.config.JavaUrlDriverModule;
+import com.cdancy.bitbucket.rest.config.PooledOkHttpDriverModule;
+import com.cdancy.bitbucket.rest.config.VirtualThreads;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.cdancy.bitbucket.rest.paging.PageSizeController;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.inject.Module;
+
+public final class BitbucketClient implements Closeable {
 
     private static final String[] ENDPOINT_PROPERTIES = { "bitbucket.rest.endpoint", "bitbucketRestEndpoint", "BITBUCKET_REST_ENDPOINT" };
     private static final String[] CREDENTIALS_PROPERTIES = { "bitbucket.rest.credentials", "bitbucketRestCredentials", "BITBUCKET_REST_CREDENTIALS" };
-    private final String endPoint;
+    private final BitbucketClientFactory factory;
     private final String credentials;
+    private final boolean ownsFactory;
     private final BitbucketApi bitbucketApi;
+    private BitbucketAsyncApi bitbucketAsyncApi;
 
     /**
      * Create an BitbucketClient. We will query system properties and environment
      * variables for the endPoint and credentials.
      */
     public BitbucketClient() {
-        this.endPoint = initEndPoint();
-        this.credentials = initCredentials();
-        this.bitbucketApi = createApi(this.endPoint(), this.credentials());
+        this(new Builder());
     }
 
     /**
@@ -44,9 +68,7 @@ public final class BitbucketClient {
      * @param endPoint url of Bitbucket instance
      */
     public BitbucketClient(@Nullable final String endPoint) {
-        this.endPoint = endPoint != null ? endPoint : initEndPoint();
-        this.credentials = initCredentials();
-        this.bitbucketApi = createApi(this.endPoint(), this.credentials());
+        this(new Builder().endPoint(endPoint));
     }
 
     /**
@@ -56,9 +78,22 @@ public final class BitbucketClient {
      * @param credentials the optional credentials for the etcd instance
      */
     public BitbucketClient(@Nullable final String endPoint, @Nullable final String credentials) {
-        this.endPoint = endPoint != null ? endPoint : initEndPoint();
+        this(new Builder().endPoint(endPoint).credentials(credentials));
+    }
+
+    private BitbucketClient(final Builder builder) {
+        this(builder.buildFactory(), builder.credentials, true);
+    }
+
+    BitbucketClient(final BitbucketClientFactory factory, @Nullable final String credentials) {
+        this(factory, credentials, false);
+    }
+
+    private BitbucketClient(final BitbucketClientFactory factory, @Nullable final String credentials, final boolean ownsFactory) {
+        this.factory = factory;
         this.credentials = credentials != null ? credentials : initCredentials();
-        this.bitbucketApi = createApi(this.endPoint(), this.credentials());
+        this.ownsFactory = ownsFactory;
+        this.bitbucketApi = factory.api(this.credentials);
     }
 
     /**
@@ -66,7 +101,7 @@ public final class BitbucketClient {
      *
      * @return found endpoint or null
      */
-    private String initEndPoint() {
+    private static String initEndPoint() {
         String possibleValue = retrivePropertyValue(ENDPOINT_PROPERTIES);
         return possibleValue != null ? possibleValue : "http://127.0.0.1:7990";
     }
@@ -76,7 +111,7 @@ public final class BitbucketClient {
      *
      * @return found credentials or empty String
      */
-    private String initCredentials() {
+    private static String initCredentials() {
         String possibleValue = retrivePropertyValue(CREDENTIALS_PROPERTIES);
         return possibleValue != null ? possibleValue : "";
     }
@@ -92,7 +127,7 @@ public final class BitbucketClient {
      * @param keys list of keys to search
      * @return the first value found from list of keys
      */
-    private String retrivePropertyValue(String... keys) {
+    private static String retrivePropertyValue(String... keys) {
         String value = null;
         for (String possibleKey : keys) {
             value = retrivePropertyValue(possibleKey);
@@ -109,13 +144,13 @@ public final class BitbucketClient {
      * @param key the key to search for
      * @return the value of key or null if not found
      */
-    private String retrivePropertyValue(String key) {
+    private static String retrivePropertyValue(String key) {
         String value = System.getProperty(key);
         return value != null ? value : System.getenv(key);
     }
 
     public String endPoint() {
-        return endPoint;
+        return factory.endPoint();
     }
 
     public String credentials() {
@@ -125,6 +160,171 @@ public final class BitbucketClient {
     public BitbucketApi api() {
         return bitbucketApi;
     }
+
+    /**
+     * Execution mode in effect for this client. This is
+     * {@link ExecutionMode#PLATFORM_THREADS} if virtual threads were asked for
+     * but are not supported by the running JDK.
+     *
+     * @return the ExecutionMode of this client
+     */
+    public ExecutionMode executionMode() {
+        return factory.executionMode();
+    }
+
+    /**
+     * HTTP driver in effect for this client. This is
+     * {@link HttpDriver#URL_CONNECTION} if another driver was asked for but
+     * is not supported by the running JDK.
+     *
+     * @return the HttpDriver of this client
+     */
+    public HttpDriver httpDriver() {
+        return factory.httpDriver();
+    }
+
+    /**
+     * Opened versus reused connections of this client. Only
+     * {@link HttpDriver#OKHTTP} feeds these counters.
+     *
+     * @return the ConnectionStats of this client
+     */
+    public ConnectionStats connectionStats() {
+        return factory.connectionStats();
+    }
+
+    /**
+     * Coalescer of identical in-flight GET requests made through this
+     * client, unless turned off through the Builder.
+     *
+     * @return the RequestCoalescer of this client
+     */
+    public RequestCoalescer requestCoalescer() {
+        return factory.requestCoalescer();
+    }
+
+    /**
+     * Cache answering GET requests revalidated with If-None-Match or
+     * If-Modified-Since, off unless given a budget through the Builder.
+     *
+     * @return the ConditionalRequestCache of this client
+     */
+    public ConditionalRequestCache conditionalRequestCache() {
+        return factory.conditionalRequestCache();
+    }
+
+    /**
+     * Cache of commits looked up by full id, if one was configured through
+     * the Builder.
+     *
+     * @return the CommitCache of this client, or null
+     */
+    @Nullable
+    public CommitCache commitCache() {
+        return factory.commitCache();
+    }
+
+    /**
+     * Cache of projects, repositories, default branches and branch models,
+     * if one was given to the Builder.
+     *
+     * @return the MetadataCache of this client, or null
+     */
+    @Nullable
+    public MetadataCache metadataCache() {
+        return factory.metadataCache();
+    }
+
+    /**
+     * Cache of the changes of pull requests, if a DiskCache was given to the
+     * Builder.
+     *
+     * @return the PullRequestChangesCache of this client, or null
+     */
+    @Nullable
+    public PullRequestChangesCache pullRequestChangesCache() {
+        return factory.pullRequestChangesCache();
+    }
+
+    /**
+     * Cache of lookups which found nothing, if one was given to the Builder.
+     *
+     * @return the NotFoundCache of this client, or null
+     */
+    @Nullable
+    public NotFoundCache notFoundCache() {
+        return factory.notFoundCache();
+    }
+
+    /**
+     * Async twin of {@link #api()}. In {@link ExecutionMode#VIRTUAL_THREADS}
+     * every request runs on a virtual thread of its own, otherwise requests
+     * are run on a pool of daemon threads which is created on first use,
+     * bounded by {@link Builder#userThreads(int)} and shared by all callers,
+     * and by all clients of the same factory.
+     *
+     * @return the BitbucketAsyncApi of this client
+     */
+    public synchronized BitbucketAsyncApi async() {
+        if (bitbucketAsyncApi == null) {
+            bitbucketAsyncApi = AsyncApiProxies.create(bitbucketApi, factory.asyncExecutor());
+        }
+        return bitbucketAsyncApi;
+    }
+
+    /**
+     * Async twin of {@link #api()} running requests on the given executor.
+     *
+     * @param executor the executor to run requests on
+     * @return new BitbucketAsyncApi
+     */
+    public BitbucketAsyncApi async(ListeningExecutorService executor) {
+        return AsyncApiProxies.create(bitbucketApi, executor);
+    }
+
+    /**
+     * Executor serializing mutations per pull request while running those of
+     * different pull requests concurrently on the async executor. Shared by
+     * all clients of the same factory, so mutations made under different
+     * credentials are serialized as well.
+     *
+     * @return the PullRequestMutationExecutor of this client
+     */
+    public PullRequestMutationExecutor pullRequestMutations() {
+        return factory.pullRequestMutations();
+    }
+
+    /**
+     * Factory this client was handed out by. A client built through the
+     * Builder has a factory of its own.
+     *
+     * @return the BitbucketClientFactory of this client
+     */
+    public BitbucketClientFactory factory() {
+        return factory;
+    }
+
+    /**
+     * Page sizes learned for each paged endpoint over the lifetime of this client.
+     *
+     * @return the PageSizeController shared by this client
+     */
+    public PageSizeController pageSizes() {
+        return factory.pageSizes();
+    }
+
+    /**
+     * Close this client. A client built through the Builder has a factory of
+     * its own, which is closed along with its connections and async executor.
+     * A client handed out by a shared factory leaves it open, close the
+     * factory instead.
+     */
+    @Override
+    public void close() {
+        if (ownsFactory) {
+            factory.close();
+        }
+    }
     
     public static Builder builder() {
         return new Builder();
@@ -134,6 +334,22 @@ public final class BitbucketClient {
         
         private String endPoint;
         private String credentials;
+        private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+        private HttpDriver httpDriver = HttpDriver.URL_CONNECTION;
+        private Integer connectTimeoutMillis;
+        private Integer socketTimeoutMillis;
+        private Integer userThreads;
+        private int maxConnectionsPerHost;
+        private int maxIdleConnections = ConnectionPoolSettings.DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long keepAliveMillis = ConnectionPoolSettings.DEFAULT_KEEP_ALIVE_MILLIS;
+        private boolean poolConfigured;
+        private boolean coalesceRequests = true;
+        private long conditionalRequestCacheBytes;
+        private long commitCacheSize;
+        private boolean commitCacheOffHeap;
+        private MetadataCache metadataCache;
+        private DiskCache diskCache;
+        private NotFoundCache notFoundCache;
 
         public Builder endPoint(String endPoint) {
             this.endPoint = endPoint;
@@ -145,8 +361,273 @@ public final class BitbucketClient {
             return this;
         }
 
+        /**
+         * Kind of threads to run jclouds command execution and the async apis
+         * on. Virtual threads are only used if the running JDK supports them.
+         *
+         * @param executionMode the ExecutionMode to use
+         * @return this Builder
+         */
+        public Builder executionMode(ExecutionMode executionMode) {
+            this.executionMode = checkNotNull(executionMode, "executionMode");
+            return this;
+        }
+
+        /**
+         * HTTP driver to send requests through. Drivers not supported by the
+         * running JDK fall back to {@link HttpDriver#URL_CONNECTION}.
+         *
+         * @param httpDriver the HttpDriver to use
+         * @return this Builder
+         */
+        public Builder httpDriver(HttpDriver httpDriver) {
+            this.httpDriver = checkNotNull(httpDriver, "httpDriver");
+            return this;
+        }
+
+        /**
+         * How long to wait for a connection to be established.
+         *
+         * @param timeout the timeout, 0 meaning no timeout
+         * @param unit the unit of timeout
+         * @return this Builder
+         */
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = toMillis(timeout, unit, "connectTimeout");
+            return this;
+        }
+
+        /**
+         * How long to wait for data on an established connection.
+         *
+         * @param timeout the timeout, 0 meaning no timeout
+         * @param unit the unit of timeout
+         * @return this Builder
+         */
+        public Builder socketTimeout(long timeout, TimeUnit unit) {
+            this.socketTimeoutMillis = toMillis(timeout, unit, "socketTimeout");
+            return this;
+        }
+
+        /**
+         * Size of the jclouds user thread pool, which also bounds the pool
+         * the async apis run on. Both default to 50 threads.
+         *
+         * @param userThreads number of threads, 0 meaning unbounded
+         * @return this Builder
+         */
+        public Builder userThreads(int userThreads) {
+            checkArgument(userThreads >= 0, "userThreads must be >= 0");
+            this.userThreads = userThreads;
+            return this;
+        }
+
+        /**
+         * Cap on the connections in use to a single host at any one time,
+         * further requests wait for one to be released. Requires
+         * {@link HttpDriver#OKHTTP}.
+         *
+         * @param maxConnectionsPerHost number of connections, 0 meaning no limit
+         * @return this Builder
+         */
+        public Builder maxConnectionsPerHost(int maxConnectionsPerHost) {
+            checkArgument(maxConnectionsPerHost >= 0, "maxConnectionsPerHost must be >= 0");
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            this.poolConfigured = true;
+            return this;
+        }
+
+        /**
+         * Number of idle connections kept alive for reuse. Requires
+         * {@link HttpDriver#OKHTTP}.
+         *
+         * @param maxIdleConnections number of connections
+         * @return this Builder
+         */
+        public Builder maxIdleConnections(int maxIdleConnections) {
+            checkArgument(maxIdleConnections >= 0, "maxIdleConnections must be >= 0");
+            this.maxIdleConnections = maxIdleConnections;
+            this.poolConfigured = true;
+            return this;
+        }
+
+        /**
+         * How long an idle connection is kept alive for reuse. Requires
+         * {@link HttpDriver#OKHTTP}.
+         *
+         * @param keepAlive the keep-alive duration
+         * @param unit the unit of keepAlive
+         * @return this Builder
+         */
+        public Builder keepAlive(long keepAlive, TimeUnit unit) {
+            checkArgument(keepAlive >= 0, "keepAlive must be >= 0");
+            this.keepAliveMillis = checkNotNull(unit, "unit").toMillis(keepAlive);
+            this.poolConfigured = true;
+            return this;
+        }
+
+        /**
+         * Whether identical GET requests in flight at the same time are sent
+         * only once, with all callers sharing the result (see
+         * {@link RequestCoalescer}). On by default.
+         *
+         * @param coalesceRequests true to coalesce requests
+         * @return this Builder
+         */
+        public Builder coalesceRequests(boolean coalesceRequests) {
+            this.coalesceRequests = coalesceRequests;
+            return this;
+        }
+
+        /**
+         * Keep the bodies of GET responses carrying an ETag or Last-Modified
+         * validator, up to the given number of bytes, and revalidate them
+         * on the next identical request instead of downloading them again
+         * (see {@link ConditionalRequestCache}). Off by default.
+         *
+         * @param maxBytes byte budget of the cache, 0 meaning off
+         * @return this Builder
+         */
+        public Builder conditionalRequestCache(long maxBytes) {
+            checkArgument(maxBytes >= 0, "maxBytes must be >= 0");
+            this.conditionalRequestCacheBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * Cache commits looked up by their full id, which never change (see
+         * {@link CommitCache}). Off by default.
+         *
+         * @param size number of commits to hold on the heap, or of bytes to hold off the heap
+         * @param offHeap true to hold commits in direct buffers outside of the heap
+         * @return this Builder
+         */
+        public Builder commitCache(long size, boolean offHeap) {
+            checkArgument(size >= 0, "size must be >= 0");
+            this.commitCacheSize = size;
+            this.commitCacheOffHeap = offHeap;
+            return this;
+        }
+
+        /**
+         * Read projects, repositories, default branches and branch models
+         * through the given cache. Off by default.
+         *
+         * @param metadataCache the MetadataCache to read through, or null for none
+         * @return this Builder
+         */
+        public Builder metadataCache(@Nullable MetadataCache metadataCache) {
+            this.metadataCache = metadataCache;
+            return this;
+        }
+
+        /**
+         * Keep commits looked up by full id, and the changes of pull requests
+         * looked up through {@link BitbucketClient#pullRequestChangesCache()},
+         * in the given DiskCache so that they survive a restart. Commits are
+         * held on the heap as well, as many as given to
+         * {@link #commitCache(long, boolean)} or a thousand. The DiskCache is
+         * not closed along with the client. Off by default.
+         *
+         * @param diskCache the DiskCache to keep responses in, or null for none
+         * @return this Builder
+         */
+        public Builder diskCache(@Nullable DiskCache diskCache) {
+            this.diskCache = diskCache;
+            return this;
+        }
+
+        /**
+         * Answer repeated lookups of repositories, tags, pull requests and
+         * the like which do not exist from the given cache for a short while
+         * (see {@link NotFoundCache}). Off by default.
+         *
+         * @param notFoundCache the NotFoundCache to keep lookups which found nothing in, or null for none
+         * @return this Builder
+         */
+        public Builder notFoundCache(@Nullable NotFoundCache notFoundCache) {
+            this.notFoundCache = notFoundCache;
+            return this;
+        }
+
+        /**
+         * Create the BitbucketClient.
+         *
+         * @return new BitbucketClient
+         * @throws IllegalStateException if pool settings were given for a driver other than OKHTTP,
+         *     or an off-heap commit cache along with a DiskCache
+         */
         public BitbucketClient build() {
-            return new BitbucketClient(endPoint, credentials);
+            return new BitbucketClient(this);
+        }
+
+        /**
+         * Create a BitbucketClientFactory handing out clients for any number
+         * of credentials which share a single context built from the settings
+         * of this Builder. The credentials given to this Builder, if any,
+         * are the ones clients fall back to.
+         *
+         * @return new BitbucketClientFactory
+         * @throws IllegalStateException if pool settings were given for a driver other than OKHTTP,
+         *     or an off-heap commit cache along with a DiskCache
+         */
+        public BitbucketClientFactory buildFactory() {
+            checkState(!poolConfigured || httpDriver == HttpDriver.OKHTTP,
+                    "connection pool settings require HttpDriver.OKHTTP but driver is %s", httpDriver);
+            checkState(diskCache == null || !commitCacheOffHeap || commitCacheSize == 0,
+                    "an off-heap commit cache cannot be backed by a DiskCache");
+            ImmutableSet.Builder<Module> modules = ImmutableSet.builder();
+            ExecutionMode effectiveMode = ExecutionMode.PLATFORM_THREADS;
+            ListeningExecutorService executor = null;
+            if (executionMode == ExecutionMode.VIRTUAL_THREADS && VirtualThreads.isSupported()) {
+                effectiveMode = ExecutionMode.VIRTUAL_THREADS;
+                executor = VirtualThreads.newExecutor("bitbucket-virtual-");
+                modules.add(new ExecutorServiceModule(executor));
+            }
+            HttpDriver effectiveDriver = HttpDriver.URL_CONNECTION;
+            ConnectionStats connectionStats = new ConnectionStats();
+            if (httpDriver == HttpDriver.JAVA_NET_HTTP && httpDriver.isSupported()) {
+                effectiveDriver = HttpDriver.JAVA_NET_HTTP;
+                modules.add(new HttpClientDriverModule());
+            } else if (httpDriver == HttpDriver.OKHTTP) {
+                effectiveDriver = HttpDriver.OKHTTP;
+                modules.add(new PooledOkHttpDriverModule(poolSettings(), connectionStats));
+            } else {
+                modules.add(new JavaUrlDriverModule());
+            }
+            return new BitbucketClientFactory(endPoint != null ? endPoint : initEndPoint(),
+                    credentials != null ? credentials : initCredentials(), modules.build(), overrides(),
+                    effectiveMode, executor, userThreads, effectiveDriver, connectionStats, coalesceRequests, commitCacheSize,
+                    commitCacheOffHeap, metadataCache, diskCache, notFoundCache);
+        }
+
+        private ConnectionPoolSettings poolSettings() {
+            return ConnectionPoolSettings.create(maxConnectionsPerHost, maxIdleConnections, keepAliveMillis);
+        }
+
+        private Properties overrides() {
+            Properties overrides = new Properties();
+            if (connectTimeoutMillis != null) {
+                overrides.setProperty(Constants.PROPERTY_CONNECTION_TIMEOUT, connectTimeoutMillis.toString());
+            }
+            if (socketTimeoutMillis != null) {
+                overrides.setProperty(Constants.PROPERTY_SO_TIMEOUT, socketTimeoutMillis.toString());
+            }
+            if (userThreads != null) {
+                overrides.setProperty(Constants.PROPERTY_USER_THREADS, userThreads.toString());
+            }
+            if (maxConnectionsPerHost > 0) {
+                overrides.setProperty(Constants.PROPERTY_MAX_CONNECTIONS_PER_HOST, Integer.toString(maxConnectionsPerHost));
+            }
+            overrides.setProperty(ConditionalRequestCache.MAX_BYTES, Long.toString(conditionalRequestCacheBytes));
+            return overrides;
+        }
+
+        private static Integer toMillis(long timeout, TimeUnit unit, String name) {
+            checkArgument(timeout >= 0, "%s must be >= 0", name);
+            long millis = checkNotNull(unit, "unit").toMillis(timeout);
+            checkArgument(millis <= Integer.MAX_VALUE, "%s is too large", name);
+            return (int) millis;
         }
     }
 }
@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.domain.Credentials;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.json.Json;
+import org.jclouds.rest.annotations.Delegate;
+import org.jclouds.util.Closeables2;
+
+import com.cdancy.bitbucket.rest.config.ConnectionStats;
+import com.cdancy.bitbucket.rest.config.ExecutionMode;
+import com.cdancy.bitbucket.rest.config.HttpDriver;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.cdancy.bitbucket.rest.filters.TenantCredentials;
+import com.cdancy.bitbucket.rest.paging.PageSizeController;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Injector;
+import com.google.inject.Module;
+
+/**
+ * Hands out BitbucketClients for any number of credentials which all share a
+ * single jclouds context: one Guice injector, one HTTP transport and
+ * connection pool, one set of executors and one JSON setup. The clients only
+ * differ in the credentials their requests are authenticated with, so adding
+ * a tenant costs a couple of small proxies rather than threads and memory.
+ *
+ * <pre>
+ * BitbucketClientFactory factory = BitbucketClient.builder().endPoint("http://127.0.0.1:7990")
+ *         .httpDriver(HttpDriver.OKHTTP).buildFactory();
+ * BitbucketClient teamA = factory.client("team-a:secret");
+ * BitbucketClient teamB = factory.client("team-b:secret");
+ * ...
+ * factory.close();
+ * </pre>
+ *
+ * <p>Everything configured on the Builder, as well as the page sizes learned,
+ * the request coalescer, the caches and the connection stats, is shared by
+ * all clients. Neither coalescing nor cached responses ever cross
+ * credentials. Closing the api of a single client
+ * has no effect, the shared context lives until the factory is closed.</p>
+ */
+public final class BitbucketClientFactory implements Closeable {
+
+    // commits held on the heap in front of a DiskCache when no size was given
+    private static final long DEFAULT_HEAP_COMMITS = 1000;
+
+    // async threads when the Builder was given no userThreads, same as the jclouds default
+    private static final int DEFAULT_ASYNC_THREADS = 50;
+
+    // idle async threads are let go after this many seconds
+    private static final long ASYNC_KEEP_ALIVE_SECONDS = 60;
+
+    private final String endPoint;
+    private final String defaultCredentials;
+    private final ExecutionMode executionMode;
+    private final ListeningExecutorService executor;
+    private final int asyncThreads;
+    private final HttpDriver httpDriver;
+    private final ConnectionStats connectionStats;
+    private final boolean coalesceRequests;
+    private final CommitCache commitCache;
+    private final MetadataCache metadataCache;
+    private final PullRequestChangesCache pullRequestChangesCache;
+    private final NotFoundCache notFoundCache;
+    private final PageSizeController pageSizes = new PageSizeController();
+    private final RequestCoalescer requestCoalescer = new RequestCoalescer();
+    private final BitbucketApi sharedApi;
+    private final TenantCredentials tenantCredentials;
+    private final ConditionalRequestCache conditionalRequestCache;
+    private ListeningExecutorService asyncExecutor;
+    private PullRequestMutationExecutor pullRequestMutations;
+    private boolean closed;
+
+    BitbucketClientFactory(String endPoint, String defaultCredentials, Iterable<Module> modules, Properties overrides,
+                           ExecutionMode executionMode, @Nullable ListeningExecutorService executor,
+                           @Nullable Integer userThreads, HttpDriver httpDriver,
+                           ConnectionStats connectionStats, boolean coalesceRequests, long commitCacheSize,
+                           boolean commitCacheOffHeap, @Nullable MetadataCache metadataCache, @Nullable DiskCache diskCache,
+                           @Nullable NotFoundCache notFoundCache) {
+        this.endPoint = checkNotNull(endPoint, "endPoint");
+        this.defaultCredentials = checkNotNull(defaultCredentials, "defaultCredentials");
+        this.executionMode = executionMode;
+        this.executor = executor;
+        this.asyncThreads = userThreads != null ? userThreads : DEFAULT_ASYNC_THREADS;
+        this.httpDriver = httpDriver;
+        this.connectionStats = connectionStats;
+        this.coalesceRequests = coalesceRequests;
+        this.metadataCache = metadataCache;
+        this.notFoundCache = notFoundCache;
+
+        Injector injector = ContextBuilder.newBuilder(new BitbucketApiMetadata.Builder().build()).endpoint(endPoint)
+                .credentials("N/A", defaultCredentials).modules(modules).overrides(overrides).buildInjector();
+        this.sharedApi = injector.getInstance(BitbucketApi.class);
+        this.tenantCredentials = injector.getInstance(TenantCredentials.class);
+        this.conditionalRequestCache = injector.getInstance(ConditionalRequestCache.class);
+        Json json = injector.getInstance(Json.class);
+        if (diskCache != null) {
+            this.commitCache = CommitCache.onDisk(commitCacheSize > 0 ? commitCacheSize : DEFAULT_HEAP_COMMITS, diskCache, json);
+            this.pullRequestChangesCache = new PullRequestChangesCache(diskCache, json);
+        } else {
+            if (commitCacheSize == 0) {
+                this.commitCache = null;
+            } else {
+                this.commitCache = commitCacheOffHeap ? CommitCache.offHeap(commitCacheSize, json) : CommitCache.onHeap(commitCacheSize);
+            }
+            this.pullRequestChangesCache = null;
+        }
+    }
+
+    /**
+     * Client sending its requests with the given credentials over the shared
+     * context. Clients are cheap, there is no need to hold on to them.
+     *
+     * @param credentials colon delimited or base64 encoded username and password, empty for anonymous access
+     * @return new BitbucketClient
+     * @throws IllegalStateException if this factory has been closed
+     */
+    public BitbucketClient client(String credentials) {
+        checkNotNull(credentials, "credentials");
+        synchronized (this) {
+            checkState(!closed, "factory has been closed");
+        }
+        return new BitbucketClient(this, credentials);
+    }
+
+    BitbucketApi api(String credentials) {
+        BitbucketApi api = sharedApi;
+        if (!credentials.equals(defaultCredentials)) {
+            api = BitbucketApi.class.cast(Proxy.newProxyInstance(BitbucketApi.class.getClassLoader(),
+                    new Class<?>[] { BitbucketApi.class }, new TenantInvocationHandler(sharedApi, new Credentials("N/A", credentials))));
+        }
+        if (coalesceRequests) {
+            api = requestCoalescer.wrap(api, credentials);
+        }
+        if (commitCache != null) {
+            api = commitCache.wrap(api, credentials);
+        }
+        if (metadataCache != null) {
+            api = metadataCache.wrap(api, credentials);
+        }
+        return notFoundCache != null ? notFoundCache.wrap(api, credentials) : api;
+    }
+
+    public String endPoint() {
+        return endPoint;
+    }
+
+    public ExecutionMode executionMode() {
+        return executionMode;
+    }
+
+    public HttpDriver httpDriver() {
+        return httpDriver;
+    }
+
+    public ConnectionStats connectionStats() {
+        return connectionStats;
+    }
+
+    public RequestCoalescer requestCoalescer() {
+        return requestCoalescer;
+    }
+
+    public ConditionalRequestCache conditionalRequestCache() {
+        return conditionalRequestCache;
+    }
+
+    @Nullable
+    public CommitCache commitCache() {
+        return commitCache;
+    }
+
+    @Nullable
+    public MetadataCache metadataCache() {
+        return metadataCache;
+    }
+
+    @Nullable
+    public PullRequestChangesCache pullRequestChangesCache() {
+        return pullRequestChangesCache;
+    }
+
+    @Nullable
+    public NotFoundCache notFoundCache() {
+        return notFoundCache;
+    }
+
+    public PageSizeController pageSizes() {
+        return pageSizes;
+    }
+
+    /**
+     * Executor the async apis of all clients run their requests on. In
+     * {@link ExecutionMode#VIRTUAL_THREADS} this is the virtual thread
+     * executor, otherwise a pool of daemon threads created on first use and
+     * bounded by the userThreads given to the Builder. Requests beyond the
+     * bound wait in line.
+     *
+     * @return the shared async executor
+     */
+    synchronized ListeningExecutorService asyncExecutor() {
+        if (asyncExecutor == null) {
+            asyncExecutor = executor != null ? executor : MoreExecutors.listeningDecorator(newAsyncPool());
+        }
+        return asyncExecutor;
+    }
+
+    private ExecutorService newAsyncPool() {
+        ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("bitbucket-async-%d").setDaemon(true).build();
+        if (asyncThreads == 0) {
+            // explicitly asked for no bound, as with the jclouds user threads
+            return Executors.newCachedThreadPool(threads);
+        }
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(asyncThreads, asyncThreads, ASYNC_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threads);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Mutation executor shared by all clients, running on the async executor.
+     *
+     * @return the shared PullRequestMutationExecutor
+     */
+    synchronized PullRequestMutationExecutor pullRequestMutations() {
+        if (pullRequestMutations == null) {
+            pullRequestMutations = new PullRequestMutationExecutor(asyncExecutor());
+        }
+        return pullRequestMutations;
+    }
+
+    /**
+     * Close the shared context, after which none of the clients handed out
+     * can send requests anymore.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+            }
+        }
+        Closeables2.closeQuietly(sharedApi);
+    }
+
+    /**
+     * Binds the credentials of a tenant to the calling thread for the
+     * duration of every call made through the shared api.
+     */
+    private final class TenantInvocationHandler implements InvocationHandler {
+
+        private final Object delegate;
+        private final Credentials credentials;
+        private final ConcurrentMap<Method, Object> featureApis = Maps.newConcurrentMap();
+
+        private TenantInvocationHandler(Object delegate, Credentials credentials) {
+            this.delegate = delegate;
+            this.credentials = credentials;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "tenant of " + delegate;
+            }
+
+            if (method.getDeclaringClass() == Closeable.class) {
+                // the shared context is closed through the factory only
+                return null;
+            }
+
+            if (method.isAnnotationPresent(Delegate.class)) {
+                Object featureApi = featureApis.get(method);
+                if (featureApi == null) {
+                    featureApi = Proxy.newProxyInstance(method.getReturnType().getClassLoader(),
+                            new Class<?>[] { method.getReturnType() },
+                            new TenantInvocationHandler(invokeDelegate(method, args), credentials));
+                    featureApis.putIfAbsent(method, featureApi);
+                }
+                return featureApi;
+            }
+
+            Credentials previous = tenantCredentials.bind(credentials);
+            try {
+                return invokeDelegate(method, args);
+            } finally {
+                tenantCredentials.restore(previous);
+            }
+        }
+
+        private Object invokeDelegate(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.json.Json;
+
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.features.CommitsApi;
+import com.cdancy.bitbucket.rest.utils.Utils;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of commits looked up by their full 40 character id through
+ * {@link CommitsApi#get(String, String, String, String)}. A commit id is the
+ * hash of the commit's content, so whatever is returned for a full id never
+ * changes and entries never need to be invalidated. Lookups by abbreviated
+ * id, branch or tag name can point elsewhere at any time and always go to
+ * the server, as do lookups which come back with errors.
+ *
+ * <p>The cache holds either a bounded number of commits on the heap or, to
+ * keep a large working set from burdening the garbage collector, their JSON
+ * form in direct buffers bounded by a number of bytes. Either way the least
+ * recently used commits are evicted first. Commits are kept per credential
+ * so that nobody is handed a commit of a repository they cannot read.</p>
+ *
+ * <p>A cache created through {@link #onDisk(long, DiskCache, Json)} backs
+ * its heap with a {@link DiskCache}, which answers what the heap has
+ * evicted and, as it outlives the process, what was looked up before a
+ * restart.</p>
+ *
+ * <pre>
+ * CommitCache commits = CommitCache.onHeap(10000);
+ * BitbucketApi cached = commits.wrap(api, credentials);
+ * </pre>
+ *
+ * <p>{@link BitbucketClient} does this when given a size through
+ * {@code BitbucketClient.Builder.commitCache(long, boolean)}.</p>
+ */
+public final class CommitCache {
+
+    private static final Pattern FULL_COMMIT_ID = Pattern.compile("[0-9a-fA-F]{40}");
+
+    private final Cache<CommitKey, Object> commits;
+    private final Json json;
+    private final boolean offHeap;
+    private final DiskCache disk;
+    private final AtomicLong diskHits = new AtomicLong();
+
+    private CommitCache(Cache<CommitKey, Object> commits, @Nullable Json json, boolean offHeap, @Nullable DiskCache disk) {
+        this.commits = commits;
+        this.json = json;
+        this.offHeap = offHeap;
+        this.disk = disk;
+    }
+
+    /**
+     * Create a cache holding up to the given number of commits on the heap.
+     *
+     * @param maxCommits number of commits to hold
+     * @return new CommitCache
+     */
+    public static CommitCache onHeap(long maxCommits) {
+        checkArgument(maxCommits > 0, "maxCommits must be > 0");
+        return new CommitCache(CacheBuilder.newBuilder().maximumSize(maxCommits).recordStats().<CommitKey, Object> build(),
+                null, false, null);
+    }
+
+    /**
+     * Create a cache holding commits as JSON in direct buffers, outside of
+     * the heap, up to the given number of bytes.
+     *
+     * @param maxBytes number of bytes to hold
+     * @param json the Json to read commits back with
+     * @return new CommitCache
+     */
+    public static CommitCache offHeap(long maxBytes, Json json) {
+        checkArgument(maxBytes > 0, "maxBytes must be > 0");
+        checkNotNull(json, "json");
+        Cache<CommitKey, Object> commits = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+                .weigher(new Weigher<CommitKey, Object>() {
+                    @Override
+                    public int weigh(CommitKey key, Object value) {
+                        return ((ByteBuffer) value).capacity();
+                    }
+                }).recordStats().build();
+        return new CommitCache(commits, json, true, null);
+    }
+
+    /**
+     * Create a cache holding up to the given number of commits on the heap,
+     * backed by the given DiskCache. The DiskCache is not closed by the
+     * CommitCache, and may be shared with other caches.
+     *
+     * @param maxCommits number of commits to hold on the heap
+     * @param disk the DiskCache to back the heap with
+     * @param json the Json to read commits back from disk with
+     * @return new CommitCache
+     */
+    public static CommitCache onDisk(long maxCommits, DiskCache disk, Json json) {
+        checkArgument(maxCommits > 0, "maxCommits must be > 0");
+        checkNotNull(disk, "disk");
+        checkNotNull(json, "json");
+        return new CommitCache(CacheBuilder.newBuilder().maximumSize(maxCommits).recordStats().<CommitKey, Object> build(),
+                json, false, disk);
+    }
+
+    /**
+     * Whether the given id is a full commit id, as opposed to an abbreviated
+     * one or the name of a branch or tag.
+     *
+     * @param commitId the id to check
+     * @return true if commitId is a full 40 character commit id
+     */
+    public static boolean isFullCommitId(@Nullable String commitId) {
+        return commitId != null && FULL_COMMIT_ID.matcher(commitId).matches();
+    }
+
+    /**
+     * Wrap the given api so that its commit lookups by full id are cached.
+     *
+     * @param api the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return BitbucketApi caching commits
+     */
+    public BitbucketApi wrap(final BitbucketApi api, final String credential) {
+        checkNotNull(api, "api");
+        checkNotNull(credential, "credential");
+        final CommitsApi commitsApi = wrap(api.commitsApi(), credential);
+        return BitbucketApi.class.cast(Proxy.newProxyInstance(BitbucketApi.class.getClassLoader(),
+                new Class<?>[] { BitbucketApi.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("commitsApi".equals(method.getName())) {
+                            return commitsApi;
+                        } else if ("equals".equals(method.getName()) && method.getDeclaringClass() == Object.class) {
+                            return proxy == args[0];
+                        } else if ("hashCode".equals(method.getName()) && method.getDeclaringClass() == Object.class) {
+                            return System.identityHashCode(proxy);
+                        }
+                        try {
+                            return method.invoke(api, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Wrap the given CommitsApi so that its lookups by full id are cached.
+     *
+     * @param api the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return CommitsApi caching commits
+     */
+    public CommitsApi wrap(CommitsApi api, String credential) {
+        checkNotNull(api, "api");
+        checkNotNull(credential, "credential");
+        return new CachingCommitsApi(api, credential);
+    }
+
+    /**
+     * Number of lookups by full id answered from the cache.
+     *
+     * @return number of hits
+     */
+    public long hitCount() {
+        return commits.stats().hitCount();
+    }
+
+    /**
+     * Number of lookups by full id which missed the heap but were answered
+     * from disk. These are counted as misses as well.
+     *
+     * @return number of disk hits
+     */
+    public long diskHitCount() {
+        return diskHits.get();
+    }
+
+    /**
+     * Number of lookups by full id which were not answered from the heap.
+     *
+     * @return number of misses
+     */
+    public long missCount() {
+        return commits.stats().missCount();
+    }
+
+    /**
+     * Number of commits evicted to stay within the bounds of the cache.
+     *
+     * @return number of evictions
+     */
+    public long evictionCount() {
+        return commits.stats().evictionCount();
+    }
+
+    public long size() {
+        return commits.size();
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    @Nullable
+    public DiskCache diskCache() {
+        return disk;
+    }
+
+    /**
+     * Drop all commits cached on the heap. Commits on disk are left alone.
+     */
+    public void invalidateAll() {
+        commits.invalidateAll();
+    }
+
+    private Object toCached(Commit commit) {
+        if (!offHeap) {
+            return commit;
+        }
+        byte[] bytes = Utils.toJson(commit).getBytes(Charsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private Commit fromCached(Object cached) {
+        if (!offHeap) {
+            return (Commit) cached;
+        }
+        // a view of its own, so that concurrent readers do not share a position
+        ByteBuffer buffer = ((ByteBuffer) cached).duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return json.fromJson(new String(bytes, Charsets.UTF_8), Commit.class);
+    }
+
+    /**
+     * CommitsApi answering lookups by full id from the cache.
+     */
+    private final class CachingCommitsApi implements CommitsApi {
+
+        private final CommitsApi api;
+        private final String credential;
+
+        private CachingCommitsApi(CommitsApi api, String credential) {
+            this.api = api;
+            this.credential = credential;
+        }
+
+        @Override
+        public Commit get(String project, String repo, String commitId, @Nullable String path) {
+            if (!isFullCommitId(commitId)) {
+                return api.get(project, repo, commitId, path);
+            }
+            CommitKey key = new CommitKey(credential, project, repo, commitId.toLowerCase(), path);
+            Object cached = commits.getIfPresent(key);
+            if (cached != null) {
+                return fromCached(cached);
+            }
+            byte[] stored = disk != null ? disk.get(key.diskKey()) : null;
+            if (stored != null) {
+                diskHits.incrementAndGet();
+                Commit commit = json.fromJson(new String(stored, Charsets.UTF_8), Commit.class);
+                commits.put(key, toCached(commit));
+                return commit;
+            }
+            Commit commit = api.get(project, repo, commitId, path);
+            if (commit.errors().isEmpty()) {
+                commits.put(key, toCached(commit));
+                if (disk != null) {
+                    disk.put(key.diskKey(), Utils.toJson(commit).getBytes(Charsets.UTF_8));
+                }
+            }
+            return commit;
+        }
+
+        @Override
+        public String toString() {
+            return "caching " + api;
+        }
+    }
+
+    /**
+     * Identity of a commit lookup.
+     */
+    private static final class CommitKey {
+
+        private final String credential;
+        private final String project;
+        private final String repo;
+        private final String commitId;
+        private final String path;
+        private final int hash;
+
+        private CommitKey(String credential, String project, String repo, String commitId, @Nullable String path) {
+            this.credential = credential;
+            this.project = project;
+            this.repo = repo;
+            this.commitId = commitId;
+            this.path = path;
+            this.hash = Objects.hashCode(credential, project, repo, commitId, path);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof CommitKey)) {
+                return false;
+            }
+            CommitKey that = (CommitKey) obj;
+            return credential.equals(that.credential) && Objects.equal(project, that.project)
+                    && Objects.equal(repo, that.repo) && commitId.equals(that.commitId) && Objects.equal(path, that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        // the credential itself is not written to disk
+        private String diskKey() {
+            return "commit/" + Hashing.sha256().hashString(credential, Charsets.UTF_8) + "/" + project + "/" + repo
+                    + "/" + commitId + (path != null ? "/" + path : "");
+        }
+    }
+}
@@ -0,0 +1,399 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.exception.DeadlineExceededException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Time budget, and cancellation handle, for one or more calls. Calls made
+ * through {@link #call(Callable)} have the deadline bound to the calling
+ * thread. Once it expires, or is cancelled from any thread, the requests
+ * those calls have in flight are aborted by the HTTP driver closing the
+ * underlying connection, and the calls throw a
+ * {@link DeadlineExceededException} instead of handing back a fallback
+ * value.
+ *
+ * <pre>
+ * Deadline deadline = Deadline.after(30, TimeUnit.SECONDS);
+ * ChangePage changes = deadline.call(new Callable&lt;ChangePage&gt;() {
+ *     public ChangePage call() {
+ *         return api.pullRequestApi().changes("PRJ", "my-repo", 101, null, null, null);
+ *     }
+ * });
+ * </pre>
+ *
+ * <p>A whole crawl is bounded by one budget either by walking it within a
+ * single call, or, for walks fetching pages on other threads, through
+ * {@code PageFetchers.withDeadline}. The async apis run every request
+ * within a child of the deadline current at submission, so cancelling the
+ * returned future aborts the request as well.</p>
+ *
+ * <p>Every driver of {@code HttpDriver} supports aborting requests. Contexts
+ * built without the modules BitbucketClient installs, e.g. the plain jclouds
+ * driver, still refuse to start requests once the deadline has expired.</p>
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<Scope>();
+
+    private static final Registration NOT_REGISTERED = new Registration() {
+        @Override
+        public void close() {
+        }
+    };
+
+    private final long expiresAtNanos;
+    private final boolean bounded;
+    private final Deadline parent;
+    private final Set<Scope> scopes = Sets.newHashSet();
+    private ScheduledFuture<?> timer;
+    private volatile boolean cancelled;
+
+    private Deadline(long expiresAtNanos, boolean bounded, @Nullable Deadline parent) {
+        this.expiresAtNanos = expiresAtNanos;
+        this.bounded = bounded;
+        this.parent = parent;
+    }
+
+    /**
+     * Deadline expiring after the given duration from now.
+     *
+     * @param duration the time budget
+     * @param unit the unit of duration
+     * @return new Deadline
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        checkArgument(duration >= 0, "duration must be >= 0");
+        return new Deadline(System.nanoTime() + checkNotNull(unit, "unit").toNanos(duration), true, null);
+    }
+
+    /**
+     * Deadline which never expires but can still be cancelled.
+     *
+     * @return new Deadline
+     */
+    public static Deadline unbounded() {
+        return new Deadline(0, false, null);
+    }
+
+    /**
+     * Deadline expiring, and cancelled, along with this one which can also
+     * be cancelled on its own.
+     *
+     * @return new child Deadline
+     */
+    public Deadline child() {
+        return new Deadline(expiresAtNanos, bounded, this);
+    }
+
+    /**
+     * Innermost deadline bound to the calling thread.
+     *
+     * @return the current Deadline or null if there is none
+     */
+    @Nullable
+    public static Deadline current() {
+        Scope scope = CURRENT.get();
+        return scope != null ? scope.deadline : null;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+
+    public boolean isExpired() {
+        return isCancelled() || (bounded && System.nanoTime() - expiresAtNanos >= 0);
+    }
+
+    /**
+     * Time left before this deadline expires.
+     *
+     * @param unit the unit to return the time left in
+     * @return time left, 0 once expired and Long.MAX_VALUE if unbounded
+     */
+    public long remaining(TimeUnit unit) {
+        if (isCancelled()) {
+            return 0;
+        }
+        return bounded ? unit.convert(Math.max(0, expiresAtNanos - System.nanoTime()), TimeUnit.NANOSECONDS) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Cancel this deadline, and with it all of its children, aborting
+     * requests in flight on its behalf.
+     */
+    public void cancel() {
+        cancelled = true;
+        abortScopes();
+    }
+
+    /**
+     * Run the task with this deadline bound to the calling thread, on top
+     * of any deadline already bound to it.
+     *
+     * @param task the task to run
+     * @return the result of the task
+     * @throws DeadlineExceededException if this, or an enclosing, deadline expired before or while running the task
+     * @throws Exception whatever the task throws
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        checkNotNull(task, "task");
+        Scope outer = CURRENT.get();
+        Scope scope = new Scope(this, outer);
+        if (scope.isExpired()) {
+            throw exceeded(null);
+        }
+
+        enter(scope);
+        try {
+            T result = task.call();
+            if (scope.aborted()) {
+                throw exceeded(null);
+            }
+            return result;
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            if (scope.aborted() || scope.isExpired()) {
+                throw exceeded(e);
+            }
+            throw e;
+        } finally {
+            exit(scope);
+        }
+    }
+
+    /**
+     * Register an action aborting the request the calling thread is about
+     * to send, or has in flight, with the deadlines bound to it. The action
+     * is run, on another thread, as soon as one of them expires or is
+     * cancelled, or right away if that already happened. Meant for HTTP
+     * drivers.
+     *
+     * @param abort the action aborting the request
+     * @return Registration to drop the action once the request is done with
+     */
+    public static Registration onAbort(Runnable abort) {
+        checkNotNull(abort, "abort");
+        Scope scope = CURRENT.get();
+        return scope != null ? scope.register(abort) : NOT_REGISTERED;
+    }
+
+    /**
+     * Check whether the deadlines bound to the calling thread still allow
+     * sending a request. Meant for HTTP drivers.
+     *
+     * @throws DeadlineExceededException if one of them has expired or been cancelled
+     */
+    public static void checkCurrent() {
+        Scope scope = CURRENT.get();
+        if (scope != null && scope.isExpired()) {
+            scope.abort();
+            throw exceeded(null);
+        }
+    }
+
+    /**
+     * Time left before the first of the deadlines bound to the calling
+     * thread expires.
+     *
+     * @param unit the unit to return the time left in
+     * @return time left, Long.MAX_VALUE if there is no bounded deadline
+     */
+    public static long currentRemaining(TimeUnit unit) {
+        long remaining = Long.MAX_VALUE;
+        for (Scope scope = CURRENT.get(); scope != null; scope = scope.outer) {
+            remaining = Math.min(remaining, scope.deadline.remaining(unit));
+        }
+        return remaining;
+    }
+
+    private static DeadlineExceededException exceeded(@Nullable Throwable cause) {
+        return new DeadlineExceededException("deadline exceeded", cause);
+    }
+
+    private void enter(Scope scope) {
+        if (scope.outer != null) {
+            scope.outer.inner = scope;
+        }
+        CURRENT.set(scope);
+        for (Deadline deadline = this; deadline != null; deadline = deadline.parent) {
+            deadline.addScope(scope);
+        }
+    }
+
+    private void exit(Scope scope) {
+        for (Deadline deadline = this; deadline != null; deadline = deadline.parent) {
+            deadline.removeScope(scope);
+        }
+        if (scope.outer != null) {
+            scope.outer.inner = null;
+            CURRENT.set(scope.outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    private void addScope(Scope scope) {
+        boolean abort;
+        synchronized (this) {
+            scopes.add(scope);
+            abort = cancelled;
+            if (!abort && bounded && timer == null) {
+                timer = Timer.INSTANCE.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        abortScopes();
+                    }
+                }, expiresAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (abort) {
+            scope.abort();
+        }
+    }
+
+    private void removeScope(Scope scope) {
+        synchronized (this) {
+            scopes.remove(scope);
+            if (scopes.isEmpty() && timer != null) {
+                timer.cancel(false);
+                timer = null;
+            }
+        }
+    }
+
+    private void abortScopes() {
+        List<Scope> active;
+        synchronized (this) {
+            active = ImmutableList.copyOf(scopes);
+        }
+        for (Scope scope : active) {
+            scope.abort();
+        }
+    }
+
+    /**
+     * Handle on an abort action registered through {@link #onAbort(Runnable)}.
+     */
+    public interface Registration extends Closeable {
+
+        /**
+         * Drop the abort action, the request is done with.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * A single call made within a deadline. Scopes of one thread nest, an
+     * aborted scope aborts the scopes nested within it as well.
+     */
+    private static final class Scope {
+
+        private final Deadline deadline;
+        private final Scope outer;
+        private final List<Runnable> aborts = Lists.newArrayList();
+        private volatile Scope inner;
+        private boolean aborted;
+
+        private Scope(Deadline deadline, @Nullable Scope outer) {
+            this.deadline = deadline;
+            this.outer = outer;
+        }
+
+        private boolean isExpired() {
+            return deadline.isExpired() || (outer != null && outer.isExpired());
+        }
+
+        private synchronized boolean aborted() {
+            return aborted;
+        }
+
+        private Registration register(final Runnable abort) {
+            synchronized (this) {
+                if (!aborted) {
+                    aborts.add(abort);
+                    return new Registration() {
+                        @Override
+                        public void close() {
+                            synchronized (Scope.this) {
+                                aborts.remove(abort);
+                            }
+                        }
+                    };
+                }
+            }
+            abort.run();
+            return NOT_REGISTERED;
+        }
+
+        private void abort() {
+            List<Runnable> pending;
+            synchronized (this) {
+                aborted = true;
+                pending = ImmutableList.copyOf(aborts);
+                aborts.clear();
+            }
+            for (Runnable abort : pending) {
+                try {
+                    abort.run();
+                } catch (RuntimeException e) {
+                    // the request is being torn down either way
+                }
+            }
+            Scope nested = inner;
+            if (nested != null) {
+                nested.abort();
+            }
+        }
+    }
+
+    /**
+     * Shared daemon thread firing expired deadlines.
+     */
+    private static final class Timer {
+
+        private static final ScheduledThreadPoolExecutor INSTANCE = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("bitbucket-deadline-%d").setDaemon(true).build());
+
+        static {
+            INSTANCE.setRemoveOnCancelPolicy(true);
+        }
+
+        private Timer() {
+        }
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Persistent key/value store for responses which never change, such as
+ * commits looked up by full id (see {@link CommitCache#onDisk}) or the
+ * changes of a given version of a pull request (see
+ * {@link PullRequestChangesCache}). Whatever was stored survives a restart,
+ * so a restarted process serves warm reads without going to the server.
+ *
+ * <p>Values are appended to memory-mapped segment files of a fixed size in
+ * the given directory. An index of where the latest value of each key lives
+ * is held in memory and rebuilt by scanning the segments when the store is
+ * opened. Every record carries a checksum, so a record torn by a crash is
+ * detected and everything from it onwards in its segment ignored.
+ * Overwritten and removed values are reclaimed by compaction, which copies
+ * the live values into fresh segments and deletes the old ones. Once the
+ * store would grow beyond its size even so, the oldest segment and the
+ * values in it are dropped.</p>
+ *
+ * <pre>
+ * DiskCache disk = DiskCache.open(new File("/var/cache/bitbucket"), 512 * 1024 * 1024);
+ * ...
+ * disk.close();
+ * </pre>
+ *
+ * <p>A directory is used by a single DiskCache at a time, which is enforced
+ * through a lock file. Writes are left to the operating system to flush, so
+ * they survive the process dying but not necessarily the machine.</p>
+ */
+public final class DiskCache implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+    // key length, value length (-1 for a removal) and checksum
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+    private static final Comparator<Map.Entry<String, Location>> WRITE_ORDER = new Comparator<Map.Entry<String, Location>>() {
+        @Override
+        public int compare(Map.Entry<String, Location> left, Map.Entry<String, Location> right) {
+            int segment = Integer.compare(left.getValue().segment, right.getValue().segment);
+            return segment != 0 ? segment : Integer.compare(left.getValue().offset, right.getValue().offset);
+        }
+    };
+
+    private final File directory;
+    private final long maxBytes;
+    private final int segmentBytes;
+    private final RandomAccessFile lockFile;
+    private final FileLock lock;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+    private final Map<String, Location> index = Maps.newHashMap();
+    private long deadBytes;
+    private long hitCount;
+    private long missCount;
+    private long compactionCount;
+    private boolean closed;
+
+    private DiskCache(File directory, long maxBytes, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.lockFile = new RandomAccessFile(new File(directory, "lock"), "rw");
+        FileLock acquired = null;
+        try {
+            acquired = tryLock(lockFile);
+            checkState(acquired != null, "%s is in use by another DiskCache", directory);
+            this.lock = acquired;
+            load();
+        } catch (IOException e) {
+            closeAll(acquired);
+            throw e;
+        } catch (RuntimeException e) {
+            closeAll(acquired);
+            throw e;
+        }
+    }
+
+    /**
+     * Open the store in the given directory, creating it if need be, with
+     * segments of {@link #DEFAULT_SEGMENT_BYTES}.
+     *
+     * @param directory the directory to keep the segment files in
+     * @param maxBytes how large the segment files may grow in total
+     * @return the opened DiskCache
+     * @throws IOException if the directory cannot be read or written
+     */
+    public static DiskCache open(File directory, long maxBytes) throws IOException {
+        return open(directory, maxBytes, (int) Math.min(DEFAULT_SEGMENT_BYTES, maxBytes));
+    }
+
+    /**
+     * Open the store in the given directory, creating it if need be.
+     *
+     * @param directory the directory to keep the segment files in
+     * @param maxBytes how large the segment files may grow in total
+     * @param segmentBytes size of each segment file, which also bounds the size of a single value
+     * @return the opened DiskCache
+     * @throws IOException if the directory cannot be read or written
+     * @throws IllegalStateException if the directory is in use by another DiskCache
+     */
+    public static DiskCache open(File directory, long maxBytes, int segmentBytes) throws IOException {
+        checkNotNull(directory, "directory");
+        checkArgument(segmentBytes > HEADER_BYTES, "segmentBytes must be > %s", HEADER_BYTES);
+        checkArgument(maxBytes >= segmentBytes, "maxBytes must be >= segmentBytes");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("could not create " + directory);
+        }
+        return new DiskCache(directory, maxBytes, segmentBytes);
+    }
+
+    /**
+     * Value stored under the given key.
+     *
+     * @param key the key
+     * @return the value, or null if there is none
+     */
+    @Nullable
+    public synchronized byte[] get(String key) {
+        checkNotNull(key, "key");
+        checkState(!closed, "closed");
+        Location location = index.get(key);
+        if (location == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        ByteBuffer buffer = segments.get(location.segment).buffer.duplicate();
+        buffer.position(location.offset + HEADER_BYTES + location.keyLength);
+        byte[] value = new byte[location.valueLength];
+        buffer.get(value);
+        return value;
+    }
+
+    /**
+     * Store a value under the given key, replacing whatever was stored
+     * under it. Values larger than a segment are not stored.
+     *
+     * @param key the key
+     * @param value the value
+     * @return true if the value was stored
+     */
+    public synchronized boolean put(String key, byte[] value) {
+        checkArgument(key != null && !key.isEmpty(), "key must not be empty");
+        checkNotNull(value, "value");
+        checkState(!closed, "closed");
+        byte[] keyBytes = key.getBytes(Charsets.UTF_8);
+        if ((long) HEADER_BYTES + keyBytes.length + value.length > segmentBytes) {
+            return false;
+        }
+        try {
+            append(key, keyBytes, value);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the value stored under the given key, if any.
+     *
+     * @param key the key
+     */
+    public synchronized void remove(String key) {
+        checkNotNull(key, "key");
+        checkState(!closed, "closed");
+        if (!index.containsKey(key)) {
+            return;
+        }
+        try {
+            append(key, key.getBytes(Charsets.UTF_8), null);
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * Copy all live values into fresh segments and delete the old ones,
+     * reclaiming the space taken up by overwritten and removed values.
+     * Until the old segments are deleted the store takes up to twice its
+     * live size on disk.
+     *
+     * @throws IOException if writing the fresh segments fails
+     */
+    public synchronized void compact() throws IOException {
+        checkState(!closed, "closed");
+        final List<Segment> old = Lists.newArrayList(segments.values());
+        // copied in the order they were written, so that the oldest values still go first when the store is full
+        List<Map.Entry<String, Location>> live = Lists.newArrayList(Maps.newHashMap(index).entrySet());
+        Collections.sort(live, WRITE_ORDER);
+        index.clear();
+        deadBytes = 0;
+        Segment active = newSegment();
+        for (Map.Entry<String, Location> entry : live) {
+            Location location = entry.getValue();
+            ByteBuffer record = segments.get(location.segment).buffer.duplicate();
+            record.position(location.offset).limit(location.offset + location.length());
+            if (!active.fits(location.length())) {
+                active = newSegment();
+            }
+            active.buffer.position(active.writePosition);
+            active.buffer.put(record);
+            index.put(entry.getKey(), new Location(active.id, active.writePosition, location.keyLength, location.valueLength));
+            active.writePosition += location.length();
+        }
+        for (Segment segment : segments.values()) {
+            segment.buffer.force();
+        }
+        // oldest first, so that a crash in between never leaves a removal behind without what it removed
+        for (Segment segment : old) {
+            segments.remove(segment.id);
+            segment.delete();
+        }
+        compactionCount++;
+    }
+
+    /**
+     * Number of values stored.
+     *
+     * @return number of values
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Bytes taken up on disk by the segment files.
+     *
+     * @return bytes on disk
+     */
+    public synchronized long diskBytes() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.buffer.capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * Bytes taken up by overwritten and removed values, to be reclaimed by
+     * the next compaction.
+     *
+     * @return dead bytes
+     */
+    public synchronized long deadBytes() {
+        return deadBytes;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long compactionCount() {
+        return compactionCount;
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+        index.clear();
+        closeAll(lock);
+    }
+
+    @Nullable
+    private static FileLock tryLock(RandomAccessFile file) throws IOException {
+        try {
+            return file.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by this process
+            return null;
+        }
+    }
+
+    private void closeAll(@Nullable FileLock acquired) {
+        if (acquired != null) {
+            try {
+                acquired.release();
+            } catch (IOException e) {
+                // released along with the file anyway
+            }
+        }
+        Closeables2.closeQuietly(lockFile);
+    }
+
+    private void load() throws IOException {
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getName());
+            if (matcher.matches()) {
+                int id = Integer.parseInt(matcher.group(1));
+                segments.put(id, Segment.open(id, file, (int) Math.min(file.length(), Integer.MAX_VALUE)));
+            }
+        }
+        // later segments hold later writes, so replaying them in order leaves the latest value of each key
+        for (Segment segment : segments.values()) {
+            scan(segment);
+        }
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            buffer.position(position);
+            int keyLength = buffer.getInt();
+            int valueLength = buffer.getInt();
+            final long checksum = buffer.getLong();
+            if (keyLength <= 0 || valueLength < -1
+                    || (long) position + HEADER_BYTES + keyLength + Math.max(valueLength, 0) > buffer.capacity()) {
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            buffer.get(keyBytes);
+            ByteBuffer value = buffer.slice();
+            value.limit(Math.max(valueLength, 0));
+            if (checksum(keyBytes, value, valueLength) != checksum) {
+                // torn by a crash, nothing after it was written completely either
+                break;
+            }
+            Location location = new Location(segment.id, position, keyLength, valueLength);
+            index(new String(keyBytes, Charsets.UTF_8), location);
+            position += location.length();
+        }
+        segment.writePosition = position;
+    }
+
+    private void append(String key, byte[] keyBytes, @Nullable byte[] value) throws IOException {
+        int valueLength = value != null ? value.length : -1;
+        int length = HEADER_BYTES + keyBytes.length + Math.max(valueLength, 0);
+        Segment active = reserve(length);
+        ByteBuffer buffer = active.buffer;
+        // whatever a torn record left there must not pass for the key length of this one
+        buffer.putInt(active.writePosition, 0);
+        buffer.position(active.writePosition + 4);
+        buffer.putInt(valueLength);
+        buffer.putLong(checksum(keyBytes, value != null ? ByteBuffer.wrap(value) : null, valueLength));
+        buffer.put(keyBytes);
+        if (value != null) {
+            buffer.put(value);
+        }
+        // the key length goes in last, a record without one is where a scan stops
+        buffer.putInt(active.writePosition, keyBytes.length);
+        Location location = new Location(active.id, active.writePosition, keyBytes.length, valueLength);
+        active.writePosition += length;
+        index(key, location);
+    }
+
+    private void index(String key, Location location) {
+        Location previous = location.valueLength >= 0 ? index.put(key, location) : index.remove(key);
+        if (previous != null) {
+            deadBytes += previous.length();
+        }
+        if (location.valueLength < 0) {
+            deadBytes += location.length();
+        }
+    }
+
+    private Segment active() {
+        return segments.lastEntry().getValue();
+    }
+
+    // segment with room for a record of the given length, starting a new one, and making room for that, if need be
+    private Segment reserve(int length) throws IOException {
+        if (!segments.isEmpty() && active().fits(length)) {
+            return active();
+        }
+        if (diskBytes() + segmentBytes > maxBytes && deadBytes >= segmentBytes) {
+            compact();
+            if (active().fits(length)) {
+                return active();
+            }
+        }
+        while (diskBytes() + segmentBytes > maxBytes && !segments.isEmpty()) {
+            dropOldest();
+        }
+        return newSegment();
+    }
+
+    private Segment newSegment() throws IOException {
+        int id = segments.isEmpty() ? 0 : segments.lastKey() + 1;
+        Segment segment = Segment.open(id, new File(directory, "segment-" + id + ".dat"), segmentBytes);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private void dropOldest() {
+        Segment oldest = segments.remove(segments.firstKey());
+        long liveBytes = 0;
+        Iterator<Location> locations = index.values().iterator();
+        while (locations.hasNext()) {
+            Location location = locations.next();
+            if (location.segment == oldest.id) {
+                liveBytes += location.length();
+                locations.remove();
+            }
+        }
+        // whatever was written to it and is not live any more was counted as dead, and goes with it
+        deadBytes = Math.max(0, deadBytes - (oldest.writePosition - liveBytes));
+        oldest.delete();
+    }
+
+    private static long checksum(byte[] keyBytes, @Nullable ByteBuffer value, int valueLength) {
+        CRC32 crc = new CRC32();
+        crc.update(keyBytes, 0, keyBytes.length);
+        crc.update(valueLength >>> 24);
+        crc.update(valueLength >>> 16);
+        crc.update(valueLength >>> 8);
+        crc.update(valueLength);
+        if (value != null) {
+            byte[] bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            crc.update(bytes, 0, bytes.length);
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Where a record lives: its segment, offset and the lengths of its key
+     * and value.
+     */
+    private static final class Location {
+
+        private final int segment;
+        private final int offset;
+        private final int keyLength;
+        private final int valueLength;
+
+        private Location(int segment, int offset, int keyLength, int valueLength) {
+            this.segment = segment;
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.valueLength = valueLength;
+        }
+
+        private int length() {
+            return HEADER_BYTES + keyLength + Math.max(valueLength, 0);
+        }
+    }
+
+    /**
+     * A memory-mapped segment file.
+     */
+    private static final class Segment {
+
+        private final int id;
+        private final File file;
+        private final RandomAccessFile raf;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        private Segment(int id, File file, RandomAccessFile raf, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.raf = raf;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(int id, File file, int size) throws IOException {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                return new Segment(id, file, raf, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size));
+            } catch (IOException e) {
+                Closeables2.closeQuietly(raf);
+                throw e;
+            }
+        }
+
+        private boolean fits(int length) {
+            return (long) writePosition + length <= buffer.capacity();
+        }
+
+        private void close() {
+            buffer.force();
+            Closeables2.closeQuietly(raf);
+        }
+
+        private void delete() {
+            Closeables2.closeQuietly(raf);
+            if (!file.delete()) {
+                // still mapped on some platforms, the next scan of it finds its records superseded
+                file.deleteOnExit();
+            }
+        }
+    }
+}
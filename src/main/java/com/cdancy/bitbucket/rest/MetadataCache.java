@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.branch.BranchModel;
+import com.cdancy.bitbucket.rest.domain.branch.BranchPage;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.project.ProjectPage;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.domain.repository.RepositoryPage;
+import com.cdancy.bitbucket.rest.features.BranchApi;
+import com.cdancy.bitbucket.rest.features.ProjectApi;
+import com.cdancy.bitbucket.rest.features.RepositoryApi;
+import com.cdancy.bitbucket.rest.options.CreateBranch;
+import com.cdancy.bitbucket.rest.options.CreateProject;
+import com.cdancy.bitbucket.rest.options.CreateRepository;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Read-through cache of slowly changing metadata: projects, repositories,
+ * default branches and branch models. Each kind of {@link Resource} is
+ * kept for a time to live of its own and bounded in size, evicting the least
+ * recently used entries first. Only lookups which succeed are kept.
+ *
+ * <p>Mutations made through a wrapped api invalidate what they affect, for
+ * every credential: creating or deleting a project drops the project along
+ * with everything kept for its repositories, creating or deleting a
+ * repository drops the repository, its default branch and branch model,
+ * and creating, deleting or changing the default of a branch drops the
+ * default branch and branch model. Changes made elsewhere show once the
+ * time to live has passed.</p>
+ *
+ * <pre>
+ * MetadataCache metadata = MetadataCache.builder()
+ *         .timeToLive(MetadataCache.Resource.DEFAULT_BRANCH, 30, TimeUnit.SECONDS).build();
+ * BitbucketApi cached = metadata.wrap(api, credentials);
+ * </pre>
+ *
+ * <p>{@link BitbucketClient} does this when given one through
+ * {@code BitbucketClient.Builder.metadataCache(MetadataCache)}.</p>
+ */
+public final class MetadataCache {
+
+    public static final long DEFAULT_TIME_TO_LIVE_SECONDS = 300;
+    public static final long DEFAULT_MAXIMUM_SIZE = 1000;
+
+    /**
+     * Kinds of metadata kept.
+     */
+    public enum Resource {
+        PROJECT, REPOSITORY, DEFAULT_BRANCH, BRANCH_MODEL
+    }
+
+    private final Map<Resource, Cache<EntryKey, Object>> caches = new EnumMap<Resource, Cache<EntryKey, Object>>(Resource.class);
+    // bumped by every invalidation so that lookups racing with one do not keep what they read
+    private final AtomicLong generation = new AtomicLong();
+
+    private MetadataCache(Builder builder) {
+        for (Resource resource : Resource.values()) {
+            caches.put(resource, CacheBuilder.newBuilder()
+                    .expireAfterWrite(builder.timeToLiveNanos.get(resource), TimeUnit.NANOSECONDS)
+                    .maximumSize(builder.maximumSize).recordStats().<EntryKey, Object> build());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Wrap the given api so that its metadata lookups are cached and its
+     * mutations invalidate the cache.
+     *
+     * @param api the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return BitbucketApi reading metadata through this cache
+     */
+    public BitbucketApi wrap(final BitbucketApi api, String credential) {
+        checkNotNull(api, "api");
+        checkNotNull(credential, "credential");
+        final ProjectApi projectApi = new CachingProjectApi(api.projectApi(), credential);
+        final RepositoryApi repositoryApi = new CachingRepositoryApi(api.repositoryApi(), credential);
+        final BranchApi branchApi = new CachingBranchApi(api.branchApi(), credential);
+        return BitbucketApi.class.cast(Proxy.newProxyInstance(BitbucketApi.class.getClassLoader(),
+                new Class<?>[] { BitbucketApi.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("projectApi".equals(method.getName())) {
+                            return projectApi;
+                        } else if ("repositoryApi".equals(method.getName())) {
+                            return repositoryApi;
+                        } else if ("branchApi".equals(method.getName())) {
+                            return branchApi;
+                        } else if ("equals".equals(method.getName()) && method.getDeclaringClass() == Object.class) {
+                            return proxy == args[0];
+                        } else if ("hashCode".equals(method.getName()) && method.getDeclaringClass() == Object.class) {
+                            return System.identityHashCode(proxy);
+                        }
+                        try {
+                            return method.invoke(api, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    }
+                }));
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     *
+     * @return number of hits
+     */
+    public long hitCount() {
+        long hits = 0;
+        for (Cache<EntryKey, Object> cache : caches.values()) {
+            hits += cache.stats().hitCount();
+        }
+        return hits;
+    }
+
+    /**
+     * Number of lookups which went to the server.
+     *
+     * @return number of misses
+     */
+    public long missCount() {
+        long misses = 0;
+        for (Cache<EntryKey, Object> cache : caches.values()) {
+            misses += cache.stats().missCount();
+        }
+        return misses;
+    }
+
+    /**
+     * Number of entries evicted because they expired or to stay within the
+     * maximum size. Entries dropped by mutations are not counted.
+     *
+     * @return number of evictions
+     */
+    public long evictionCount() {
+        long evictions = 0;
+        for (Cache<EntryKey, Object> cache : caches.values()) {
+            evictions += cache.stats().evictionCount();
+        }
+        return evictions;
+    }
+
+    /**
+     * Hit, miss and eviction stats of a single kind of metadata.
+     *
+     * @param resource the kind of metadata
+     * @return the CacheStats of resource
+     */
+    public CacheStats stats(Resource resource) {
+        return caches.get(checkNotNull(resource, "resource")).stats();
+    }
+
+    /**
+     * Drop all kept metadata.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        for (Cache<EntryKey, Object> cache : caches.values()) {
+            cache.invalidateAll();
+        }
+    }
+
+    private <T extends ErrorsHolder> T readThrough(Resource resource, EntryKey key, Supplier<T> lookup) {
+        Cache<EntryKey, Object> cache = caches.get(resource);
+        @SuppressWarnings("unchecked")
+        T cached = (T) cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        long before = generation.get();
+        T result = lookup.get();
+        if (result.errors().isEmpty()) {
+            cache.put(key, result);
+            if (generation.get() != before) {
+                // invalidated while looking up, what was read may already be stale
+                cache.invalidate(key);
+            }
+        }
+        return result;
+    }
+
+    private void invalidate(String project, @Nullable String repo, Resource... resources) {
+        generation.incrementAndGet();
+        for (Resource resource : resources) {
+            Iterator<EntryKey> keys = caches.get(resource).asMap().keySet().iterator();
+            while (keys.hasNext()) {
+                EntryKey key = keys.next();
+                if (key.project.equalsIgnoreCase(project) && (repo == null || repo.equalsIgnoreCase(key.repo))) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * ProjectApi reading projects through the cache.
+     */
+    private final class CachingProjectApi implements ProjectApi {
+
+        private final ProjectApi api;
+        private final String credential;
+
+        private CachingProjectApi(ProjectApi api, String credential) {
+            this.api = api;
+            this.credential = credential;
+        }
+
+        @Override
+        public Project create(CreateProject createProject) {
+            try {
+                return api.create(createProject);
+            } finally {
+                invalidate(createProject.key(), null, Resource.values());
+            }
+        }
+
+        @Override
+        public Project get(final String project) {
+            return readThrough(Resource.PROJECT, new EntryKey(credential, project, null), new Supplier<Project>() {
+                @Override
+                public Project get() {
+                    return api.get(project);
+                }
+            });
+        }
+
+        @Override
+        public boolean delete(String project) {
+            try {
+                return api.delete(project);
+            } finally {
+                invalidate(project, null, Resource.values());
+            }
+        }
+
+        @Override
+        public ProjectPage list(String name, String permission, Integer start, Integer limit) {
+            return api.list(name, permission, start, limit);
+        }
+
+        @Override
+        public StreamingPage<Project> listStreaming(String name, String permission, Integer start, Integer limit) {
+            return api.listStreaming(name, permission, start, limit);
+        }
+    }
+
+    /**
+     * RepositoryApi reading repositories through the cache.
+     */
+    private final class CachingRepositoryApi implements RepositoryApi {
+
+        private final RepositoryApi api;
+        private final String credential;
+
+        private CachingRepositoryApi(RepositoryApi api, String credential) {
+            this.api = api;
+            this.credential = credential;
+        }
+
+        @Override
+        public Repository create(String project, CreateRepository createRepository) {
+            Repository created = null;
+            try {
+                created = api.create(project, createRepository);
+                return created;
+            } finally {
+                invalidate(project, createRepository.name(), Resource.REPOSITORY, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+                if (created != null && created.slug() != null) {
+                    invalidate(project, created.slug(), Resource.REPOSITORY, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+                }
+            }
+        }
+
+        @Override
+        public Repository get(final String project, final String repo) {
+            return readThrough(Resource.REPOSITORY, new EntryKey(credential, project, repo), new Supplier<Repository>() {
+                @Override
+                public Repository get() {
+                    return api.get(project, repo);
+                }
+            });
+        }
+
+        @Override
+        public boolean delete(String project, String repo) {
+            try {
+                return api.delete(project, repo);
+            } finally {
+                invalidate(project, repo, Resource.REPOSITORY, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+            }
+        }
+
+        @Override
+        public RepositoryPage list(String project, Integer start, Integer limit) {
+            return api.list(project, start, limit);
+        }
+
+        @Override
+        public StreamingPage<Repository> listStreaming(String project, Integer start, Integer limit) {
+            return api.listStreaming(project, start, limit);
+        }
+    }
+
+    /**
+     * BranchApi reading default branches and branch models through the cache.
+     */
+    private final class CachingBranchApi implements BranchApi {
+
+        private final BranchApi api;
+        private final String credential;
+
+        private CachingBranchApi(BranchApi api, String credential) {
+            this.api = api;
+            this.credential = credential;
+        }
+
+        @Override
+        public BranchPage list(String project, String repo, String base, String details, String filterText,
+                               String orderBy, Integer start, Integer limit) {
+            return api.list(project, repo, base, details, filterText, orderBy, start, limit);
+        }
+
+        @Override
+        public StreamingPage<Branch> listStreaming(String project, String repo, String base, String details,
+                                                   String filterText, String orderBy, Integer start, Integer limit) {
+            return api.listStreaming(project, repo, base, details, filterText, orderBy, start, limit);
+        }
+
+        @Override
+        public Branch create(String project, String repo, CreateBranch createBranch) {
+            try {
+                return api.create(project, repo, createBranch);
+            } finally {
+                invalidate(project, repo, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+            }
+        }
+
+        @Override
+        public boolean delete(String project, String repo, String branchPath) {
+            try {
+                return api.delete(project, repo, branchPath);
+            } finally {
+                invalidate(project, repo, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+            }
+        }
+
+        @Override
+        public boolean updateDefault(String project, String repo, String id) {
+            try {
+                return api.updateDefault(project, repo, id);
+            } finally {
+                invalidate(project, repo, Resource.DEFAULT_BRANCH, Resource.BRANCH_MODEL);
+            }
+        }
+
+        @Override
+        public Branch getDefault(final String project, final String repo) {
+            return readThrough(Resource.DEFAULT_BRANCH, new EntryKey(credential, project, repo), new Supplier<Branch>() {
+                @Override
+                public Branch get() {
+                    return api.getDefault(project, repo);
+                }
+            });
+        }
+
+        @Override
+        public BranchModel model(final String project, final String repo) {
+            return readThrough(Resource.BRANCH_MODEL, new EntryKey(credential, project, repo), new Supplier<BranchModel>() {
+                @Override
+                public BranchModel get() {
+                    return api.model(project, repo);
+                }
+            });
+        }
+    }
+
+    /**
+     * Identity of a kept entry.
+     */
+    private static final class EntryKey {
+
+        private final String credential;
+        private final String project;
+        private final String repo;
+        private final int hash;
+
+        private EntryKey(String credential, String project, @Nullable String repo) {
+            this.credential = credential;
+            this.project = checkNotNull(project, "project");
+            this.repo = repo;
+            this.hash = Objects.hashCode(credential, project, repo);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EntryKey)) {
+                return false;
+            }
+            EntryKey that = (EntryKey) obj;
+            return credential.equals(that.credential) && project.equals(that.project) && Objects.equal(repo, that.repo);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    public static final class Builder {
+
+        private final Map<Resource, Long> timeToLiveNanos = new EnumMap<Resource, Long>(Resource.class);
+        private long maximumSize = DEFAULT_MAXIMUM_SIZE;
+
+        private Builder() {
+            for (Resource resource : Resource.values()) {
+                timeToLiveNanos.put(resource, TimeUnit.SECONDS.toNanos(DEFAULT_TIME_TO_LIVE_SECONDS));
+            }
+        }
+
+        /**
+         * How long a kind of metadata is kept once read.
+         *
+         * @param resource the kind of metadata
+         * @param timeToLive the time to live, 0 meaning not to keep resource at all
+         * @param unit the unit of timeToLive
+         * @return this Builder
+         */
+        public Builder timeToLive(Resource resource, long timeToLive, TimeUnit unit) {
+            checkNotNull(resource, "resource");
+            checkArgument(timeToLive >= 0, "timeToLive must be >= 0");
+            timeToLiveNanos.put(resource, checkNotNull(unit, "unit").toNanos(timeToLive));
+            return this;
+        }
+
+        /**
+         * Number of entries kept per kind of metadata.
+         *
+         * @param maximumSize number of entries
+         * @return this Builder
+         */
+        public Builder maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0, "maximumSize must be >= 0");
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public MetadataCache build() {
+            return new MetadataCache(this);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.GET;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.rest.annotations.Delegate;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+
+/**
+ * Short-lived cache of lookups which found nothing. A {@code @GET} method
+ * whose fallback turned a not found into an error holder, such as
+ * RepositoryApi.get or PullRequestApi.get answering with a
+ * {@code NoSuch...Exception}, or into null, such as TagApi.get, is answered
+ * with that same result without a request for as long as the time to live,
+ * when called again with equal arguments under the same credential.
+ * Lookups which find something, and those failing for other reasons, are
+ * never kept.
+ *
+ * <p>Creating anything through a wrapped api, i.e. calling one of its
+ * {@code create} methods, drops what is kept for the project it is created
+ * in, or everything when creating a project, for every credential.
+ * Something created elsewhere shows once the time to live has passed.</p>
+ *
+ * <pre>
+ * NotFoundCache notFound = new NotFoundCache(10, TimeUnit.SECONDS, 10000);
+ * BitbucketApi cached = notFound.wrap(api, credentials);
+ * </pre>
+ *
+ * <p>{@link BitbucketClient} does this when given one through
+ * {@code BitbucketClient.Builder.notFoundCache(NotFoundCache)}.</p>
+ */
+public final class NotFoundCache {
+
+    public static final long DEFAULT_TIME_TO_LIVE_SECONDS = 10;
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    // stands in for null, which a Cache cannot hold
+    private static final Object ABSENT = new Object();
+
+    private final Cache<LookupKey, Object> lookups;
+    // bumped by every invalidation so that lookups racing with one do not keep what they read
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Create a cache keeping lookups which found nothing for
+     * {@link #DEFAULT_TIME_TO_LIVE_SECONDS}.
+     */
+    public NotFoundCache() {
+        this(DEFAULT_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a cache keeping lookups which found nothing for the given time.
+     *
+     * @param timeToLive how long to keep a lookup which found nothing
+     * @param unit the unit of timeToLive
+     * @param maximumSize number of lookups to keep, evicting the least recently used first
+     */
+    public NotFoundCache(long timeToLive, TimeUnit unit, long maximumSize) {
+        checkArgument(timeToLive >= 0, "timeToLive must be >= 0");
+        checkNotNull(unit, "unit");
+        checkArgument(maximumSize >= 0, "maximumSize must be >= 0");
+        this.lookups = CacheBuilder.newBuilder().expireAfterWrite(timeToLive, unit).maximumSize(maximumSize)
+                .recordStats().build();
+    }
+
+    /**
+     * Wrap the given api so that its lookups which found nothing are kept.
+     *
+     * @param api the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return BitbucketApi keeping lookups which found nothing
+     */
+    public BitbucketApi wrap(BitbucketApi api, String credential) {
+        return wrap(BitbucketApi.class, api, credential);
+    }
+
+    /**
+     * Wrap the given api, or feature api, so that its lookups which found
+     * nothing are kept. Feature apis handed out by the wrapped api are
+     * wrapped as well.
+     *
+     * @param type the interface of the api
+     * @param delegate the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return proxy implementing type
+     */
+    public <A> A wrap(Class<A> type, A delegate, String credential) {
+        checkArgument(type.isInterface(), "%s is not an interface", type);
+        checkNotNull(delegate, "delegate");
+        checkNotNull(credential, "credential");
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new NotFoundInvocationHandler(delegate, credential)));
+    }
+
+    /**
+     * Number of lookups answered from the cache.
+     *
+     * @return number of hits
+     */
+    public long hitCount() {
+        return lookups.stats().hitCount();
+    }
+
+    /**
+     * Number of lookups which went to the server, whether they found
+     * something or not.
+     *
+     * @return number of misses
+     */
+    public long missCount() {
+        return lookups.stats().missCount();
+    }
+
+    public long size() {
+        return lookups.size();
+    }
+
+    /**
+     * Drop all kept lookups.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        lookups.invalidateAll();
+    }
+
+    /**
+     * Whether the given result of a lookup means that what was looked up
+     * does not exist.
+     *
+     * @param result the result of a lookup
+     * @return true if result is null or carries a {@code NoSuch...Exception}
+     */
+    public static boolean isNotFound(@Nullable Object result) {
+        if (result == null) {
+            return true;
+        }
+        if (result instanceof ErrorsHolder) {
+            for (Error error : ((ErrorsHolder) result).errors()) {
+                String name = error.exceptionName();
+                if (name != null && name.substring(name.lastIndexOf('.') + 1).startsWith("NoSuch")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLookup(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return method.isAnnotationPresent(GET.class) && returnType != void.class && !returnType.isPrimitive()
+                && !Closeable.class.isAssignableFrom(returnType) && !Iterator.class.isAssignableFrom(returnType);
+    }
+
+    private static boolean isCreate(Method method) {
+        return !method.isAnnotationPresent(GET.class) && method.getName().startsWith("create");
+    }
+
+    private Object lookup(LookupKey key, Object delegate, Method method, Object[] args) throws Throwable {
+        Object cached = lookups.getIfPresent(key);
+        if (cached != null) {
+            return cached == ABSENT ? null : cached;
+        }
+        long before = generation.get();
+        Object result = invoke(delegate, method, args);
+        if (isNotFound(result)) {
+            lookups.put(key, result != null ? result : ABSENT);
+            if (generation.get() != before) {
+                // invalidated while looking up, what was read may already be stale
+                lookups.invalidate(key);
+            }
+        }
+        return result;
+    }
+
+    private Object create(Object delegate, Method method, Object[] args) throws Throwable {
+        try {
+            return invoke(delegate, method, args);
+        } finally {
+            // the project is the first argument of every create but that of a project
+            String project = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            invalidate(project);
+        }
+    }
+
+    private void invalidate(@Nullable String project) {
+        generation.incrementAndGet();
+        if (project == null) {
+            lookups.invalidateAll();
+            return;
+        }
+        Iterator<LookupKey> keys = lookups.asMap().keySet().iterator();
+        while (keys.hasNext()) {
+            LookupKey key = keys.next();
+            if (key.args == null || key.args.isEmpty() || !(key.args.get(0) instanceof String)
+                    || project.equalsIgnoreCase((String) key.args.get(0))) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static Object invoke(Object delegate, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class NotFoundInvocationHandler implements InvocationHandler {
+
+        private final Object delegate;
+        private final String credential;
+        private final ConcurrentMap<Method, Object> featureApis = Maps.newConcurrentMap();
+
+        private NotFoundInvocationHandler(Object delegate, String credential) {
+            this.delegate = delegate;
+            this.credential = credential;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "not found caching " + delegate;
+            }
+
+            if (method.isAnnotationPresent(Delegate.class)) {
+                Object featureApi = featureApis.get(method);
+                if (featureApi == null) {
+                    featureApi = wrapFeatureApi(method.getReturnType(), NotFoundCache.invoke(delegate, method, args));
+                    featureApis.putIfAbsent(method, featureApi);
+                }
+                return featureApi;
+            }
+
+            if (isLookup(method)) {
+                return lookup(new LookupKey(method, args, credential), delegate, method, args);
+            } else if (isCreate(method)) {
+                return create(delegate, method, args);
+            }
+            return NotFoundCache.invoke(delegate, method, args);
+        }
+
+        private <A> A wrapFeatureApi(Class<A> type, Object featureApi) {
+            return wrap(type, type.cast(featureApi), credential);
+        }
+    }
+
+    /**
+     * Identity of a lookup: the endpoint, which together with the arguments
+     * determines the resolved URL, and the credential it is sent with.
+     */
+    private static final class LookupKey {
+
+        private final Method method;
+        private final List<Object> args;
+        private final String credential;
+        private final int hash;
+
+        private LookupKey(Method method, Object[] args, String credential) {
+            this.method = method;
+            this.args = args != null ? Arrays.asList(args) : null;
+            this.credential = credential;
+            this.hash = Objects.hashCode(method, this.args, credential);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey that = (LookupKey) obj;
+            return method.equals(that.method) && Objects.equal(args, that.args) && credential.equals(that.credential);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.json.Json;
+
+import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+import com.cdancy.bitbucket.rest.utils.Utils;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+
+/**
+ * Cache of the changes of pull requests, kept in a {@link DiskCache}. The
+ * changes of a pull request only change along with its version and last
+ * update, which together with the id make up the key: a lookup for a
+ * pull request as last fetched is answered from disk, while one for a
+ * pull request which has since been rescoped goes to the server.
+ *
+ * <p>Comment counts can change without the pull request changing, so
+ * changes are always requested without them. Pages which come back with
+ * errors are not cached. Like {@link CommitCache}, changes are kept per
+ * credential.</p>
+ *
+ * <pre>
+ * PullRequestChangesCache changes = new PullRequestChangesCache(disk, json);
+ * ChangePage page = changes.changes(api.pullRequestApi(), credentials, "PRJ", "my-repo", pullRequest, 0, 100);
+ * </pre>
+ */
+public final class PullRequestChangesCache {
+
+    private final DiskCache disk;
+    private final Json json;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a cache keeping changes in the given DiskCache, which is not
+     * closed by it and may be shared with other caches.
+     *
+     * @param disk the DiskCache to keep changes in
+     * @param json the Json to read changes back with
+     */
+    public PullRequestChangesCache(DiskCache disk, Json json) {
+        this.disk = checkNotNull(disk, "disk");
+        this.json = checkNotNull(json, "json");
+    }
+
+    /**
+     * Changes of the given pull request, from disk if they were fetched
+     * for this version of it before.
+     *
+     * @param api the api to fetch changes through on a miss
+     * @param credential the credential the api sends its requests with
+     * @param project the project of the pull request
+     * @param repo the repository of the pull request
+     * @param pullRequest the pull request as last fetched
+     * @param start the start of the page
+     * @param limit the size of the page
+     * @return ChangePage of the pull request, without comment counts
+     */
+    public ChangePage changes(PullRequestApi api, String credential, String project, String repo, PullRequest pullRequest,
+            @Nullable Integer start, @Nullable Integer limit) {
+        checkNotNull(api, "api");
+        checkNotNull(credential, "credential");
+        checkNotNull(pullRequest, "pullRequest");
+        String key = "pull-request-changes/" + Hashing.sha256().hashString(credential, Charsets.UTF_8) + "/" + project
+                + "/" + repo + "/" + pullRequest.id() + "/" + pullRequest.version() + "/" + pullRequest.updatedDate()
+                + "/" + start + "/" + limit;
+        byte[] stored = disk.get(key);
+        if (stored != null) {
+            hits.incrementAndGet();
+            return json.fromJson(new String(stored, Charsets.UTF_8), ChangePage.class);
+        }
+        misses.incrementAndGet();
+        ChangePage page = api.changes(project, repo, pullRequest.id(), false, limit, start);
+        if (page.errors().isEmpty()) {
+            disk.put(key, Utils.toJson(page).getBytes(Charsets.UTF_8));
+        }
+        return page;
+    }
+
+    public long hitCount() {
+        return hits.get();
+    }
+
+    public long missCount() {
+        return misses.get();
+    }
+
+    public DiskCache diskCache() {
+        return disk;
+    }
+}
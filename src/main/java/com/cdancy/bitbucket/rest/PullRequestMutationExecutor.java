@@ -0,0 +1,409 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.features.CommentsApi;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Runs mutations of pull requests such that those on the same pull request,
+ * identified by project, repository and id, run one at a time in the order
+ * they were submitted while those on different pull requests run
+ * concurrently on the given executor. This keeps e.g. a comment delete and a
+ * merge from racing on the version of a single pull request.
+ *
+ * <p>Each pull request with work outstanding has a queue of its own which is
+ * dropped again once it runs empty, there is no lock shared between pull
+ * requests. After every mutation the queue hands the executor back, so a
+ * busy pull request does not starve the others.</p>
+ *
+ * <pre>
+ * PullRequestMutationExecutor mutations = new PullRequestMutationExecutor(executor);
+ * mutations.submit("PRJ", "my-repo", 101, new Callable&lt;Comments&gt;() { ... });
+ * ListenableFuture&lt;PullRequest&gt; merged = mutations.merge(api.pullRequestApi(), "PRJ", "my-repo", 101, version);
+ * </pre>
+ */
+public class PullRequestMutationExecutor {
+
+    private final Executor executor;
+    private final ConcurrentMap<PullRequestKey, SerialQueue> queues = Maps.newConcurrentMap();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * Create a PullRequestMutationExecutor.
+     *
+     * @param executor the executor to run mutations on
+     */
+    public PullRequestMutationExecutor(Executor executor) {
+        this.executor = checkNotNull(executor, "executor");
+    }
+
+    /**
+     * Queue a mutation of the given pull request. It runs once all mutations
+     * of the same pull request submitted before it have completed.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param mutation the mutation to run
+     * @return future result of the mutation
+     */
+    public <T> ListenableFuture<T> submit(String project, String repo, int pullRequestId, Callable<T> mutation) {
+        PullRequestKey key = new PullRequestKey(checkNotNull(project, "project"), checkNotNull(repo, "repo"), pullRequestId);
+        Task<T> task = new Task<T>(checkNotNull(mutation, "mutation"));
+        while (true) {
+            SerialQueue queue = queues.get(key);
+            if (queue == null) {
+                SerialQueue created = new SerialQueue(key);
+                queue = queues.putIfAbsent(key, created);
+                if (queue == null) {
+                    queue = created;
+                }
+            }
+            // a queue which ran empty in the meantime has been retired, start over with a fresh one
+            if (queue.offer(task)) {
+                return task.future;
+            }
+        }
+    }
+
+    /**
+     * Queue a merge of the given pull request.
+     *
+     * @param api the PullRequestApi to merge through
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param version the version of the pull request
+     * @return future merged PullRequest
+     */
+    public ListenableFuture<PullRequest> merge(final PullRequestApi api, final String project, final String repo,
+                                               final int pullRequestId, final int version) {
+        checkNotNull(api, "api");
+        return submit(project, repo, pullRequestId, new Callable<PullRequest>() {
+            @Override
+            public PullRequest call() {
+                return api.merge(project, repo, pullRequestId, version);
+            }
+        });
+    }
+
+    /**
+     * Queue a decline of the given pull request.
+     *
+     * @param api the PullRequestApi to decline through
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param version the version of the pull request
+     * @return future declined PullRequest
+     */
+    public ListenableFuture<PullRequest> decline(final PullRequestApi api, final String project, final String repo,
+                                                 final int pullRequestId, final int version) {
+        checkNotNull(api, "api");
+        return submit(project, repo, pullRequestId, new Callable<PullRequest>() {
+            @Override
+            public PullRequest call() {
+                return api.decline(project, repo, pullRequestId, version);
+            }
+        });
+    }
+
+    /**
+     * Queue a reopen of the given pull request.
+     *
+     * @param api the PullRequestApi to reopen through
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param version the version of the pull request
+     * @return future reopened PullRequest
+     */
+    public ListenableFuture<PullRequest> reopen(final PullRequestApi api, final String project, final String repo,
+                                                final int pullRequestId, final int version) {
+        checkNotNull(api, "api");
+        return submit(project, repo, pullRequestId, new Callable<PullRequest>() {
+            @Override
+            public PullRequest call() {
+                return api.reopen(project, repo, pullRequestId, version);
+            }
+        });
+    }
+
+    /**
+     * Queue the delete of a comment on the given pull request.
+     *
+     * @param api the CommentsApi to delete through
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param commentId the comment id
+     * @param version the version of the comment
+     * @return future outcome of the delete
+     */
+    public ListenableFuture<Boolean> deleteComment(final CommentsApi api, final String project, final String repo,
+                                                   final int pullRequestId, final int commentId, final int version) {
+        checkNotNull(api, "api");
+        return submit(project, repo, pullRequestId, new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return api.delete(project, repo, pullRequestId, commentId, version);
+            }
+        });
+    }
+
+    /**
+     * Number of mutations of the given pull request which are queued or
+     * running.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @return queue depth of the pull request
+     */
+    public int queueDepth(String project, String repo, int pullRequestId) {
+        SerialQueue queue = queues.get(new PullRequestKey(project, repo, pullRequestId));
+        return queue != null ? queue.depth() : 0;
+    }
+
+    /**
+     * Number of mutations, over all pull requests, which are queued or running.
+     *
+     * @return number of outstanding mutations
+     */
+    public int queuedMutations() {
+        return queued.get();
+    }
+
+    /**
+     * Number of pull requests with mutations queued or running.
+     *
+     * @return number of busy pull requests
+     */
+    public int activePullRequests() {
+        return queues.size();
+    }
+
+    /**
+     * Deepest queue of a single pull request seen so far.
+     *
+     * @return high watermark of the per pull request queue depth
+     */
+    public int maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Number of mutations, over all pull requests, which have run to
+     * completion, successfully or not, since this executor was created.
+     *
+     * @return number of completed mutations
+     */
+    public long completedMutations() {
+        return completed.get();
+    }
+
+    private void recordDepth(int depth) {
+        int max = maxQueueDepth.get();
+        while (depth > max && !maxQueueDepth.compareAndSet(max, depth)) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * Mutations of a single pull request. At most one of them is handed to
+     * the executor at any time.
+     */
+    private final class SerialQueue implements Runnable {
+
+        private final PullRequestKey key;
+        private final Queue<Task<?>> tasks = new ArrayDeque<Task<?>>();
+        // queued plus running, the running task has already been taken off the queue
+        private int depth;
+        private boolean running;
+        private boolean retired;
+
+        private SerialQueue(PullRequestKey key) {
+            this.key = key;
+        }
+
+        private boolean offer(Task<?> task) {
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                tasks.add(task);
+                queued.incrementAndGet();
+                recordDepth(++depth);
+                if (running) {
+                    return true;
+                }
+                running = true;
+            }
+            schedule();
+            return true;
+        }
+
+        private synchronized int depth() {
+            return depth;
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                failAll(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            Task<?> task;
+            synchronized (this) {
+                task = tasks.poll();
+            }
+            task.run();
+            queued.decrementAndGet();
+            completed.incrementAndGet();
+
+            final boolean more;
+            synchronized (this) {
+                depth--;
+                more = !tasks.isEmpty();
+                if (!more) {
+                    running = false;
+                    retire();
+                }
+            }
+            // only hand out the outcome once the counts and the queue are settled,
+            // whoever waits on the future must not see the mutation as still outstanding
+            task.complete();
+            if (more) {
+                // hand the thread back so other pull requests get their turn
+                schedule();
+            }
+        }
+
+        private void failAll(RejectedExecutionException cause) {
+            Queue<Task<?>> rejected;
+            synchronized (this) {
+                rejected = new ArrayDeque<Task<?>>(tasks);
+                tasks.clear();
+                depth = 0;
+                running = false;
+                retire();
+            }
+            for (Task<?> task : rejected) {
+                queued.decrementAndGet();
+                task.future.setException(cause);
+            }
+        }
+
+        // must hold the lock of this queue
+        private void retire() {
+            retired = true;
+            queues.remove(key, this);
+        }
+    }
+
+    /**
+     * A mutation along with the future of its result.
+     */
+    private static final class Task<T> {
+
+        private final Callable<T> mutation;
+        private final SettableFuture<T> future = SettableFuture.create();
+        private T result;
+        private Throwable failure;
+
+        private Task(Callable<T> mutation) {
+            this.mutation = mutation;
+        }
+
+        // runs the mutation but keeps its outcome until complete()
+        private void run() {
+            if (future.isCancelled()) {
+                return;
+            }
+            try {
+                result = mutation.call();
+            } catch (Throwable throwable) {
+                failure = throwable;
+            }
+        }
+
+        private void complete() {
+            if (failure != null) {
+                future.setException(failure);
+            } else {
+                future.set(result);
+            }
+        }
+    }
+
+    /**
+     * Identity of a pull request.
+     */
+    private static final class PullRequestKey {
+
+        private final String project;
+        private final String repo;
+        private final int pullRequestId;
+
+        private PullRequestKey(String project, String repo, int pullRequestId) {
+            this.project = project;
+            this.repo = repo;
+            this.pullRequestId = pullRequestId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof PullRequestKey)) {
+                return false;
+            }
+            PullRequestKey that = (PullRequestKey) obj;
+            return pullRequestId == that.pullRequestId && project.equals(that.project) && repo.equals(that.repo);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(project, repo, pullRequestId);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.CommentPage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.MergeStatus;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestSnapshot;
+import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureFallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Fetches {@link PullRequestSnapshot}s by issuing the pull request, changes,
+ * commits, merge status and (optionally) comments requests concurrently
+ * through the async apis and joining the results. Fetching a snapshot hence
+ * takes about as long as the slowest of these requests rather than the sum.
+ *
+ * <p>A part failing does not fail the snapshot. HTTP errors already come
+ * back as error holders from the fallbacks of the endpoints, and any other
+ * failure is turned into the same kind of error holder using
+ * {@link BitbucketFallbacks}.</p>
+ *
+ * <pre>
+ * PullRequestSnapshot snapshot = PullRequestSnapshots.fetch(client.async(), "PRJ", "my-repo", 101, null).get();
+ * if (!snapshot.isComplete()) {
+ *     ...
+ * }
+ * </pre>
+ */
+public final class PullRequestSnapshots {
+
+    /**
+     * Fetch a snapshot of the given pull request.
+     *
+     * @param api the async api to issue the requests through
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request id
+     * @param commentsPath path of the file to include comments of, or null to leave comments out
+     * @return future of the PullRequestSnapshot, which never fails
+     */
+    public static ListenableFuture<PullRequestSnapshot> fetch(BitbucketAsyncApi api, String project, String repo,
+                                                              int pullRequestId, @Nullable String commentsPath) {
+        checkNotNull(api, "api");
+        checkNotNull(project, "project");
+        checkNotNull(repo, "repo");
+
+        ImmutableList.Builder<ListenableFuture<?>> parts = ImmutableList.builder();
+        parts.add(withErrorHolder(api.pullRequestApi().get(project, repo, pullRequestId),
+                new ErrorHolder<PullRequest>() {
+                    @Override
+                    public PullRequest create(List<Error> errors) {
+                        return BitbucketFallbacks.createPullRequestFromErrors(errors);
+                    }
+                }));
+        parts.add(withErrorHolder(api.pullRequestApi().changes(project, repo, pullRequestId, null, null, null),
+                new ErrorHolder<ChangePage>() {
+                    @Override
+                    public ChangePage create(List<Error> errors) {
+                        return BitbucketFallbacks.createChangePageFromErrors(errors);
+                    }
+                }));
+        parts.add(withErrorHolder(api.pullRequestApi().commits(project, repo, pullRequestId, null, null, null),
+                new ErrorHolder<CommitPage>() {
+                    @Override
+                    public CommitPage create(List<Error> errors) {
+                        return BitbucketFallbacks.createCommitPageFromErrors(errors);
+                    }
+                }));
+        parts.add(withErrorHolder(api.pullRequestApi().canMerge(project, repo, pullRequestId),
+                new ErrorHolder<MergeStatus>() {
+                    @Override
+                    public MergeStatus create(List<Error> errors) {
+                        return BitbucketFallbacks.createMergeStatusFromErrors(errors);
+                    }
+                }));
+        if (commentsPath != null) {
+            parts.add(withErrorHolder(api.commentsApi().comments(project, repo, pullRequestId, commentsPath),
+                    new ErrorHolder<CommentPage>() {
+                        @Override
+                        public CommentPage create(List<Error> errors) {
+                            return BitbucketFallbacks.createCommentPageFromErrors(errors);
+                        }
+                    }));
+        }
+
+        // none of the parts can fail, so allAsList only completes once every one of them has
+        return Futures.transform(Futures.allAsList(parts.build()), new Function<List<Object>, PullRequestSnapshot>() {
+            @Override
+            public PullRequestSnapshot apply(List<Object> results) {
+                return PullRequestSnapshot.create((PullRequest) results.get(0), (ChangePage) results.get(1),
+                        (CommitPage) results.get(2), (MergeStatus) results.get(3),
+                        results.size() > 4 ? (CommentPage) results.get(4) : null);
+            }
+        });
+    }
+
+    private static <T> ListenableFuture<T> withErrorHolder(ListenableFuture<T> part, final ErrorHolder<T> errorHolder) {
+        return Futures.withFallback(part, new FutureFallback<T>() {
+            @Override
+            public ListenableFuture<T> create(Throwable throwable) {
+                Error error = Error.create(null, throwable.getMessage(), throwable.getClass().getName());
+                return Futures.immediateFuture(errorHolder.create(ImmutableList.of(error)));
+            }
+        });
+    }
+
+    /**
+     * Creates the error holder standing in for a part which failed.
+     */
+    private interface ErrorHolder<T> {
+        T create(List<Error> errors);
+    }
+
+    private PullRequestSnapshots() {
+        throw new UnsupportedOperationException("intentionally unimplemented");
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.ws.rs.GET;
+
+import org.jclouds.rest.annotations.Delegate;
+
+import com.cdancy.bitbucket.rest.exception.DeadlineExceededException;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Coalesces identical GET requests which are in flight at the same time.
+ * A caller issuing a request while an identical one, i.e. the same
+ * {@code @GET} method with equal arguments under the same credential, is
+ * still waiting for its response does not send a request of its own but
+ * waits for, and shares, the result of the one in flight. Once a request has
+ * completed the next identical call goes out again, nothing is cached.
+ *
+ * <p>Only {@code @GET} methods returning values are coalesced; anything
+ * returning a stream-like result such as a StreamingPage, and all methods
+ * which change state, always go out on their own. Results are shared between
+ * callers, which is safe as the domain objects are immutable. A caller
+ * waits no longer for a shared result than its own {@link Deadline}
+ * allows, and sends a request of its own if the one it joined ran out of
+ * a shorter budget.</p>
+ *
+ * <pre>
+ * RequestCoalescer coalescer = new RequestCoalescer();
+ * BitbucketApi coalesced = coalescer.wrap(api, credentials);
+ * </pre>
+ *
+ * <p>{@link BitbucketClient} does this by default, see
+ * {@code BitbucketClient.Builder.coalesceRequests(boolean)}.</p>
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentMap<RequestKey, SettableFuture<Object>> inFlight = Maps.newConcurrentMap();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Wrap the given api so that its identical in-flight GET requests are
+     * coalesced.
+     *
+     * @param api the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return BitbucketApi coalescing identical in-flight GET requests
+     */
+    public BitbucketApi wrap(BitbucketApi api, String credential) {
+        return wrap(BitbucketApi.class, api, credential);
+    }
+
+    /**
+     * Wrap the given api, or feature api, so that its identical in-flight
+     * GET requests are coalesced. Feature apis handed out by the wrapped api
+     * are wrapped as well.
+     *
+     * @param type the interface of the api
+     * @param delegate the api to wrap
+     * @param credential the credential the api sends its requests with
+     * @return proxy implementing type
+     */
+    public <A> A wrap(Class<A> type, A delegate, String credential) {
+        checkArgument(type.isInterface(), "%s is not an interface", type);
+        checkNotNull(delegate, "delegate");
+        checkNotNull(credential, "credential");
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new CoalescingInvocationHandler(delegate, credential)));
+    }
+
+    /**
+     * Number of calls which were answered by a request already in flight
+     * instead of sending one of their own.
+     *
+     * @return number of coalesced calls
+     */
+    public long requestsCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * Number of distinct GET requests currently in flight.
+     *
+     * @return number of requests in flight
+     */
+    public int requestsInFlight() {
+        return inFlight.size();
+    }
+
+    private static boolean isCoalescable(Method method) {
+        Class<?> returnType = method.getReturnType();
+        return method.isAnnotationPresent(GET.class) && returnType != void.class
+                && !Closeable.class.isAssignableFrom(returnType) && !Iterator.class.isAssignableFrom(returnType);
+    }
+
+    private Object coalesce(RequestKey key, Object delegate, Method method, Object[] args) throws Throwable {
+        SettableFuture<Object> created = SettableFuture.create();
+        SettableFuture<Object> existing = inFlight.putIfAbsent(key, created);
+        while (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return await(existing);
+            } catch (DeadlineExceededException e) {
+                // the request we joined ran out of its budget, which need not be ours
+                Deadline.checkCurrent();
+                existing = inFlight.putIfAbsent(key, created);
+            }
+        }
+
+        try {
+            Object result = invoke(delegate, method, args);
+            // a result cut short by the deadline of this caller is not shared
+            Deadline.checkCurrent();
+            inFlight.remove(key, created);
+            created.set(result);
+            return result;
+        } catch (Throwable t) {
+            inFlight.remove(key, created);
+            created.setException(t);
+            throw t;
+        }
+    }
+
+    // waits no longer than the deadlines of the calling thread allow
+    private static Object await(SettableFuture<Object> existing) throws Throwable {
+        try {
+            long remaining = Deadline.currentRemaining(TimeUnit.NANOSECONDS);
+            if (remaining == Long.MAX_VALUE) {
+                return Uninterruptibles.getUninterruptibly(existing);
+            }
+            return Uninterruptibles.getUninterruptibly(existing, remaining, TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            Deadline.checkCurrent();
+            throw new DeadlineExceededException("deadline exceeded", e);
+        }
+    }
+
+    private static Object invoke(Object delegate, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class CoalescingInvocationHandler implements InvocationHandler {
+
+        private final Object delegate;
+        private final String credential;
+        private final ConcurrentMap<Method, Object> featureApis = Maps.newConcurrentMap();
+
+        private CoalescingInvocationHandler(Object delegate, String credential) {
+            this.delegate = delegate;
+            this.credential = credential;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+                return "coalescing " + delegate;
+            }
+
+            if (method.isAnnotationPresent(Delegate.class)) {
+                Object featureApi = featureApis.get(method);
+                if (featureApi == null) {
+                    featureApi = wrapFeatureApi(method.getReturnType(), RequestCoalescer.invoke(delegate, method, args));
+                    featureApis.putIfAbsent(method, featureApi);
+                }
+                return featureApi;
+            }
+
+            if (isCoalescable(method)) {
+                return coalesce(new RequestKey(method, args, credential), delegate, method, args);
+            }
+            return RequestCoalescer.invoke(delegate, method, args);
+        }
+
+        private <A> A wrapFeatureApi(Class<A> type, Object featureApi) {
+            return wrap(type, type.cast(featureApi), credential);
+        }
+    }
+
+    /**
+     * Identity of a request: the endpoint, which together with the arguments
+     * determines the resolved URL, and the credential it is sent with.
+     */
+    private static final class RequestKey {
+
+        private final Method method;
+        private final List<Object> args;
+        private final String credential;
+        private final int hash;
+
+        private RequestKey(Method method, Object[] args, String credential) {
+            this.method = method;
+            this.args = args != null ? Arrays.asList(args) : null;
+            this.credential = credential;
+            this.hash = Objects.hashCode(method, this.args, credential);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RequestKey)) {
+                return false;
+            }
+            RequestKey that = (RequestKey) obj;
+            return method.equals(that.method) && Objects.equal(args, that.args) && credential.equals(that.credential);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
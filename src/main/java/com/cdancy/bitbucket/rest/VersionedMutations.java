@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.comment.Comments;
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.features.CommentsApi;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+
+/**
+ * Version guarded mutations using optimistic concurrency. Each mutation is
+ * first sent with the version of the last known PullRequest or Comments
+ * object, so the common case costs a single request and no GET beforehand.
+ * A pull request mutation is only retried if it failed for being out of date,
+ * with the current version the server reported, or fetched again should the
+ * server not have said. Any other failure is handed back as is. A comment
+ * delete only reports whether it succeeded, so after a failed one the comment
+ * is fetched again to see whether its version has moved on. Retries are made
+ * up to the configured number of attempts.
+ *
+ * <pre>
+ * VersionedMutations mutations = new VersionedMutations(api);
+ * PullRequest merged = mutations.merge("PRJ", "my-repo", lastKnownPullRequest);
+ * </pre>
+ *
+ * <p>Failures are reported the same way the underlying endpoints report
+ * them: as a PullRequest carrying errors, or false for a comment delete.</p>
+ */
+public class VersionedMutations {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
+    private static final String OUT_OF_DATE_EXCEPTION = "PullRequestOutOfDateException";
+
+    private final PullRequestApi pullRequestApi;
+    private final CommentsApi commentsApi;
+    private final int maxAttempts;
+    private final AtomicLong staleVersionRetries = new AtomicLong();
+
+    public VersionedMutations(BitbucketApi api) {
+        this(api, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    /**
+     * Create a VersionedMutations.
+     *
+     * @param api the BitbucketApi to mutate through
+     * @param maxAttempts how often a mutation is sent at most, including the first attempt
+     */
+    public VersionedMutations(BitbucketApi api, int maxAttempts) {
+        checkNotNull(api, "api");
+        checkArgument(maxAttempts > 0, "maxAttempts must be > 0");
+        this.pullRequestApi = api.pullRequestApi();
+        this.commentsApi = api.commentsApi();
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Merge the pull request, starting from the version of the given one.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param known the last known state of the pull request
+     * @return the merged PullRequest, or the last failure
+     */
+    public PullRequest merge(String project, String repo, PullRequest known) {
+        return mutate(Action.MERGE, project, repo, known);
+    }
+
+    /**
+     * Decline the pull request, starting from the version of the given one.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param known the last known state of the pull request
+     * @return the declined PullRequest, or the last failure
+     */
+    public PullRequest decline(String project, String repo, PullRequest known) {
+        return mutate(Action.DECLINE, project, repo, known);
+    }
+
+    /**
+     * Reopen the pull request, starting from the version of the given one.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param known the last known state of the pull request
+     * @return the reopened PullRequest, or the last failure
+     */
+    public PullRequest reopen(String project, String repo, PullRequest known) {
+        return mutate(Action.REOPEN, project, repo, known);
+    }
+
+    /**
+     * Delete the comment, starting from the version of the given one.
+     *
+     * @param project the project key
+     * @param repo the repository slug
+     * @param pullRequestId the pull request the comment was made on
+     * @param known the last known state of the comment
+     * @return true if the comment was deleted
+     */
+    public boolean deleteComment(String project, String repo, int pullRequestId, Comments known) {
+        checkNotNull(known, "known");
+        int version = known.version();
+        for (int attempt = 1; ; attempt++) {
+            if (commentsApi.delete(project, repo, pullRequestId, known.id(), version)) {
+                return true;
+            }
+            if (attempt >= maxAttempts) {
+                return false;
+            }
+            Comments current = commentsApi.get(project, repo, pullRequestId, known.id());
+            if (!current.errors().isEmpty() || current.version() == version) {
+                // gone, or failing for reasons other than a stale version
+                return false;
+            }
+            version = current.version();
+            staleVersionRetries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Number of mutations which were retried because the version they were
+     * sent with turned out to be stale.
+     *
+     * @return number of retries
+     */
+    public long staleVersionRetries() {
+        return staleVersionRetries.get();
+    }
+
+    private PullRequest mutate(Action action, String project, String repo, PullRequest known) {
+        checkNotNull(known, "known");
+        int version = known.version();
+        for (int attempt = 1; ; attempt++) {
+            PullRequest result = action.apply(pullRequestApi, project, repo, known.id(), version);
+            if (result.errors().isEmpty() || attempt >= maxAttempts) {
+                return result;
+            }
+            Error outOfDate = outOfDate(result.errors());
+            if (outOfDate == null) {
+                return result;
+            }
+            Integer current = outOfDate.currentVersion();
+            if (current == null) {
+                PullRequest refetched = pullRequestApi.get(project, repo, known.id());
+                current = refetched.errors().isEmpty() ? refetched.version() : null;
+            }
+            if (current == null || current == version) {
+                return result;
+            }
+            version = current;
+            staleVersionRetries.incrementAndGet();
+        }
+    }
+
+    @Nullable
+    private static Error outOfDate(List<Error> errors) {
+        for (Error error : errors) {
+            if (error.exceptionName() != null && error.exceptionName().endsWith(OUT_OF_DATE_EXCEPTION)) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The version guarded pull request endpoints.
+     */
+    private enum Action {
+        MERGE {
+            @Override
+            PullRequest apply(PullRequestApi api, String project, String repo, int pullRequestId, int version) {
+                return api.merge(project, repo, pullRequestId, version);
+            }
+        },
+        DECLINE {
+            @Override
+            PullRequest apply(PullRequestApi api, String project, String repo, int pullRequestId, int version) {
+                return api.decline(project, repo, pullRequestId, version);
+            }
+        },
+        REOPEN {
+            @Override
+            PullRequest apply(PullRequestApi api, String project, String repo, int pullRequestId, int version) {
+                return api.reopen(project, repo, pullRequestId, version);
+            }
+        };
+
+        abstract PullRequest apply(PullRequestApi api, String project, String repo, int pullRequestId, int version);
+    }
+}
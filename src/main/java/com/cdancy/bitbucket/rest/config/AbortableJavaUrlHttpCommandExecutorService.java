@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URI;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLContext;
+
+import org.jclouds.Constants;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpUtils;
+import org.jclouds.http.IOExceptionRetryHandler;
+import org.jclouds.http.handlers.DelegatingErrorHandler;
+import org.jclouds.http.handlers.DelegatingRetryHandler;
+import org.jclouds.http.internal.HttpWire;
+import org.jclouds.http.internal.JavaUrlHttpCommandExecutorService;
+import org.jclouds.io.ContentMetadataCodec;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+
+import com.cdancy.bitbucket.rest.Deadline;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.google.common.base.Function;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
+
+/**
+ * The default HttpURLConnection based driver of jclouds, aborting requests
+ * by disconnecting their connection once the {@link Deadline} they are sent
+ * within expires or is cancelled, and answering revalidated requests from
+ * the {@link ConditionalRequestCache}. Behaves exactly like the default
+ * driver for requests sent without a deadline and with the cache off.
+ */
+@Singleton
+public class AbortableJavaUrlHttpCommandExecutorService extends JavaUrlHttpCommandExecutorService {
+
+    private final ConditionalRequestCache conditionalRequestCache;
+    // abort actions of the connections whose response has not been handed out yet
+    private final ConcurrentMap<HttpURLConnection, Deadline.Registration> aborts = Maps.newConcurrentMap();
+
+    @Inject
+    AbortableJavaUrlHttpCommandExecutorService(HttpUtils utils, ContentMetadataCodec contentMetadataCodec,
+                                                DelegatingRetryHandler retryHandler, IOExceptionRetryHandler ioRetryHandler,
+                                                DelegatingErrorHandler errorHandler, HttpWire wire,
+                                                @Named("untrusted") HostnameVerifier verifier,
+                                                @Named("untrusted") Supplier<SSLContext> untrustedSSLContextProvider,
+                                                Function<URI, Proxy> proxyForURI,
+                                                @Named(Constants.PROPERTY_IDEMPOTENT_METHODS) String idempotentMethods,
+                                                @Named(Constants.PROPERTY_USER_AGENT) String userAgent,
+                                                ConditionalRequestCache conditionalRequestCache) {
+        super(utils, contentMetadataCodec, retryHandler, ioRetryHandler, errorHandler, wire, verifier,
+                untrustedSSLContextProvider, proxyForURI, idempotentMethods, userAgent);
+        this.conditionalRequestCache = conditionalRequestCache;
+    }
+
+    @Override
+    protected HttpURLConnection initConnection(HttpRequest request) throws IOException {
+        Deadline.checkCurrent();
+        final HttpURLConnection connection = super.initConnection(request);
+        // registered before anything is written so that sending a payload is covered as well
+        aborts.put(connection, Deadline.onAbort(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect();
+            }
+        }));
+        return connection;
+    }
+
+    @Override
+    protected HttpResponse invoke(HttpURLConnection connection) throws IOException, InterruptedException {
+        Deadline.Registration abort = aborts.remove(connection);
+        HttpResponse response;
+        try {
+            response = conditionalRequestCache.onResponse(super.invoke(connection));
+        } catch (IOException e) {
+            closeQuietly(abort);
+            throw e;
+        } catch (RuntimeException e) {
+            closeQuietly(abort);
+            throw e;
+        }
+        Payload payload = response.getPayload();
+        if (abort == null) {
+            return response;
+        } else if (payload == null) {
+            abort.close();
+            return response;
+        }
+        // the connection stays abortable until its body is done with, but no longer, as it then goes back to the
+        // keep-alive cache and on to requests of others
+        Long length = payload.getContentMetadata().getContentLength();
+        Payload releasing = Payloads.newInputStreamPayload(new ReleasingInputStream(payload.openStream(),
+                length != null ? length : -1, abort));
+        HttpUtils.copy(payload.getContentMetadata(), releasing.getContentMetadata());
+        return response.toBuilder().payload(releasing).build();
+    }
+
+    @Override
+    protected void cleanup(HttpURLConnection connection) {
+        // jclouds calls this without a connection as well
+        if (connection != null) {
+            closeQuietly(aborts.remove(connection));
+        }
+        super.cleanup(connection);
+    }
+
+    private static void closeQuietly(Deadline.Registration abort) {
+        if (abort != null) {
+            abort.close();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Connection pool settings of {@link HttpDriver#OKHTTP}.
+ */
+@AutoValue
+public abstract class ConnectionPoolSettings {
+
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 5 * 60 * 1000;
+
+    // 0 means no limit
+    public abstract int maxConnectionsPerHost();
+
+    public abstract int maxIdleConnections();
+
+    public abstract long keepAliveMillis();
+
+    ConnectionPoolSettings() {
+    }
+
+    public static ConnectionPoolSettings create(int maxConnectionsPerHost, int maxIdleConnections, long keepAliveMillis) {
+        checkArgument(maxConnectionsPerHost >= 0, "maxConnectionsPerHost must be >= 0");
+        checkArgument(maxIdleConnections >= 0, "maxIdleConnections must be >= 0");
+        checkArgument(keepAliveMillis >= 0, "keepAliveMillis must be >= 0");
+        return new AutoValue_ConnectionPoolSettings(maxConnectionsPerHost, maxIdleConnections, keepAliveMillis);
+    }
+
+    public static ConnectionPoolSettings defaults() {
+        return create(0, DEFAULT_MAX_IDLE_CONNECTIONS, DEFAULT_KEEP_ALIVE_MILLIS);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how often requests went out over a freshly opened connection as
+ * opposed to one reused from the pool. Only drivers which pool connections
+ * themselves, currently {@link HttpDriver#OKHTTP}, feed these counters.
+ */
+public final class ConnectionStats {
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    void connectionOpened() {
+        opened.incrementAndGet();
+    }
+
+    void connectionReused() {
+        reused.incrementAndGet();
+    }
+
+    public long connectionsOpened() {
+        return opened.get();
+    }
+
+    public long connectionsReused() {
+        return reused.get();
+    }
+
+    /**
+     * Share of requests which went out over a reused connection.
+     *
+     * @return value between 0 and 1, or 0 if no request was sent yet
+     */
+    public double reuseRatio() {
+        long reusedCount = reused.get();
+        long total = opened.get() + reusedCount;
+        return total == 0 ? 0 : (double) reusedCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionStats{opened=" + opened.get() + ", reused=" + reused.get() + "}";
+    }
+}
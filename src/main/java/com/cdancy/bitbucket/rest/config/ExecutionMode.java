@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+/**
+ * Kind of threads jclouds command execution, and the async apis built on
+ * top of it, run on.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Pools of ordinary platform threads, as jclouds sets up by default.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * A new virtual thread per task, on JDKs supporting them (see
+     * {@link VirtualThreads#isSupported()}). Blocking calls then only hold on
+     * to a carrier thread while they are not waiting on I/O, so thousands of
+     * them can be in flight without sizing a thread pool.
+     */
+    VIRTUAL_THREADS
+}
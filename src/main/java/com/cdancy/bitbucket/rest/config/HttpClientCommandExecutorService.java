@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import javax.net.ssl.SSLContext;
+
+import org.jclouds.Constants;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpUtils;
+import org.jclouds.http.IOExceptionRetryHandler;
+import org.jclouds.http.handlers.DelegatingErrorHandler;
+import org.jclouds.http.handlers.DelegatingRetryHandler;
+import org.jclouds.http.internal.BaseHttpCommandExecutorService;
+import org.jclouds.http.internal.HttpWire;
+import org.jclouds.io.ContentMetadataCodec;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.util.Closeables2;
+
+import com.cdancy.bitbucket.rest.Deadline;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
+
+/**
+ * HttpCommandExecutorService sending requests through a single
+ * java.net.http.HttpClient. The client negotiates HTTP/2 where the server,
+ * or a proxy in front of it, supports it, in which case concurrent requests
+ * are multiplexed over a single connection per host instead of each holding
+ * a connection of its own. Otherwise it falls back to pooled HTTP/1.1
+ * connections.
+ *
+ * <p>Requests sent within a {@link Deadline} time out along with it and are
+ * aborted, by interrupting the sending thread or closing the response body,
+ * once it is cancelled. Revalidated requests are answered from the
+ * {@link ConditionalRequestCache}.</p>
+ *
+ * <p>Installed through {@link HttpClientDriverModule}, which
+ * {@code BitbucketClient.Builder.httpDriver(HttpDriver.JAVA_NET_HTTP)} does
+ * on JDKs shipping java.net.http.</p>
+ */
+@Singleton
+public class HttpClientCommandExecutorService extends BaseHttpCommandExecutorService<Object> {
+
+    // managed by java.net.http itself, setting them is rejected
+    private static final ImmutableSet<String> RESTRICTED_HEADERS = ImmutableSet.of("connection", "content-length",
+            "expect", "host", "upgrade", "transfer-encoding");
+
+    private final Object client;
+    private final String userAgent;
+    private final ConditionalRequestCache conditionalRequestCache;
+
+    @Inject
+    HttpClientCommandExecutorService(HttpUtils utils, ContentMetadataCodec contentMetadataCodec,
+                                     DelegatingRetryHandler retryHandler, IOExceptionRetryHandler ioRetryHandler,
+                                     DelegatingErrorHandler errorHandler, HttpWire wire,
+                                     @Named("untrusted") Supplier<SSLContext> untrustedSSLContextProvider,
+                                     @Named(Constants.PROPERTY_IDEMPOTENT_METHODS) String idempotentMethods,
+                                     @Named(Constants.PROPERTY_USER_AGENT) String userAgent,
+                                     ConditionalRequestCache conditionalRequestCache) {
+        super(utils, contentMetadataCodec, retryHandler, ioRetryHandler, errorHandler, wire, idempotentMethods);
+        checkState(JavaNetHttp.isSupported(), "java.net.http is not supported by java %s",
+                System.getProperty("java.version"));
+        this.client = JavaNetHttp.newClient(utils.getConnectionTimeout(),
+                utils.trustAllCerts() ? untrustedSSLContextProvider.get() : null);
+        this.userAgent = userAgent;
+        this.conditionalRequestCache = conditionalRequestCache;
+    }
+
+    @Override
+    protected Object convert(HttpRequest request) throws IOException, InterruptedException {
+        Deadline.checkCurrent();
+        ImmutableMultimap.Builder<String, String> headers = ImmutableMultimap.builder();
+        for (Map.Entry<String, String> header : request.getHeaders().entries()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                headers.put(header);
+            }
+        }
+        if (request.getFirstHeaderOrNull("User-Agent") == null) {
+            headers.put("User-Agent", userAgent);
+        }
+
+        byte[] body = null;
+        Payload payload = request.getPayload();
+        if (payload != null) {
+            for (Map.Entry<String, String> header : contentMetadataCodec.toHeaders(payload.getContentMetadata()).entries()) {
+                if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                    headers.put(header);
+                }
+            }
+            InputStream in = payload.openStream();
+            try {
+                body = ByteStreams.toByteArray(in);
+            } finally {
+                Closeables2.closeQuietly(in);
+            }
+        } else if (!HttpRequest.NON_PAYLOAD_METHODS.contains(request.getMethod())) {
+            body = new byte[0];
+        }
+
+        int timeoutMillis = utils.getSocketOpenTimeout();
+        long remainingMillis = Deadline.currentRemaining(TimeUnit.MILLISECONDS);
+        if (remainingMillis != Long.MAX_VALUE && (timeoutMillis <= 0 || remainingMillis < timeoutMillis)) {
+            timeoutMillis = (int) Math.max(1, Math.min(remainingMillis, Integer.MAX_VALUE));
+        }
+        return JavaNetHttp.newRequest(request.getEndpoint(), request.getMethod(), headers.build(), body, timeoutMillis);
+    }
+
+    @Override
+    protected HttpResponse invoke(Object nativeRequest) throws IOException, InterruptedException {
+        SendInterrupter interrupter = new SendInterrupter(Thread.currentThread());
+        Deadline.Registration sending = Deadline.onAbort(interrupter);
+        final JavaNetHttp.Response response;
+        try {
+            response = JavaNetHttp.send(client, nativeRequest);
+        } finally {
+            sending.close();
+            interrupter.finish();
+        }
+        // dropped once the body is done with, so that the connection is not aborted once back in the pool
+        Deadline.Registration reading = Deadline.onAbort(new Runnable() {
+            @Override
+            public void run() {
+                Closeables2.closeQuietly(response.body);
+            }
+        });
+
+        ImmutableMultimap.Builder<String, String> headerBuilder = ImmutableMultimap.builder();
+        for (Map.Entry<String, List<String>> entry : response.headers.entrySet()) {
+            // http/2 pseudo headers such as :status are not headers as far as jclouds is concerned
+            if (!entry.getKey().startsWith(":")) {
+                headerBuilder.putAll(entry.getKey(), entry.getValue());
+            }
+        }
+        Multimap<String, String> headers = headerBuilder.build();
+
+        HttpResponse.Builder<?> builder = HttpResponse.builder();
+        builder.statusCode(response.statusCode);
+        if (response.statusCode == 204) {
+            Closeables2.closeQuietly(response.body);
+            reading.close();
+        } else {
+            Payload payload = Payloads.newInputStreamPayload(new ReleasingInputStream(response.body, -1, reading));
+            contentMetadataCodec.fromHeaders(payload.getContentMetadata(), headers);
+            builder.payload(payload);
+        }
+        builder.headers(HttpUtils.filterOutContentHeaders(headers));
+        return conditionalRequestCache.onResponse(builder.build());
+    }
+
+    @Override
+    protected void cleanup(Object nativeRequest) {
+        // the response body is released by whoever consumes the payload
+    }
+
+    /**
+     * Interrupts a thread blocked sending a request, but never once the send
+     * is over.
+     */
+    private static final class SendInterrupter implements Runnable {
+
+        private final Thread sender;
+        private boolean finished;
+        private boolean interrupted;
+
+        private SendInterrupter(Thread sender) {
+            this.sender = sender;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!finished) {
+                interrupted = true;
+                sender.interrupt();
+            }
+        }
+
+        private synchronized void finish() {
+            finished = true;
+            if (interrupted) {
+                // the interrupt was only ever meant for the send itself
+                Thread.interrupted();
+            }
+        }
+    }
+}
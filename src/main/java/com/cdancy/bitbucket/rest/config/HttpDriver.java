@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+/**
+ * HTTP driver requests are sent through.
+ */
+public enum HttpDriver {
+
+    /**
+     * The default driver of jclouds, built on HttpURLConnection. Every
+     * concurrent request holds a connection of its own.
+     */
+    URL_CONNECTION,
+
+    /**
+     * java.net.http.HttpClient, negotiating HTTP/2 where supported, on JDKs
+     * shipping it (see {@link HttpClientDriverModule}).
+     */
+    JAVA_NET_HTTP,
+
+    /**
+     * The OkHttp driver of jclouds, keeping a pool of keep-alive connections
+     * tuned through {@link ConnectionPoolSettings} (see
+     * {@link PooledOkHttpDriverModule}).
+     */
+    OKHTTP;
+
+    /**
+     * Whether this driver can be used on the running JDK.
+     *
+     * @return true if this driver is supported
+     */
+    public boolean isSupported() {
+        return this != JAVA_NET_HTTP || JavaNetHttp.isSupported();
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Multimap;
+
+/**
+ * Reflective access to the java.net.http client of newer JDKs while still
+ * targeting 1.7. Everything is looked up once, so on older JDKs
+ * {@link #isSupported()} simply returns false.
+ */
+final class JavaNetHttp {
+
+    private static final String CLIENT = "java.net.http.HttpClient";
+    private static final String CLIENT_BUILDER = "java.net.http.HttpClient$Builder";
+    private static final String REQUEST = "java.net.http.HttpRequest";
+    private static final String REQUEST_BUILDER = "java.net.http.HttpRequest$Builder";
+    private static final String RESPONSE = "java.net.http.HttpResponse";
+
+    private static final Method NEW_CLIENT_BUILDER;
+    private static final Method CLIENT_VERSION;
+    private static final Method CLIENT_FOLLOW_REDIRECTS;
+    private static final Method CLIENT_CONNECT_TIMEOUT;
+    private static final Method CLIENT_SSL_CONTEXT;
+    private static final Method CLIENT_BUILD;
+    private static final Method CLIENT_SEND;
+    private static final Method NEW_REQUEST_BUILDER;
+    private static final Method REQUEST_METHOD;
+    private static final Method REQUEST_HEADER;
+    private static final Method REQUEST_TIMEOUT;
+    private static final Method REQUEST_BUILD;
+    private static final Method NO_BODY;
+    private static final Method BYTE_ARRAY_BODY;
+    private static final Method INPUT_STREAM_HANDLER;
+    private static final Method RESPONSE_STATUS_CODE;
+    private static final Method RESPONSE_HEADERS;
+    private static final Method HEADERS_MAP;
+    private static final Method RESPONSE_BODY;
+    private static final Method DURATION_OF_MILLIS;
+    private static final Object HTTP_2;
+    private static final Object NEVER_REDIRECT;
+    private static final boolean SUPPORTED;
+
+    static {
+        Method[] methods = new Method[20];
+        Object[] constants = new Object[2];
+        boolean supported;
+        try {
+            final Class<?> durationClass = Class.forName("java.time.Duration");
+            final Class<?> clientClass = Class.forName(CLIENT);
+            final Class<?> clientBuilderClass = Class.forName(CLIENT_BUILDER);
+            final Class<?> requestClass = Class.forName(REQUEST);
+            final Class<?> requestBuilderClass = Class.forName(REQUEST_BUILDER);
+            final Class<?> publisherClass = Class.forName(REQUEST + "$BodyPublisher");
+            final Class<?> publishersClass = Class.forName(REQUEST + "$BodyPublishers");
+            final Class<?> handlerClass = Class.forName(RESPONSE + "$BodyHandler");
+            final Class<?> handlersClass = Class.forName(RESPONSE + "$BodyHandlers");
+            final Class<?> responseClass = Class.forName(RESPONSE);
+            final Class<?> versionClass = Class.forName(CLIENT + "$Version");
+            final Class<?> redirectClass = Class.forName(CLIENT + "$Redirect");
+
+            methods[0] = clientClass.getMethod("newBuilder");
+            methods[1] = clientBuilderClass.getMethod("version", versionClass);
+            methods[2] = clientBuilderClass.getMethod("followRedirects", redirectClass);
+            methods[3] = clientBuilderClass.getMethod("connectTimeout", durationClass);
+            methods[4] = clientBuilderClass.getMethod("sslContext", SSLContext.class);
+            methods[5] = clientBuilderClass.getMethod("build");
+            methods[6] = clientClass.getMethod("send", requestClass, handlerClass);
+            methods[7] = requestClass.getMethod("newBuilder", URI.class);
+            methods[8] = requestBuilderClass.getMethod("method", String.class, publisherClass);
+            methods[9] = requestBuilderClass.getMethod("header", String.class, String.class);
+            methods[10] = requestBuilderClass.getMethod("timeout", durationClass);
+            methods[11] = requestBuilderClass.getMethod("build");
+            methods[12] = publishersClass.getMethod("noBody");
+            methods[13] = publishersClass.getMethod("ofByteArray", byte[].class);
+            methods[14] = handlersClass.getMethod("ofInputStream");
+            methods[15] = responseClass.getMethod("statusCode");
+            methods[16] = responseClass.getMethod("headers");
+            methods[17] = Class.forName("java.net.http.HttpHeaders").getMethod("map");
+            methods[18] = responseClass.getMethod("body");
+            methods[19] = durationClass.getMethod("ofMillis", long.class);
+            constants[0] = enumConstant(versionClass, "HTTP_2");
+            constants[1] = enumConstant(redirectClass, "NEVER");
+            supported = true;
+        } catch (ClassNotFoundException e) {
+            supported = false;
+        } catch (NoSuchMethodException e) {
+            supported = false;
+        }
+        NEW_CLIENT_BUILDER = methods[0];
+        CLIENT_VERSION = methods[1];
+        CLIENT_FOLLOW_REDIRECTS = methods[2];
+        CLIENT_CONNECT_TIMEOUT = methods[3];
+        CLIENT_SSL_CONTEXT = methods[4];
+        CLIENT_BUILD = methods[5];
+        CLIENT_SEND = methods[6];
+        NEW_REQUEST_BUILDER = methods[7];
+        REQUEST_METHOD = methods[8];
+        REQUEST_HEADER = methods[9];
+        REQUEST_TIMEOUT = methods[10];
+        REQUEST_BUILD = methods[11];
+        NO_BODY = methods[12];
+        BYTE_ARRAY_BODY = methods[13];
+        INPUT_STREAM_HANDLER = methods[14];
+        RESPONSE_STATUS_CODE = methods[15];
+        RESPONSE_HEADERS = methods[16];
+        HEADERS_MAP = methods[17];
+        RESPONSE_BODY = methods[18];
+        DURATION_OF_MILLIS = methods[19];
+        HTTP_2 = constants[0];
+        NEVER_REDIRECT = constants[1];
+        SUPPORTED = supported;
+    }
+
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Create an HttpClient preferring HTTP/2 which never follows redirects,
+     * as jclouds handles those itself.
+     */
+    static Object newClient(int connectTimeoutMillis, @Nullable SSLContext sslContext) {
+        checkSupported();
+        Object builder = invoke(NEW_CLIENT_BUILDER, null);
+        invoke(CLIENT_VERSION, builder, HTTP_2);
+        invoke(CLIENT_FOLLOW_REDIRECTS, builder, NEVER_REDIRECT);
+        if (connectTimeoutMillis > 0) {
+            invoke(CLIENT_CONNECT_TIMEOUT, builder, invoke(DURATION_OF_MILLIS, null, (long) connectTimeoutMillis));
+        }
+        if (sslContext != null) {
+            invoke(CLIENT_SSL_CONTEXT, builder, sslContext);
+        }
+        return invoke(CLIENT_BUILD, builder);
+    }
+
+    static Object newRequest(URI uri, String method, Multimap<String, String> headers, @Nullable byte[] body,
+                             int timeoutMillis) {
+        checkSupported();
+        Object builder = invoke(NEW_REQUEST_BUILDER, null, uri);
+        Object publisher = body != null ? invoke(BYTE_ARRAY_BODY, null, (Object) body) : invoke(NO_BODY, null);
+        invoke(REQUEST_METHOD, builder, method, publisher);
+        for (Map.Entry<String, String> header : headers.entries()) {
+            invoke(REQUEST_HEADER, builder, header.getKey(), header.getValue());
+        }
+        if (timeoutMillis > 0) {
+            invoke(REQUEST_TIMEOUT, builder, invoke(DURATION_OF_MILLIS, null, (long) timeoutMillis));
+        }
+        return invoke(REQUEST_BUILD, builder);
+    }
+
+    static Response send(Object client, Object request) throws IOException, InterruptedException {
+        Object response;
+        try {
+            response = CLIENT_SEND.invoke(client, request, invoke(INPUT_STREAM_HANDLER, null));
+        } catch (InvocationTargetException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.propagateIfInstanceOf(e.getCause(), InterruptedException.class);
+            throw Throwables.propagate(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+        }
+
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> headers = (Map<String, List<String>>) invoke(HEADERS_MAP, invoke(RESPONSE_HEADERS, response));
+        return new Response((Integer) invoke(RESPONSE_STATUS_CODE, response), headers,
+                (InputStream) invoke(RESPONSE_BODY, response));
+    }
+
+    private static void checkSupported() {
+        if (!SUPPORTED) {
+            throw new UnsupportedOperationException("java.net.http is not supported by java "
+                    + System.getProperty("java.version"));
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object enumConstant(Class<?> enumClass, String name) {
+        return Enum.valueOf((Class) enumClass, name);
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * The parts of a java.net.http.HttpResponse jclouds cares about.
+     */
+    static final class Response {
+
+        final int statusCode;
+        final Map<String, List<String>> headers;
+        final InputStream body;
+
+        private Response(int statusCode, Map<String, List<String>> headers, InputStream body) {
+            this.statusCode = statusCode;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    private JavaNetHttp() {
+        throw new UnsupportedOperationException("intentionally unimplemented");
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.http.okhttp.OkHttpClientSupplier;
+import org.jclouds.util.Closeables2;
+
+import com.cdancy.bitbucket.rest.Deadline;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.google.common.collect.Maps;
+import com.google.common.net.HttpHeaders;
+import com.squareup.okhttp.Connection;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Supplies the OkHttpClient of {@link HttpDriver#OKHTTP}: one connection
+ * pool per client sized and timed as configured, a cap on the connections
+ * in use per host, {@link ConnectionStats} bookkeeping and aborting requests
+ * by closing their socket once the {@link Deadline} they are sent within
+ * expires or is cancelled. Revalidated requests are answered from the
+ * {@link ConditionalRequestCache}. Timeouts are applied by jclouds from the
+ * context properties.
+ */
+public class PooledOkHttpClientSupplier implements OkHttpClientSupplier {
+
+    private final ConnectionPoolSettings settings;
+    private final ConnectionStats stats;
+    private final ConditionalRequestCache conditionalRequestCache;
+
+    /**
+     * Create a PooledOkHttpClientSupplier.
+     *
+     * @param settings the pool settings to apply
+     * @param stats the ConnectionStats to keep
+     * @param conditionalRequestCache the cache to answer revalidated requests from
+     */
+    public PooledOkHttpClientSupplier(ConnectionPoolSettings settings, ConnectionStats stats,
+                                      ConditionalRequestCache conditionalRequestCache) {
+        this.settings = checkNotNull(settings, "settings");
+        this.stats = checkNotNull(stats, "stats");
+        this.conditionalRequestCache = checkNotNull(conditionalRequestCache, "conditionalRequestCache");
+    }
+
+    @Override
+    public OkHttpClient get() {
+        OkHttpClient client = new OkHttpClient();
+        client.setConnectionPool(new ConnectionPool(settings.maxIdleConnections(), settings.keepAliveMillis()));
+        client.interceptors().add(new ConditionalRequestInterceptor(conditionalRequestCache));
+        if (settings.maxConnectionsPerHost() > 0) {
+            client.interceptors().add(new HostLimitInterceptor(settings.maxConnectionsPerHost()));
+        }
+        client.networkInterceptors().add(new AbortInterceptor());
+        client.networkInterceptors().add(new ConnectionReuseInterceptor(stats));
+        return client;
+    }
+
+    // the response with its body releasing the given resource once read to its end or closed, or right away if it
+    // has none; with a known length the end is its last byte, which is when the connection goes back to the pool
+    private static Response releaseWhenDone(Response response, final Closeable resource) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null || body.contentLength() == 0) {
+            Closeables2.closeQuietly(resource);
+            return response;
+        }
+
+        final AtomicBoolean released = new AtomicBoolean();
+        final long length = body.contentLength();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            private long total;
+
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read == -1 || (length > 0 && (total += read) >= length)) {
+                    release();
+                }
+                return read;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    release();
+                }
+            }
+
+            private void release() {
+                if (released.compareAndSet(false, true)) {
+                    Closeables2.closeQuietly(resource);
+                }
+            }
+        };
+        return response.newBuilder().body(ResponseBody.create(body.contentType(), body.contentLength(),
+                Okio.buffer(source))).build();
+    }
+
+    /**
+     * Registers closing the socket of each request with the deadlines of
+     * the calling thread for as long as the exchange lasts.
+     */
+    private static final class AbortInterceptor implements Interceptor {
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Deadline.checkCurrent();
+            final Socket socket = chain.connection().getSocket();
+            // dropped once the exchange is over, as the connection then goes back to the pool and on to other requests
+            Deadline.Registration abort = Deadline.onAbort(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        socket.close();
+                    } catch (IOException e) {
+                        // the exchange fails either way
+                    }
+                }
+            });
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException e) {
+                abort.close();
+                throw e;
+            } catch (RuntimeException e) {
+                abort.close();
+                throw e;
+            }
+            return releaseWhenDone(response, abort);
+        }
+    }
+
+    /**
+     * Response hook of the {@link ConditionalRequestCache}.
+     */
+    private static final class ConditionalRequestInterceptor implements Interceptor {
+
+        private final ConditionalRequestCache cache;
+
+        private ConditionalRequestInterceptor(ConditionalRequestCache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            ConditionalRequestCache.Exchange exchange = cache.takeExchange();
+            Response response = chain.proceed(chain.request());
+            if (exchange == null) {
+                return response;
+            }
+
+            if (exchange.isNotModified(response.code())) {
+                Closeables2.closeQuietly(response.body());
+                String contentType = exchange.notModifiedContentType();
+                return response.newBuilder().code(200).message("OK")
+                        .body(ResponseBody.create(contentType != null ? MediaType.parse(contentType) : null,
+                                exchange.notModifiedBody())).build();
+            }
+
+            ResponseBody body = response.body();
+            if (response.code() != 200 || body == null) {
+                return response;
+            }
+            MediaType contentType = body.contentType();
+            InputStream in = exchange.modified(response.header(HttpHeaders.ETAG), response.header(HttpHeaders.LAST_MODIFIED),
+                    contentType != null ? contentType.toString() : null, body.contentLength(), body.byteStream());
+            return response.newBuilder().body(ResponseBody.create(contentType, body.contentLength(),
+                    Okio.buffer(Okio.source(in)))).build();
+        }
+    }
+
+    /**
+     * Tells opened from reused connections apart by remembering every
+     * connection a request has gone out over.
+     */
+    private static final class ConnectionReuseInterceptor implements Interceptor {
+
+        private final ConnectionStats stats;
+        private final Set<Connection> seen = Collections.synchronizedSet(
+                Collections.newSetFromMap(new WeakHashMap<Connection, Boolean>()));
+
+        private ConnectionReuseInterceptor(ConnectionStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            if (seen.add(chain.connection())) {
+                stats.connectionOpened();
+            } else {
+                stats.connectionReused();
+            }
+            return chain.proceed(chain.request());
+        }
+    }
+
+    /**
+     * Holds each request back until fewer than the maximum number of requests
+     * are in flight to its host. A request counts as in flight, and hence as
+     * holding a connection, until its response body has been read or closed.
+     */
+    private static final class HostLimitInterceptor implements Interceptor {
+
+        private final int permits;
+        private final ConcurrentMap<String, Semaphore> hosts = Maps.newConcurrentMap();
+
+        private HostLimitInterceptor(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            final Semaphore semaphore = semaphore(chain.request().url().getHost() + ":" + chain.request().url().getPort());
+            try {
+                long remaining = Deadline.currentRemaining(TimeUnit.NANOSECONDS);
+                if (remaining == Long.MAX_VALUE) {
+                    semaphore.acquire();
+                } else if (!semaphore.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                    // gave up waiting for a connection as the deadline passed
+                    Deadline.checkCurrent();
+                    throw new IOException("deadline passed while waiting for a connection to " + chain.request().url().getHost());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for a connection to " + chain.request().url().getHost(), e);
+            }
+
+            Response response;
+            try {
+                response = chain.proceed(chain.request());
+            } catch (IOException e) {
+                semaphore.release();
+                throw e;
+            } catch (RuntimeException e) {
+                semaphore.release();
+                throw e;
+            }
+
+            return releaseWhenDone(response, new Closeable() {
+                @Override
+                public void close() {
+                    semaphore.release();
+                }
+            });
+        }
+
+        private Semaphore semaphore(String host) {
+            Semaphore semaphore = hosts.get(host);
+            if (semaphore == null) {
+                Semaphore created = new Semaphore(permits);
+                semaphore = hosts.putIfAbsent(host, created);
+                if (semaphore == null) {
+                    semaphore = created;
+                }
+            }
+            return semaphore;
+        }
+    }
+}
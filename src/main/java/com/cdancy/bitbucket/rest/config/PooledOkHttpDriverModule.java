@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.inject.Singleton;
+
+import org.jclouds.http.config.ConfiguresHttpCommandExecutorService;
+import org.jclouds.http.okhttp.OkHttpClientSupplier;
+import org.jclouds.http.okhttp.config.OkHttpCommandExecutorServiceModule;
+
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provides;
+
+/**
+ * Replaces the default HttpURLConnection based driver of jclouds with the
+ * OkHttp driver, pooling connections as configured.
+ */
+@ConfiguresHttpCommandExecutorService
+public class PooledOkHttpDriverModule extends AbstractModule {
+
+    private final ConnectionPoolSettings settings;
+    private final ConnectionStats stats;
+
+    public PooledOkHttpDriverModule(ConnectionPoolSettings settings, ConnectionStats stats) {
+        this.settings = checkNotNull(settings, "settings");
+        this.stats = checkNotNull(stats, "stats");
+    }
+
+    @Override
+    protected void configure() {
+        install(new OkHttpCommandExecutorServiceModule());
+        bind(ConnectionStats.class).toInstance(stats);
+    }
+
+    @Provides
+    @Singleton
+    OkHttpClientSupplier okHttpClientSupplier(ConditionalRequestCache conditionalRequestCache) {
+        return new PooledOkHttpClientSupplier(settings, stats, conditionalRequestCache);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jclouds.util.Closeables2;
+
+/**
+ * Response body releasing a resource held for its exchange, such as the
+ * {@link com.cdancy.bitbucket.rest.Deadline.Registration} aborting it, once
+ * the body has been read to its end or closed, whichever comes first.
+ * With a known length the end is the last of its bytes, which is when the
+ * connection is handed back for reuse, rather than the read after it.
+ */
+final class ReleasingInputStream extends FilterInputStream {
+
+    private final Closeable resource;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private long remaining;
+
+    ReleasingInputStream(InputStream in, long length, Closeable resource) {
+        super(in);
+        this.remaining = length;
+        this.resource = resource;
+        if (length == 0) {
+            release();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int read = super.read();
+        consumed(read == -1 ? -1 : 1);
+        return read;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        int read = super.read(bytes, off, len);
+        consumed(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long skipped = super.skip(count);
+        consumed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            release();
+        }
+    }
+
+    private void consumed(long count) {
+        if (count == -1 || (remaining > 0 && (remaining -= count) <= 0)) {
+            release();
+        }
+    }
+
+    private void release() {
+        if (released.compareAndSet(false, true)) {
+            Closeables2.closeQuietly(resource);
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.config;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Access to the virtual threads of newer JDKs while still targeting 1.7.
+ * Everything is looked up reflectively once, so on older JDKs
+ * {@link #isSupported()} simply returns false. The lookup is followed by a
+ * probe, as JDK 19 and 20 have the methods but refuse to hand out virtual
+ * threads unless preview features are enabled.
+ */
+public final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL = lookup("java.lang.Thread", "ofVirtual");
+    private static final Method NAME = lookup("java.lang.Thread$Builder", "name", String.class, long.class);
+    private static final Method FACTORY = lookup("java.lang.Thread$Builder", "factory");
+    private static final Method PER_TASK_EXECUTOR = lookup("java.util.concurrent.Executors",
+            "newThreadPerTaskExecutor", ThreadFactory.class);
+    private static final boolean SUPPORTED = probe();
+
+    /**
+     * Whether the running JDK supports virtual threads.
+     *
+     * @return true if virtual threads are available
+     */
+    public static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * Create a ThreadFactory handing out virtual threads named after the
+     * given prefix followed by a counter.
+     *
+     * @param prefix prefix of the thread names
+     * @return ThreadFactory for virtual threads
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        checkNotNull(prefix, "prefix");
+        checkSupported();
+        Object builder = invoke(OF_VIRTUAL, null);
+        builder = invoke(NAME, builder, prefix, 0L);
+        return (ThreadFactory) invoke(FACTORY, builder);
+    }
+
+    /**
+     * Create an executor starting a new virtual thread for every task.
+     *
+     * @param prefix prefix of the thread names
+     * @return ListeningExecutorService backed by virtual threads
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static ListeningExecutorService newExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        return MoreExecutors.listeningDecorator((ExecutorService) invoke(PER_TASK_EXECUTOR, null, factory));
+    }
+
+    private static void checkSupported() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual threads are not supported by java "
+                    + System.getProperty("java.version"));
+        }
+    }
+
+    // whether a virtual thread factory can actually be had, without starting any thread
+    private static boolean probe() {
+        if (OF_VIRTUAL == null || NAME == null || FACTORY == null || PER_TASK_EXECUTOR == null) {
+            return false;
+        }
+        try {
+            return FACTORY.invoke(OF_VIRTUAL.invoke(null)) != null;
+        } catch (Throwable t) {
+            // e.g. UnsupportedOperationException from a JDK with virtual threads still in preview
+            return false;
+        }
+    }
+
+    private static Method lookup(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target, Object... args) {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private VirtualThreads() {
+        throw new UnsupportedOperationException("intentionally unimplemented");
+    }
+}
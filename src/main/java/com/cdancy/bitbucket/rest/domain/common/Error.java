@@ -34,11 +34,19 @@ public abstract class Error {
     @Nullable
     public abstract String exceptionName();
 
+    // only set on errors about stale versions, e.g. PullRequestOutOfDateException
+    @Nullable
+    public abstract Integer currentVersion();
+
     Error() {
     }
 
-    @SerializedNames({ "context", "message", "exceptionName" })
     public static Error create(String context, String message, String exceptionName) {
-        return new AutoValue_Error(context, message, exceptionName);
+        return create(context, message, exceptionName, null);
+    }
+
+    @SerializedNames({ "context", "message", "exceptionName", "currentVersion" })
+    public static Error create(String context, String message, String exceptionName, Integer currentVersion) {
+        return new AutoValue_Error(context, message, exceptionName, currentVersion);
     }
 }
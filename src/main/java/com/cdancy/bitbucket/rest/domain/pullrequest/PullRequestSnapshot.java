@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.domain.pullrequest;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Everything needed to render a single pull request, fetched in one go by
+ * {@code PullRequestSnapshots}. Parts which could not be fetched are the
+ * error holders the corresponding fallbacks produce, and {@link #errors()}
+ * holds the errors of all parts combined.
+ */
+@AutoValue
+public abstract class PullRequestSnapshot implements ErrorsHolder {
+
+    public abstract PullRequest pullRequest();
+
+    public abstract ChangePage changes();
+
+    public abstract CommitPage commits();
+
+    public abstract MergeStatus mergeStatus();
+
+    // only present if comments were asked for
+    @Nullable
+    public abstract CommentPage comments();
+
+    PullRequestSnapshot() {
+    }
+
+    public static PullRequestSnapshot create(PullRequest pullRequest, ChangePage changes, CommitPage commits,
+                                             MergeStatus mergeStatus, @Nullable CommentPage comments) {
+        ImmutableList.Builder<Error> errors = ImmutableList.builder();
+        errors.addAll(pullRequest.errors()).addAll(changes.errors()).addAll(commits.errors()).addAll(mergeStatus.errors());
+        if (comments != null) {
+            errors.addAll(comments.errors());
+        }
+        return new AutoValue_PullRequestSnapshot(errors.build(), pullRequest, changes, commits, mergeStatus, comments);
+    }
+
+    /**
+     * Whether every part was fetched without errors.
+     *
+     * @return true if no part carries errors
+     */
+    public boolean isComplete() {
+        return errors().isEmpty();
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.exception;
+
+import java.util.List;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Thrown by bulk paging operations, which have no single domain object to
+ * attach errors to, when one of the pages came back with errors.
+ */
+public class PageErrorsException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<Error> errors;
+
+    public PageErrorsException(String arg0, List<Error> errors) {
+        super(arg0);
+        this.errors = ImmutableList.copyOf(errors);
+    }
+
+    public List<Error> errors() {
+        return errors;
+    }
+}
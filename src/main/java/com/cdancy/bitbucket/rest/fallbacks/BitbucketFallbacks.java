@@ -42,6 +42,7 @@ import org.jclouds.Fallback;
 import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
 import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
 import com.cdancy.bitbucket.rest.domain.repository.RepositoryPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 import com.google.common.collect.Lists;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
@@ -196,6 +197,15 @@ public final class BitbucketFallbacks {
         }
     }
 
+    public static final class StreamingPageOnError implements Fallback<Object> {
+        public Object createOrPropagate(Throwable throwable) throws Exception {
+            if (checkNotNull(throwable, "throwable") != null) {
+                return createStreamingPageFromErrors(getErrors(throwable.getMessage()));
+            }
+            throw propagate(throwable);
+        }
+    }
+
     public static final class MergeStatusOnError implements Fallback<Object> {
         public Object createOrPropagate(Throwable throwable) throws Exception {
             if (checkNotNull(throwable, "throwable") != null) {
@@ -268,6 +278,10 @@ public final class BitbucketFallbacks {
         return PullRequestPage.create(-1, -1, -1, -1, true, null, errors);
     }
 
+    public static <T> StreamingPage<T> createStreamingPageFromErrors(List<Error> errors) {
+        return StreamingPage.fromErrors(errors);
+    }
+
     public static MergeStatus createMergeStatusFromErrors(List<Error> errors) {
         return MergeStatus.create(false, false, null, errors);
     }
@@ -290,9 +304,11 @@ public final class BitbucketFallbacks {
             JsonElement context = obj.get("context");
             JsonElement message = obj.get("message");
             JsonElement exceptionName = obj.get("exceptionName");
+            JsonElement currentVersion = obj.get("currentVersion");
             Error error = Error.create(!context.isJsonNull() ? context.getAsString() : null,
                     !message.isJsonNull() ? message.getAsString() : null,
-                    !exceptionName.isJsonNull() ? exceptionName.getAsString() : null);
+                    !exceptionName.isJsonNull() ? exceptionName.getAsString() : null,
+                    currentVersion != null && !currentVersion.isJsonNull() ? currentVersion.getAsInt() : null);
             errors.add(error);
         }
 
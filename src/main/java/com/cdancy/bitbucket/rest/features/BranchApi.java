@@ -23,13 +23,17 @@ import com.cdancy.bitbucket.rest.domain.branch.BranchModel;
 import com.cdancy.bitbucket.rest.domain.branch.BranchPage;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.cdancy.bitbucket.rest.options.CreateBranch;
+import com.cdancy.bitbucket.rest.paging.ParseStreamingPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.Payload;
 import org.jclouds.rest.annotations.PayloadParam;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 import javax.inject.Named;
@@ -46,7 +50,7 @@ import javax.ws.rs.core.MediaType;
 import org.jclouds.javax.annotation.Nullable;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest")
 public interface BranchApi {
 
@@ -64,6 +68,22 @@ public interface BranchApi {
                   @Nullable @QueryParam("orderBy") String orderBy,
                   @Nullable @QueryParam("start") Integer start,
                   @Nullable @QueryParam("limit") Integer limit);
+
+    @Named("branch:list-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45295356999632"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/api/{jclouds.api-version}/projects/{project}/repos/{repo}/branches")
+    @Fallback(BitbucketFallbacks.StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.Branches.class)
+    @GET
+    StreamingPage<Branch> listStreaming(@PathParam("project") String project,
+                                        @PathParam("repo") String repo,
+                                        @Nullable @QueryParam("base") String base,
+                                        @Nullable @QueryParam("details") String details,
+                                        @Nullable @QueryParam("filterText") String filterText,
+                                        @Nullable @QueryParam("orderBy") String orderBy,
+                                        @Nullable @QueryParam("start") Integer start,
+                                        @Nullable @QueryParam("limit") Integer limit);
     
     @Named("branch:create")
     @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45295357022352"})
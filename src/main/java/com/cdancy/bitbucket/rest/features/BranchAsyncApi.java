@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import javax.inject.Named;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.branch.BranchModel;
+import com.cdancy.bitbucket.rest.domain.branch.BranchPage;
+import com.cdancy.bitbucket.rest.options.CreateBranch;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link BranchApi}. Each call goes through the
+ * blocking BranchApi, with the same endpoint, fallback and error handling,
+ * on the executor the twin was created with.
+ */
+public interface BranchAsyncApi {
+
+    @Named("branch:list")
+    ListenableFuture<BranchPage> list(String project,
+                                      String repo,
+                                      @Nullable String base,
+                                      @Nullable String details,
+                                      @Nullable String filterText,
+                                      @Nullable String orderBy,
+                                      @Nullable Integer start,
+                                      @Nullable Integer limit);
+
+    @Named("branch:list-streaming")
+    ListenableFuture<StreamingPage<Branch>> listStreaming(String project,
+                                                          String repo,
+                                                          @Nullable String base,
+                                                          @Nullable String details,
+                                                          @Nullable String filterText,
+                                                          @Nullable String orderBy,
+                                                          @Nullable Integer start,
+                                                          @Nullable Integer limit);
+
+    @Named("branch:create")
+    ListenableFuture<Branch> create(String project,
+                                    String repo,
+                                    CreateBranch createBranch);
+
+    @Named("branch:delete")
+    ListenableFuture<Boolean> delete(String project,
+                                     String repo,
+                                     String branchPath);
+
+    @Named("branch:update-default")
+    ListenableFuture<Boolean> updateDefault(String project,
+                                            String repo,
+                                            String id);
+
+    @Named("branch:get-default")
+    ListenableFuture<Branch> getDefault(String project,
+                                        String repo);
+
+    @Named("branch:model")
+    ListenableFuture<BranchModel> model(String project,
+                                        String repo);
+}
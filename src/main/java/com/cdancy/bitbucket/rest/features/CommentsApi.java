@@ -28,11 +28,13 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
+import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.Payload;
 import org.jclouds.rest.annotations.PayloadParam;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 import com.cdancy.bitbucket.rest.annotations.Documentation;
@@ -41,11 +43,15 @@ import com.cdancy.bitbucket.rest.domain.pullrequest.CommentPage;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.CommentPageOnError;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.CommentsOnError;
+import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.StreamingPageOnError;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.cdancy.bitbucket.rest.options.CreateComment;
+import com.cdancy.bitbucket.rest.paging.ParseStreamingPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest/api/{jclouds.api-version}/projects")
 public interface CommentsApi {
 
@@ -94,6 +100,20 @@ public interface CommentsApi {
                                 @PathParam("pullRequestId") int pullRequestId,
                                 @QueryParam("path") String path);
 
+    @Named("comments:path-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278617264"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/{project}/repos/{repo}/pull-requests/{pullRequestId}/comments")
+    @Fallback(StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.PullRequestComments.class)
+    @GET
+    StreamingPage<Comments> commentsStreaming(@PathParam("project") String project,
+                                              @PathParam("repo") String repo,
+                                              @PathParam("pullRequestId") int pullRequestId,
+                                              @QueryParam("path") String path,
+                                              @Nullable @QueryParam("start") Integer start,
+                                              @Nullable @QueryParam("limit") Integer limit);
+
     @Named("comments:delete")
     @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278021232"})
     @Consumes(MediaType.APPLICATION_JSON)
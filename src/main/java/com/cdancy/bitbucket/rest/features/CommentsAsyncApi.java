@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import javax.inject.Named;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.comment.Comments;
+import com.cdancy.bitbucket.rest.domain.pullrequest.CommentPage;
+import com.cdancy.bitbucket.rest.options.CreateComment;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link CommentsApi}. Each call goes through the
+ * blocking CommentsApi, with the same endpoint, fallback and error handling,
+ * on the executor the twin was created with.
+ */
+public interface CommentsAsyncApi {
+
+    @Named("comments:comment")
+    ListenableFuture<Comments> comment(String project,
+                                       String repo,
+                                       int pullRequestId,
+                                       String comment);
+
+    @Named("comments:create")
+    ListenableFuture<Comments> create(String project,
+                                      String repo,
+                                      int pullRequestId,
+                                      CreateComment createComment);
+
+    @Named("comments:get")
+    ListenableFuture<Comments> get(String project,
+                                   String repo,
+                                   int pullRequestId,
+                                   int commentId);
+
+    @Named("comments:path")
+    ListenableFuture<CommentPage> comments(String project,
+                                           String repo,
+                                           int pullRequestId,
+                                           String path);
+
+    @Named("comments:path-streaming")
+    ListenableFuture<StreamingPage<Comments>> commentsStreaming(String project,
+                                                                String repo,
+                                                                int pullRequestId,
+                                                                String path,
+                                                                @Nullable Integer start,
+                                                                @Nullable Integer limit);
+
+    @Named("comments:delete")
+    ListenableFuture<Boolean> delete(String project,
+                                     String repo,
+                                     int pullRequestId,
+                                     int commentId,
+                                     int version);
+}
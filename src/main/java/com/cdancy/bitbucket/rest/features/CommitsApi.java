@@ -21,6 +21,7 @@ import com.cdancy.bitbucket.rest.annotations.Documentation;
 import com.cdancy.bitbucket.rest.domain.commit.Commit;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
 
@@ -36,7 +37,7 @@ import javax.ws.rs.core.MediaType;
 import org.jclouds.javax.annotation.Nullable;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest/api/{jclouds.api-version}/projects")
 public interface CommitsApi {
 
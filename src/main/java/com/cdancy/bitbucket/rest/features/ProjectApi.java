@@ -33,16 +33,20 @@ import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 import com.cdancy.bitbucket.rest.domain.project.Project;
 import com.cdancy.bitbucket.rest.domain.project.ProjectPage;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.cdancy.bitbucket.rest.options.CreateProject;
+import com.cdancy.bitbucket.rest.paging.ParseStreamingPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest/api/{jclouds.api-version}/projects")
 public interface ProjectApi {
 
@@ -78,4 +82,15 @@ public interface ProjectApi {
                      @Nullable @QueryParam("permission") String permission,
                      @Nullable @QueryParam("start") Integer start,
                      @Nullable @QueryParam("limit") Integer limit);
+
+    @Named("project:list-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888277975392"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Fallback(BitbucketFallbacks.StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.Projects.class)
+    @GET
+    StreamingPage<Project> listStreaming(@Nullable @QueryParam("name") String name,
+                                         @Nullable @QueryParam("permission") String permission,
+                                         @Nullable @QueryParam("start") Integer start,
+                                         @Nullable @QueryParam("limit") Integer limit);
 }
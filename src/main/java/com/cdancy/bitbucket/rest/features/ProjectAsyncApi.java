@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import javax.inject.Named;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.project.ProjectPage;
+import com.cdancy.bitbucket.rest.options.CreateProject;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link ProjectApi}. Each call goes through the
+ * blocking ProjectApi, with the same endpoint, fallback and error handling,
+ * on the executor the twin was created with.
+ */
+public interface ProjectAsyncApi {
+
+    @Named("project:create")
+    ListenableFuture<Project> create(CreateProject createProject);
+
+    @Named("project:get")
+    ListenableFuture<Project> get(String project);
+
+    @Named("project:delete")
+    ListenableFuture<Boolean> delete(String project);
+
+    @Named("project:list")
+    ListenableFuture<ProjectPage> list(@Nullable String name,
+                                       @Nullable String permission,
+                                       @Nullable Integer start,
+                                       @Nullable Integer limit);
+
+    @Named("project:list-streaming")
+    ListenableFuture<StreamingPage<Project>> listStreaming(@Nullable String name,
+                                                           @Nullable String permission,
+                                                           @Nullable Integer start,
+                                                           @Nullable Integer limit);
+}
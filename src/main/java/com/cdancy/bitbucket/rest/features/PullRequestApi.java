@@ -31,10 +31,13 @@ import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 import com.cdancy.bitbucket.rest.annotations.Documentation;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
 import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.Change;
 import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
 import com.cdancy.bitbucket.rest.domain.pullrequest.MergeStatus;
 import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
@@ -44,11 +47,15 @@ import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.CommitPageOnError;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.MergeStatusOnError;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.PullRequestOnError;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.PullRequestPageOnError;
+import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks.StreamingPageOnError;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.cdancy.bitbucket.rest.options.CreatePullRequest;
+import com.cdancy.bitbucket.rest.paging.ParseStreamingPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest/api/{jclouds.api-version}/projects")
 public interface PullRequestApi {
 
@@ -79,6 +86,24 @@ public interface PullRequestApi {
                     @Nullable @QueryParam("start") Integer start,
                     @Nullable @QueryParam("limit") Integer limit);
 
+    @Named("pull-request:list-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278244864"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/{project}/repos/{repo}/pull-requests")
+    @Fallback(StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.PullRequests.class)
+    @GET
+    StreamingPage<PullRequest> listStreaming(@PathParam("project") String project,
+                                             @PathParam("repo") String repo,
+                                             @Nullable @QueryParam("direction") String direction,
+                                             @Nullable @QueryParam("at") String at,
+                                             @Nullable @QueryParam("state") String state,
+                                             @Nullable @QueryParam("order") String order,
+                                             @Nullable @QueryParam("withAttributes") Boolean withAttributes,
+                                             @Nullable @QueryParam("withProperties") Boolean withProperties,
+                                             @Nullable @QueryParam("start") Integer start,
+                                             @Nullable @QueryParam("limit") Integer limit);
+
     @Named("pull-request:create")
     @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278226704"})
     @Consumes(MediaType.APPLICATION_JSON)
@@ -145,6 +170,20 @@ public interface PullRequestApi {
                                 @Nullable @QueryParam("limit") Integer limit,
                                 @Nullable @QueryParam("start") Integer start);
 
+    @Named("pull-request:changes-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888279438576"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/{project}/repos/{repo}/pull-requests/{pullRequestId}/changes")
+    @Fallback(StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.Changes.class)
+    @GET
+    StreamingPage<Change> changesStreaming(@PathParam("project") String project,
+                                           @PathParam("repo") String repo,
+                                           @PathParam("pullRequestId") int pullRequestId,
+                                           @Nullable @QueryParam("withComments") Boolean withComments,
+                                           @Nullable @QueryParam("limit") Integer limit,
+                                           @Nullable @QueryParam("start") Integer start);
+
     @Named("pull-request:commits")
     @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278089280"})
     @Consumes(MediaType.APPLICATION_JSON)
@@ -157,4 +196,18 @@ public interface PullRequestApi {
                                 @Nullable @QueryParam("withCounts") Boolean withCounts,
                                 @Nullable @QueryParam("limit") Integer limit,
                                 @Nullable @QueryParam("start") Integer start);
+
+    @Named("pull-request:commits-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888278089280"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/{project}/repos/{repo}/pull-requests/{pullRequestId}/commits")
+    @Fallback(StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.Commits.class)
+    @GET
+    StreamingPage<Commit> commitsStreaming(@PathParam("project") String project,
+                                           @PathParam("repo") String repo,
+                                           @PathParam("pullRequestId") int pullRequestId,
+                                           @Nullable @QueryParam("withCounts") Boolean withCounts,
+                                           @Nullable @QueryParam("limit") Integer limit,
+                                           @Nullable @QueryParam("start") Integer start);
 }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import javax.inject.Named;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.Change;
+import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.MergeStatus;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
+import com.cdancy.bitbucket.rest.options.CreatePullRequest;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link PullRequestApi}. Each call goes through the
+ * blocking PullRequestApi, with the same endpoint, fallback and error handling,
+ * on the executor the twin was created with.
+ */
+public interface PullRequestAsyncApi {
+
+    @Named("pull-request:get")
+    ListenableFuture<PullRequest> get(String project,
+                                      String repo,
+                                      int pullRequestId);
+
+    @Named("pull-request:list")
+    ListenableFuture<PullRequestPage> list(String project,
+                                           String repo,
+                                           @Nullable String direction,
+                                           @Nullable String at,
+                                           @Nullable String state,
+                                           @Nullable String order,
+                                           @Nullable Boolean withAttributes,
+                                           @Nullable Boolean withProperties,
+                                           @Nullable Integer start,
+                                           @Nullable Integer limit);
+
+    @Named("pull-request:list-streaming")
+    ListenableFuture<StreamingPage<PullRequest>> listStreaming(String project,
+                                                               String repo,
+                                                               @Nullable String direction,
+                                                               @Nullable String at,
+                                                               @Nullable String state,
+                                                               @Nullable String order,
+                                                               @Nullable Boolean withAttributes,
+                                                               @Nullable Boolean withProperties,
+                                                               @Nullable Integer start,
+                                                               @Nullable Integer limit);
+
+    @Named("pull-request:create")
+    ListenableFuture<PullRequest> create(String project,
+                                         String repo,
+                                         CreatePullRequest createPullRequest);
+
+    @Named("pull-request:merge")
+    ListenableFuture<PullRequest> merge(String project,
+                                        String repo,
+                                        int pullRequestId,
+                                        int version);
+
+    @Named("pull-request:can-merge")
+    ListenableFuture<MergeStatus> canMerge(String project,
+                                           String repo,
+                                           int pullRequestId);
+
+    @Named("pull-request:decline")
+    ListenableFuture<PullRequest> decline(String project,
+                                          String repo,
+                                          int pullRequestId,
+                                          int version);
+
+    @Named("pull-request:reopen")
+    ListenableFuture<PullRequest> reopen(String project,
+                                         String repo,
+                                         int pullRequestId,
+                                         int version);
+
+    @Named("pull-request:changes")
+    ListenableFuture<ChangePage> changes(String project,
+                                         String repo,
+                                         int pullRequestId,
+                                         @Nullable Boolean withComments,
+                                         @Nullable Integer limit,
+                                         @Nullable Integer start);
+
+    @Named("pull-request:changes-streaming")
+    ListenableFuture<StreamingPage<Change>> changesStreaming(String project,
+                                                             String repo,
+                                                             int pullRequestId,
+                                                             @Nullable Boolean withComments,
+                                                             @Nullable Integer limit,
+                                                             @Nullable Integer start);
+
+    @Named("pull-request:commits")
+    ListenableFuture<CommitPage> commits(String project,
+                                         String repo,
+                                         int pullRequestId,
+                                         @Nullable Boolean withCounts,
+                                         @Nullable Integer limit,
+                                         @Nullable Integer start);
+
+    @Named("pull-request:commits-streaming")
+    ListenableFuture<StreamingPage<Commit>> commitsStreaming(String project,
+                                                             String repo,
+                                                             int pullRequestId,
+                                                             @Nullable Boolean withCounts,
+                                                             @Nullable Integer limit,
+                                                             @Nullable Integer start);
+}
@@ -33,16 +33,20 @@ import org.jclouds.javax.annotation.Nullable;
 import org.jclouds.rest.annotations.BinderParam;
 import org.jclouds.rest.annotations.Fallback;
 import org.jclouds.rest.annotations.RequestFilters;
+import org.jclouds.rest.annotations.ResponseParser;
 import org.jclouds.rest.binders.BindToJsonPayload;
 
 import com.cdancy.bitbucket.rest.domain.repository.Repository;
 import com.cdancy.bitbucket.rest.domain.repository.RepositoryPage;
 import com.cdancy.bitbucket.rest.fallbacks.BitbucketFallbacks;
 import com.cdancy.bitbucket.rest.filters.BitbucketAuthentication;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
 import com.cdancy.bitbucket.rest.options.CreateRepository;
+import com.cdancy.bitbucket.rest.paging.ParseStreamingPage;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 
 @Produces(MediaType.APPLICATION_JSON)
-@RequestFilters(BitbucketAuthentication.class)
+@RequestFilters({BitbucketAuthentication.class, ConditionalRequestCache.class})
 @Path("/rest/api/{jclouds.api-version}/projects")
 public interface RepositoryApi {
 
@@ -82,4 +86,15 @@ public interface RepositoryApi {
     RepositoryPage list(@PathParam("project") String project,
                         @Nullable @QueryParam("start") Integer start,
                         @Nullable @QueryParam("limit") Integer limit);
+
+    @Named("repository:list-streaming")
+    @Documentation({"https://developer.atlassian.com/static/rest/bitbucket-server/latest/bitbucket-rest.html#idm45888277593152"})
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Path("/{project}/repos")
+    @Fallback(BitbucketFallbacks.StreamingPageOnError.class)
+    @ResponseParser(ParseStreamingPage.Repositories.class)
+    @GET
+    StreamingPage<Repository> listStreaming(@PathParam("project") String project,
+                                            @Nullable @QueryParam("start") Integer start,
+                                            @Nullable @QueryParam("limit") Integer limit);
 }
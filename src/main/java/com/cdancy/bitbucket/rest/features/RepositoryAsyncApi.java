@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import javax.inject.Named;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.domain.repository.RepositoryPage;
+import com.cdancy.bitbucket.rest.options.CreateRepository;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Asynchronous counterpart of {@link RepositoryApi}. Each call goes through the
+ * blocking RepositoryApi, with the same endpoint, fallback and error handling,
+ * on the executor the twin was created with.
+ */
+public interface RepositoryAsyncApi {
+
+    @Named("repository:create")
+    ListenableFuture<Repository> create(String project,
+                                        CreateRepository createRepository);
+
+    @Named("repository:get")
+    ListenableFuture<Repository> get(String project,
+                                     String repo);
+
+    @Named("repository:delete")
+    ListenableFuture<Boolean> delete(String project,
+                                     String repo);
+
+    @Named("repository:list")
+    ListenableFuture<RepositoryPage> list(String project,
+                                          @Nullable Integer start,
+                                          @Nullable Integer limit);
+
+    @Named("repository:list-streaming")
+    ListenableFuture<StreamingPage<Repository>> listStreaming(String project,
+                                                              @Nullable Integer start,
+                                                              @Nullable Integer limit);
+}
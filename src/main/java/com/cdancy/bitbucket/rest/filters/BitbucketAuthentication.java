@@ -27,7 +27,6 @@ import org.jclouds.domain.Credentials;
 import org.jclouds.http.HttpException;
 import org.jclouds.http.HttpRequest;
 import org.jclouds.http.HttpRequestFilter;
-import org.jclouds.location.Provider;
 
 import com.google.common.base.Supplier;
 import com.google.common.net.HttpHeaders;
@@ -39,7 +38,7 @@ public class BitbucketAuthentication implements HttpRequestFilter {
     public static final String BASE64_REGEX = "^([A-Za-z0-9+/]{4})*([A-Za-z0-9+/]{4}|[A-Za-z0-9+/]{3}=|[A-Za-z0-9+/]{2}==)$";
 
     @Inject
-    BitbucketAuthentication(@Provider Supplier<Credentials> creds) {
+    BitbucketAuthentication(TenantCredentials creds) {
         this.creds = creds;
     }
 
@@ -0,0 +1,363 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.filters;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.jclouds.http.HttpException;
+import org.jclouds.http.HttpRequest;
+import org.jclouds.http.HttpRequestFilter;
+import org.jclouds.http.HttpResponse;
+import org.jclouds.http.HttpUtils;
+import org.jclouds.io.Payload;
+import org.jclouds.io.Payloads;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.util.Closeables2;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.net.HttpHeaders;
+
+/**
+ * Conditional request cache for GET requests. Bodies of responses carrying
+ * an ETag or Last-Modified validator are kept per URL and credential, and
+ * the next GET of the same URL with the same credential is sent with
+ * If-None-Match or If-Modified-Since. A 304 Not Modified is then turned
+ * back into a 200 carrying the kept body, so endpoints parse and return it
+ * as if the server had sent it again.
+ *
+ * <p>Kept bodies are bounded by a byte budget, evicting the least recently
+ * used entries first. Responses larger than the budget are passed on
+ * untouched. A budget of 0, the default, turns the cache off.</p>
+ *
+ * <p>Requests are handed over to the response hook of the HTTP driver,
+ * see {@link #onResponse(HttpResponse)} and {@link #takeExchange()}, through
+ * the sending thread. The drivers selected through
+ * {@code BitbucketClient.Builder.httpDriver} call the hook, and the filter
+ * must come after {@link BitbucketAuthentication} so that requests made
+ * under different credentials are kept apart.</p>
+ */
+@Singleton
+public class ConditionalRequestCache implements HttpRequestFilter {
+
+    public static final String MAX_BYTES = "bitbucket.rest.conditional-request-cache.max-bytes";
+
+    private final long maxBytes;
+    private final ThreadLocal<Exchange> pending = new ThreadLocal<Exchange>();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long sizeBytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    @Inject
+    ConditionalRequestCache(@Named(MAX_BYTES) long maxBytes) {
+        checkArgument(maxBytes >= 0, "maxBytes must be >= 0");
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public HttpRequest filter(HttpRequest request) throws HttpException {
+        if (maxBytes == 0 || !"GET".equals(request.getMethod())) {
+            pending.remove();
+            return request;
+        }
+
+        String key = key(request);
+        if (request.getFirstHeaderOrNull(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getFirstHeaderOrNull(HttpHeaders.IF_MODIFIED_SINCE) != null) {
+            // the caller revalidates on its own, a 304 is for it to handle
+            pending.set(new Exchange(key, null));
+            return request;
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        pending.set(new Exchange(key, entry));
+        if (entry == null) {
+            return request;
+        }
+        HttpRequest.Builder<?> builder = request.toBuilder();
+        if (entry.etag != null) {
+            builder.addHeader(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            builder.addHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Response hook for drivers producing jclouds responses. Turns a 304 for
+     * a request revalidated by this cache into a 200 carrying the kept body,
+     * and keeps the body of a 200 carrying validators.
+     *
+     * @param response the response to the request last filtered on this thread
+     * @return the response to hand on
+     * @throws IOException if reading the body to keep fails
+     */
+    public HttpResponse onResponse(HttpResponse response) throws IOException {
+        Exchange exchange = takeExchange();
+        if (exchange == null) {
+            return response;
+        }
+
+        if (exchange.isNotModified(response.getStatusCode())) {
+            Closeables2.closeQuietly(response.getPayload());
+            Payload payload = Payloads.newByteArrayPayload(exchange.notModifiedBody());
+            payload.getContentMetadata().setContentType(exchange.notModifiedContentType());
+            return response.toBuilder().statusCode(200).message("OK").payload(payload).build();
+        }
+
+        Payload payload = response.getPayload();
+        if (response.getStatusCode() != 200 || payload == null) {
+            return response;
+        }
+        Long contentLength = payload.getContentMetadata().getContentLength();
+        InputStream body = exchange.modified(response.getFirstHeaderOrNull(HttpHeaders.ETAG),
+                response.getFirstHeaderOrNull(HttpHeaders.LAST_MODIFIED),
+                payload.getContentMetadata().getContentType(), contentLength != null ? contentLength : -1,
+                payload.openStream());
+        Payload replacement = Payloads.newInputStreamPayload(body);
+        HttpUtils.copy(payload.getContentMetadata(), replacement.getContentMetadata());
+        return response.toBuilder().payload(replacement).build();
+    }
+
+    /**
+     * Response hook for drivers working on responses of their own: takes
+     * the exchange the request last filtered on this thread started.
+     *
+     * @return the Exchange, or null if the request is of no concern to this cache
+     */
+    @Nullable
+    public Exchange takeExchange() {
+        Exchange exchange = pending.get();
+        pending.remove();
+        return exchange;
+    }
+
+    /**
+     * Number of 304 Not Modified responses answered with a kept body.
+     *
+     * @return number of hits
+     */
+    public long hitCount() {
+        synchronized (entries) {
+            return hitCount;
+        }
+    }
+
+    /**
+     * Number of GET responses which came back with a full body.
+     *
+     * @return number of misses
+     */
+    public long missCount() {
+        synchronized (entries) {
+            return missCount;
+        }
+    }
+
+    /**
+     * Number of entries evicted to stay within the byte budget.
+     *
+     * @return number of evictions
+     */
+    public long evictionCount() {
+        synchronized (entries) {
+            return evictionCount;
+        }
+    }
+
+    /**
+     * Approximate number of bytes kept.
+     *
+     * @return bytes kept
+     */
+    public long sizeBytes() {
+        synchronized (entries) {
+            return sizeBytes;
+        }
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Drop all kept bodies.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            sizeBytes = 0;
+        }
+    }
+
+    private void put(String key, @Nullable Entry entry) {
+        synchronized (entries) {
+            missCount++;
+            Entry previous = entry != null ? entries.put(key, entry) : entries.remove(key);
+            if (previous != null) {
+                sizeBytes -= previous.size;
+            }
+            if (entry == null) {
+                return;
+            }
+            sizeBytes += entry.size;
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (sizeBytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> evicted = eldest.next();
+                sizeBytes -= evicted.getValue().size;
+                eldest.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    private void hit() {
+        synchronized (entries) {
+            hitCount++;
+        }
+    }
+
+    private static String key(HttpRequest request) {
+        String authorization = request.getFirstHeaderOrNull(HttpHeaders.AUTHORIZATION);
+        // never keep credentials around, a digest of them tells them apart just as well
+        String credential = authorization != null
+                ? Hashing.sha256().hashString(authorization, Charsets.UTF_8).toString() : "";
+        return credential + " " + request.getEndpoint();
+    }
+
+    /**
+     * A GET request on its way to the server, as handed from this filter to
+     * the response hook of the driver sending it.
+     */
+    public final class Exchange {
+
+        private final String key;
+        private final Entry entry;
+
+        private Exchange(String key, @Nullable Entry entry) {
+            this.key = key;
+            this.entry = entry;
+        }
+
+        /**
+         * Whether a response is a 304 to be answered with the kept body.
+         *
+         * @param statusCode status code of the response
+         * @return true if the response is to be answered with {@link #notModifiedBody()}
+         */
+        public boolean isNotModified(int statusCode) {
+            return statusCode == 304 && entry != null;
+        }
+
+        /**
+         * Kept body to answer a 304 with, counted as a hit.
+         *
+         * @return the body
+         */
+        public byte[] notModifiedBody() {
+            checkState(entry != null, "nothing kept for %s", key);
+            hit();
+            return entry.body;
+        }
+
+        @Nullable
+        public String notModifiedContentType() {
+            return entry != null ? entry.contentType : null;
+        }
+
+        /**
+         * Keep the body of a 200 response if it carries validators and fits
+         * the budget.
+         *
+         * @param etag the ETag header of the response, if any
+         * @param lastModified the Last-Modified header of the response, if any
+         * @param contentType the content type of the response, if any
+         * @param contentLength the declared length of the body, or -1 if unknown
+         * @param body the body of the response
+         * @return stream to read the whole body from in place of the given one
+         * @throws IOException if reading the body fails
+         */
+        public InputStream modified(@Nullable String etag, @Nullable String lastModified, @Nullable String contentType,
+                                    long contentLength, InputStream body) throws IOException {
+            if ((etag == null && lastModified == null) || contentLength > maxBytes) {
+                put(key, null);
+                return body;
+            }
+
+            byte[] buffer = new byte[(int) Math.min(maxBytes + 1, contentLength >= 0 ? contentLength + 1 : 8192)];
+            int length = 0;
+            while (length <= maxBytes) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, (int) Math.min(maxBytes + 1, (long) buffer.length * 2));
+                }
+                int read = body.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    Closeables2.closeQuietly(body);
+                    byte[] kept = Arrays.copyOf(buffer, length);
+                    put(key, new Entry(etag, lastModified, contentType, kept, key.length() * 2L + kept.length));
+                    return new ByteArrayInputStream(kept);
+                }
+                length += read;
+            }
+
+            // too large to keep, hand on what was read so far followed by the rest
+            put(key, null);
+            return new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), body);
+        }
+    }
+
+    /**
+     * A kept body along with its validators.
+     */
+    private static final class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final byte[] body;
+        private final long size;
+
+        private Entry(String etag, String lastModified, String contentType, byte[] body, long size) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+            this.size = size;
+        }
+    }
+}
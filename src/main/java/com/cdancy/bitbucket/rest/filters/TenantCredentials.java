@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.filters;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.domain.Credentials;
+import org.jclouds.javax.annotation.Nullable;
+import org.jclouds.location.Provider;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Credential supplier used by {@link BitbucketAuthentication}. Hands out the
+ * credentials bound to the current thread, if any, and otherwise those the
+ * context was built with. This lets a single context, and with it a single
+ * transport, executor and JSON setup, send requests on behalf of many
+ * accounts (see {@code BitbucketClientFactory}).
+ *
+ * <pre>
+ * Credentials previous = tenantCredentials.bind(new Credentials("N/A", "team-a:secret"));
+ * try {
+ *     api.projectApi().get("PRJ");
+ * } finally {
+ *     tenantCredentials.restore(previous);
+ * }
+ * </pre>
+ *
+ * <p>Binding only holds for requests sent on the binding thread. jclouds
+ * sends requests on the calling thread unless per-method timeouts have been
+ * configured through {@code jclouds.timeouts.*}, which must therefore not be
+ * used together with bound credentials.</p>
+ */
+@Singleton
+public class TenantCredentials implements Supplier<Credentials> {
+
+    private final Supplier<Credentials> defaults;
+    private final ThreadLocal<Credentials> bound = new ThreadLocal<Credentials>();
+
+    @Inject
+    TenantCredentials(@Provider Supplier<Credentials> defaults) {
+        this.defaults = defaults;
+    }
+
+    @Override
+    public Credentials get() {
+        Credentials credentials = bound.get();
+        return credentials != null ? credentials : defaults.get();
+    }
+
+    /**
+     * Bind credentials to the current thread.
+     *
+     * @param credentials the credentials to send requests with
+     * @return the previously bound credentials, to hand to {@link #restore(Credentials)}
+     */
+    public Credentials bind(Credentials credentials) {
+        Credentials previous = bound.get();
+        bound.set(checkNotNull(credentials, "credentials"));
+        return previous;
+    }
+
+    /**
+     * Restore the credentials bound to the current thread before a call to
+     * {@link #bind(Credentials)}.
+     *
+     * @param previous the credentials returned by bind, null if none were bound
+     */
+    public void restore(@Nullable Credentials previous) {
+        if (previous != null) {
+            bound.set(previous);
+        } else {
+            bound.remove();
+        }
+    }
+}
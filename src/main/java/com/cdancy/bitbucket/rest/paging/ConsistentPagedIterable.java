@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * Lazy view over every value of a paged endpoint which copes with values
+ * being created or deleted while the walk is underway. Each value is handed
+ * out at most once, as identified by its natural key, and pages can be made
+ * to overlap so values shifted across a page edge are not missed.
+ *
+ * <pre>
+ * for (PullRequest pr : PagedIterable.of(fetcher, 100)
+ *         .consistent(ConsistentPagedIterable.pullRequestId(), 10)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class ConsistentPagedIterable<T> implements Iterable<T> {
+
+    private static final HashFunction BRANCH_ID_HASH = Hashing.murmur3_128();
+
+    private static final Function<PullRequest, Long> PULL_REQUEST_ID = new Function<PullRequest, Long>() {
+        @Override
+        public Long apply(PullRequest input) {
+            return (long) input.id();
+        }
+    };
+
+    private static final Function<Repository, Long> REPOSITORY_ID = new Function<Repository, Long>() {
+        @Override
+        public Long apply(Repository input) {
+            return (long) input.id();
+        }
+    };
+
+    private static final Function<Project, Long> PROJECT_ID = new Function<Project, Long>() {
+        @Override
+        public Long apply(Project input) {
+            return (long) input.id();
+        }
+    };
+
+    private static final Function<Branch, Long> BRANCH_ID = new Function<Branch, Long>() {
+        @Override
+        public Long apply(Branch input) {
+            return BRANCH_ID_HASH.hashString(input.id(), Charsets.UTF_8).asLong();
+        }
+    };
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final Function<? super T, Long> key;
+    private final int overlap;
+    private final boolean truncateOnErrors;
+
+    protected ConsistentPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                      Function<? super T, Long> key, int overlap) {
+        this(fetcher, start, limit, key, overlap, false);
+    }
+
+    protected ConsistentPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                      Function<? super T, Long> key, int overlap, boolean truncateOnErrors) {
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        checkArgument(overlap >= 0, "overlap must be >= 0");
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        this.key = checkNotNull(key, "key");
+        this.start = start;
+        this.limit = limit;
+        this.overlap = overlap;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    /**
+     * Create a ConsistentPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param key function returning the natural key of a value
+     * @param overlap number of values to re-read ahead of each page edge, 0 to not re-read
+     * @return new ConsistentPagedIterable
+     */
+    public static <T> ConsistentPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                    Function<? super T, Long> key, int overlap) {
+        return new ConsistentPagedIterable<T>(fetcher, start, limit, key, overlap);
+    }
+
+    /**
+     * Create a ConsistentPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param key function returning the natural key of a value
+     * @param overlap number of values to re-read ahead of each page edge, 0 to not re-read
+     * @param truncateOnErrors true to end iteration quietly on a page with errors rather than throw
+     * @return new ConsistentPagedIterable
+     */
+    public static <T> ConsistentPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                    Function<? super T, Long> key, int overlap, boolean truncateOnErrors) {
+        return new ConsistentPagedIterable<T>(fetcher, start, limit, key, overlap, truncateOnErrors);
+    }
+
+    public static Function<PullRequest, Long> pullRequestId() {
+        return PULL_REQUEST_ID;
+    }
+
+    public static Function<Repository, Long> repositoryId() {
+        return REPOSITORY_ID;
+    }
+
+    public static Function<Project, Long> projectId() {
+        return PROJECT_ID;
+    }
+
+    /**
+     * Key of a Branch, being a 64 bit hash of its id as branch ids are
+     * strings (e.g. refs/heads/master).
+     *
+     * @return function returning the hashed Branch id
+     */
+    public static Function<Branch, Long> branchId() {
+        return BRANCH_ID;
+    }
+
+    public int overlap() {
+        return overlap;
+    }
+
+    @Override
+    public ConsistentPagedIterator<T> iterator() {
+        return new ConsistentPagedIterator<T>(fetcher, start, limit, key, overlap, truncateOnErrors);
+    }
+}
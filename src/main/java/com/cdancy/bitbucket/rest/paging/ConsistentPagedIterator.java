@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Iterator which walks the values of a paged endpoint handing out each
+ * value, as identified by its natural key, at most once. Values pushed
+ * onto a later page by values created earlier in the listing while the
+ * walk is underway are therefore not handed out twice.
+ *
+ * <p>With a non-zero overlap each page after the first is requested that
+ * many values before where the previous page ended. Values pulled onto an
+ * earlier page by values deleted earlier in the listing are then picked up
+ * as well, provided no more than the overlap were deleted between pages.</p>
+ *
+ * <p>Should a page come back with errors attached a
+ * {@link PageErrorsException} is thrown rather than hand back a partial set
+ * of values as if it were complete, unless the iterator was created to
+ * truncate on errors, in which case it ends quietly and leaves the errors
+ * to {@link #errors()}.</p>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class ConsistentPagedIterator<T> extends AbstractIterator<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final Integer limit;
+    private final Function<? super T, Long> key;
+    private final int overlap;
+    private final boolean truncateOnErrors;
+    private final LongHashSet seen = new LongHashSet();
+
+    private int requestStart;
+    private int nextStart;
+    private boolean lastPage;
+    private Iterator<T> values = ImmutableList.<T> of().iterator();
+    private List<Error> errors = ImmutableList.of();
+    private int duplicates;
+
+    /**
+     * Create a ConsistentPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param key function returning the natural key of a value
+     * @param overlap number of values to re-read ahead of each page edge
+     */
+    public ConsistentPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                   Function<? super T, Long> key, int overlap) {
+        this(fetcher, start, limit, key, overlap, false);
+    }
+
+    /**
+     * Create a ConsistentPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param key function returning the natural key of a value
+     * @param overlap number of values to re-read ahead of each page edge
+     * @param truncateOnErrors true to end iteration quietly on a page with errors rather than throw
+     */
+    public ConsistentPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                   Function<? super T, Long> key, int overlap, boolean truncateOnErrors) {
+        checkArgument(overlap >= 0, "overlap must be >= 0");
+        this.fetcher = PageSizeController.pin(checkNotNull(fetcher, "fetcher"), limit);
+        this.key = checkNotNull(key, "key");
+        this.nextStart = start;
+        this.requestStart = start;
+        this.limit = limit;
+        this.overlap = overlap;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    @Override
+    protected T computeNext() {
+        while (true) {
+            while (values.hasNext()) {
+                T value = values.next();
+                if (seen.add(key.apply(value))) {
+                    return value;
+                }
+                duplicates++;
+            }
+
+            if (lastPage) {
+                return endOfData();
+            }
+
+            // drop our reference to the exhausted page before requesting the next one
+            values = ImmutableList.<T> of().iterator();
+            int start = requestStart;
+            Page<T> page = fetcher.fetch(start, limit);
+            if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+                errors = ((ErrorsHolder) page).errors();
+                lastPage = true;
+                if (truncateOnErrors) {
+                    return endOfData();
+                }
+                throw new PageErrorsException("page at offset " + start + " of " + fetcher.endpoint()
+                        + " came back with errors", errors);
+            }
+
+            // guard against a server handing back a page that does not move us forward
+            lastPage = page.isLastPage() || page.nextPageStart() <= nextStart;
+            nextStart = page.nextPageStart();
+            values = page.values().iterator();
+
+            // step back over the page edge, but always by less than a full page
+            requestStart = Math.max(start + 1, nextStart - overlap);
+        }
+    }
+
+    /**
+     * Number of values dropped for having been handed out already.
+     *
+     * @return count of duplicate values skipped
+     */
+    public int duplicatesSkipped() {
+        return duplicates;
+    }
+
+    /**
+     * Errors attached to the page which ended iteration, if any. Iteration
+     * only ends quietly on errors if this iterator truncates on errors.
+     *
+     * @return list of Error's or empty list if iteration ended normally
+     */
+    public List<Error> errors() {
+        return errors;
+    }
+}
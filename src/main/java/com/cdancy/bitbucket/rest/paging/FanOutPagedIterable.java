@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutorService;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.google.common.base.Function;
+
+/**
+ * Lazy view over every value of a paged endpoint which, once the first page
+ * reveals the total number of values, fetches all remaining pages
+ * concurrently with bounded parallelism.
+ *
+ * <pre>
+ * PageFetcher&lt;Commit&gt; commits = PageFetchers.commits(api, "PRJ", "my-repo", 101, true);
+ * for (Commit commit : FanOutPagedIterable.of(commits, 0, 100, executor, 4,
+ *         FanOutPagedIterable.commitTotalCount(), true)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class FanOutPagedIterable<T> implements Iterable<T> {
+
+    private static final Function<Page<Commit>, Integer> COMMIT_TOTAL_COUNT = new Function<Page<Commit>, Integer>() {
+        @Override
+        public Integer apply(Page<Commit> input) {
+            return input instanceof CommitPage ? ((CommitPage) input).totalCount() : null;
+        }
+    };
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final Function<? super Page<T>, Integer> totalCount;
+    private final boolean inOrder;
+    private final boolean truncateOnErrors;
+
+    protected FanOutPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                  ExecutorService executor, int parallelism,
+                                  Function<? super Page<T>, Integer> totalCount, boolean inOrder) {
+        this(fetcher, start, limit, executor, parallelism, totalCount, inOrder, false);
+    }
+
+    protected FanOutPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                  ExecutorService executor, int parallelism,
+                                  Function<? super Page<T>, Integer> totalCount, boolean inOrder,
+                                  boolean truncateOnErrors) {
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        checkArgument(parallelism >= 1, "parallelism must be >= 1");
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        this.executor = checkNotNull(executor, "executor");
+        this.totalCount = checkNotNull(totalCount, "totalCount");
+        this.start = start;
+        this.limit = limit;
+        this.parallelism = parallelism;
+        this.inOrder = inOrder;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    /**
+     * Create a FanOutPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param parallelism max number of pages to have in flight at once
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @param inOrder true to hand out values in offset order, false to hand them out as pages complete
+     * @return new FanOutPagedIterable
+     */
+    public static <T> FanOutPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                ExecutorService executor, int parallelism,
+                                                Function<? super Page<T>, Integer> totalCount, boolean inOrder) {
+        return new FanOutPagedIterable<T>(fetcher, start, limit, executor, parallelism, totalCount, inOrder);
+    }
+
+    /**
+     * Create a FanOutPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param parallelism max number of pages to have in flight at once
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @param inOrder true to hand out values in offset order, false to hand them out as pages complete
+     * @param truncateOnErrors true to end quietly on a page with errors rather than throw
+     * @return new FanOutPagedIterable
+     */
+    public static <T> FanOutPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                ExecutorService executor, int parallelism,
+                                                Function<? super Page<T>, Integer> totalCount, boolean inOrder,
+                                                boolean truncateOnErrors) {
+        return new FanOutPagedIterable<T>(fetcher, start, limit, executor, parallelism, totalCount, inOrder, truncateOnErrors);
+    }
+
+    /**
+     * Total count as reported by a CommitPage. The commits must have been
+     * requested with counts (e.g. withCounts=true) for this to be known.
+     *
+     * @return function returning the total count or null if not reported
+     */
+    public static Function<Page<Commit>, Integer> commitTotalCount() {
+        return COMMIT_TOTAL_COUNT;
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    public boolean inOrder() {
+        return inOrder;
+    }
+
+    @Override
+    public FanOutPagedIterator<T> iterator() {
+        return new FanOutPagedIterator<T>(fetcher, start, limit, executor, parallelism, totalCount, inOrder, truncateOnErrors);
+    }
+}
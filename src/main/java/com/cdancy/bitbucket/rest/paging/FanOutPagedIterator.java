@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Iterator which, once the first page reveals the total number of values,
+ * requests every remaining page concurrently instead of one after the other.
+ *
+ * <p>At most {@code parallelism} pages are in flight or waiting to be
+ * consumed at any point in time. Pages are handed out either in offset
+ * order or in the order they complete. Should the first page not carry a
+ * total we fall back to walking the remaining pages sequentially.</p>
+ *
+ * <p>Should a page come back with errors attached the outstanding requests
+ * are cancelled and a {@link PageErrorsException} is thrown, unless the
+ * iterator was created to truncate on errors, in which case it ends quietly
+ * and leaves the errors to {@link #errors()}.</p>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class FanOutPagedIterator<T> extends AbstractIterator<T> implements Closeable {
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final int parallelism;
+    private final Function<? super Page<T>, Integer> totalCount;
+    private final boolean inOrder;
+    private final boolean truncateOnErrors;
+    private final ExecutorService executor;
+    private final CompletionService<Page<T>> completed;
+    private final Deque<Future<Page<T>>> submitted = new ArrayDeque<Future<Page<T>>>();
+
+    private boolean started;
+    private int nextOffset;
+    private int stride;
+    private int total;
+    private PagedIterator<T> sequential;
+    private Iterator<T> values = ImmutableList.<T> of().iterator();
+    private List<Error> errors = ImmutableList.of();
+
+    /**
+     * Create a FanOutPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param parallelism max number of pages to have in flight at once
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @param inOrder true to hand out pages in offset order, false to hand them out as they complete
+     */
+    public FanOutPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                               ExecutorService executor, int parallelism,
+                               Function<? super Page<T>, Integer> totalCount, boolean inOrder) {
+        this(fetcher, start, limit, executor, parallelism, totalCount, inOrder, false);
+    }
+
+    /**
+     * Create a FanOutPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param parallelism max number of pages to have in flight at once
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @param inOrder true to hand out pages in offset order, false to hand them out as they complete
+     * @param truncateOnErrors true to end quietly on a page with errors rather than throw
+     */
+    public FanOutPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                               ExecutorService executor, int parallelism,
+                               Function<? super Page<T>, Integer> totalCount, boolean inOrder,
+                               boolean truncateOnErrors) {
+        checkArgument(parallelism >= 1, "parallelism must be >= 1");
+        checkNotNull(executor, "executor");
+        this.fetcher = PageSizeController.pin(checkNotNull(fetcher, "fetcher"), limit);
+        this.totalCount = checkNotNull(totalCount, "totalCount");
+        this.start = start;
+        this.limit = limit;
+        this.parallelism = parallelism;
+        this.inOrder = inOrder;
+        this.truncateOnErrors = truncateOnErrors;
+        this.executor = executor;
+        this.completed = new ExecutorCompletionService<Page<T>>(executor);
+    }
+
+    @Override
+    protected T computeNext() {
+        while (!values.hasNext()) {
+            if (!started) {
+                started = true;
+                Page<T> first = fetcher.fetch(start, limit);
+                if (failed(first)) {
+                    return endOnErrors();
+                }
+                values = first.values().iterator();
+                if (!first.isLastPage() && first.nextPageStart() > start) {
+                    Integer foundTotal = totalCount.apply(first);
+                    if (foundTotal != null) {
+                        stride = first.nextPageStart() - start;
+                        nextOffset = first.nextPageStart();
+                        total = foundTotal;
+                        fill();
+                    } else {
+                        // errors of the sequential walk are handed up and dealt with like those of fanned out pages
+                        sequential = new PagedIterator<T>(fetcher, first.nextPageStart(), limit, true);
+                    }
+                }
+                continue;
+            }
+
+            if (sequential != null) {
+                if (sequential.hasNext()) {
+                    return sequential.next();
+                }
+                errors = sequential.errors();
+                return errors.isEmpty() ? endOfData() : endOnErrors();
+            }
+
+            if (submitted.isEmpty()) {
+                return endOfData();
+            }
+
+            values = ImmutableList.<T> of().iterator();
+            Page<T> page = take();
+            if (failed(page)) {
+                close();
+                return endOnErrors();
+            }
+            fill();
+            values = page.values().iterator();
+        }
+        return values.next();
+    }
+
+    /**
+     * Errors attached to the page which ended iteration, if any. Iteration
+     * only ends quietly on errors if this iterator truncates on errors.
+     *
+     * @return list of Error's or empty list if iteration ended normally
+     */
+    public List<Error> errors() {
+        return errors;
+    }
+
+    /**
+     * Cancel all outstanding requests. Should be called by callers that
+     * abandon iteration before reaching the last page.
+     */
+    @Override
+    public void close() {
+        for (Future<Page<T>> future : submitted) {
+            future.cancel(true);
+        }
+        submitted.clear();
+        nextOffset = total;
+    }
+
+    private boolean failed(Page<T> page) {
+        if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+            errors = ((ErrorsHolder) page).errors();
+            return true;
+        }
+        return false;
+    }
+
+    private T endOnErrors() {
+        if (truncateOnErrors) {
+            return endOfData();
+        }
+        throw new PageErrorsException("page of " + fetcher.endpoint() + " came back with errors", errors);
+    }
+
+    private void fill() {
+        while (submitted.size() < parallelism && nextOffset < total) {
+            final int offset = nextOffset;
+            Callable<Page<T>> task = new Callable<Page<T>>() {
+                @Override
+                public Page<T> call() {
+                    return fetcher.fetch(offset, limit);
+                }
+            };
+            submitted.add(inOrder ? executor.submit(task) : completed.submit(task));
+            nextOffset += stride;
+        }
+    }
+
+    private Page<T> take() {
+        try {
+            Future<Page<T>> next = inOrder ? submitted.poll() : takeCompleted();
+            submitted.remove(next);
+            return Uninterruptibles.getUninterruptibly(next);
+        } catch (ExecutionException e) {
+            close();
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Future<Page<T>> takeCompleted() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return completed.take();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
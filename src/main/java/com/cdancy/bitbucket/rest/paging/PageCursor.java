@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Position within a paged endpoint which a walk can be resumed from, for
+ * example after a crawler has been restarted. Records the endpoint, the
+ * arguments its fetcher was created with and the offset of the next value.
+ *
+ * <p>Nested walks are covered by attaching the cursor of the inner walk as
+ * the child of the outer one. The outer cursor should then point at the
+ * value the inner walk belongs to (see {@link PagedIterator#currentCursor()})
+ * so that resuming visits it again:</p>
+ *
+ * <pre>
+ * PageCursor saved = PageCursor.decode(checkpoint);
+ * PagedIterator&lt;Project&gt; projects = PagedIterable.resume(
+ *         PageFetchers.projects(api.projectApi(), null, null), saved, 100).iterator();
+ * PageCursor child = saved.child();
+ * while (projects.hasNext()) {
+ *     PageFetcher&lt;Repository&gt; fetcher = PageFetchers.repositories(api.repositoryApi(), projects.next().key());
+ *     PagedIterator&lt;Repository&gt; repos = PagedIterable.resume(fetcher, child, 100).iterator();
+ *     child = null;
+ *     while (repos.hasNext()) {
+ *         ...
+ *         checkpoint = projects.currentCursor().withChild(repos.cursor()).encode();
+ *     }
+ * }
+ * </pre>
+ */
+@AutoValue
+public abstract class PageCursor {
+
+    private static final int FORMAT_VERSION = 1;
+
+    public abstract String endpoint();
+
+    public abstract Map<String, String> args();
+
+    public abstract int nextStart();
+
+    @Nullable
+    public abstract PageCursor child();
+
+    PageCursor() {
+    }
+
+    public static PageCursor create(String endpoint, Map<String, String> args, int nextStart, @Nullable PageCursor child) {
+        checkArgument(nextStart >= 0, "nextStart must be >= 0");
+        return new AutoValue_PageCursor(checkNotNull(endpoint, "endpoint"), ImmutableMap.copyOf(args), nextStart, child);
+    }
+
+    public static PageCursor of(PageFetcher<?> fetcher, int nextStart) {
+        return create(fetcher.endpoint(), fetcher.args(), nextStart, null);
+    }
+
+    public PageCursor withChild(@Nullable PageCursor child) {
+        return create(endpoint(), args(), nextStart(), child);
+    }
+
+    /**
+     * Whether this cursor was taken from a walk over the same endpoint
+     * with the same arguments as the given fetcher.
+     *
+     * @param fetcher the fetcher to compare against
+     * @return true if this cursor can be used to resume the fetcher
+     */
+    public boolean matches(PageFetcher<?> fetcher) {
+        return endpoint().equals(fetcher.endpoint()) && args().equals(fetcher.args());
+    }
+
+    /**
+     * Compact binary form of this cursor, including any children.
+     *
+     * @return the encoded cursor
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(FORMAT_VERSION);
+            write(this, out);
+            out.flush();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compact, URL safe, string form of this cursor, including any children.
+     *
+     * @return the encoded cursor
+     */
+    public String encode() {
+        return BaseEncoding.base64Url().omitPadding().encode(toBytes());
+    }
+
+    /**
+     * Read a cursor back from the form produced by {@link #toBytes()}.
+     *
+     * @param bytes the encoded cursor
+     * @return the decoded PageCursor
+     */
+    public static PageCursor fromBytes(byte[] bytes) {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(checkNotNull(bytes, "bytes")));
+        try {
+            int version = in.readUnsignedByte();
+            checkArgument(version == FORMAT_VERSION, "unsupported cursor format %s", version);
+            return read(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("malformed cursor", e);
+        }
+    }
+
+    /**
+     * Read a cursor back from the form produced by {@link #encode()}.
+     *
+     * @param encoded the encoded cursor
+     * @return the decoded PageCursor
+     */
+    public static PageCursor decode(String encoded) {
+        return fromBytes(BaseEncoding.base64Url().omitPadding().decode(checkNotNull(encoded, "encoded")));
+    }
+
+    private static void write(PageCursor cursor, DataOutputStream out) throws IOException {
+        out.writeUTF(cursor.endpoint());
+        out.writeInt(cursor.nextStart());
+        out.writeByte(cursor.args().size());
+        for (Map.Entry<String, String> arg : cursor.args().entrySet()) {
+            out.writeUTF(arg.getKey());
+            out.writeUTF(arg.getValue());
+        }
+        out.writeBoolean(cursor.child() != null);
+        if (cursor.child() != null) {
+            write(cursor.child(), out);
+        }
+    }
+
+    private static PageCursor read(DataInputStream in) throws IOException {
+        String endpoint = in.readUTF();
+        int nextStart = in.readInt();
+        int argCount = in.readUnsignedByte();
+        ImmutableMap.Builder<String, String> args = ImmutableMap.builder();
+        for (int i = 0; i < argCount; i++) {
+            args.put(in.readUTF(), in.readUTF());
+        }
+        PageCursor child = in.readBoolean() ? read(in) : null;
+        return create(endpoint, args.build(), nextStart, child);
+    }
+}
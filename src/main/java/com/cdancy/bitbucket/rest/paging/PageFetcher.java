@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import java.util.Map;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Page;
+
+/**
+ * Fetches a single page from one of the paged endpoints. Implementations
+ * for the endpoints we support can be had from {@link PageFetchers}.
+ *
+ * @param <T> type of the values held in each page
+ */
+public interface PageFetcher<T> {
+
+    /**
+     * Name of the endpoint backing this fetcher.
+     *
+     * @return the value of the endpoint's Named annotation (e.g. pull-request:list)
+     */
+    String endpoint();
+
+    /**
+     * Arguments, other than start and limit, this fetcher was created with.
+     * Arguments which were left null are omitted.
+     *
+     * @return map of argument name to its string form
+     */
+    Map<String, String> args();
+
+    /**
+     * Fetch the page beginning at the given offset.
+     *
+     * @param start offset of the first value to return
+     * @param limit max number of values to return or null for the server default
+     * @return the requested Page
+     */
+    Page<T> fetch(int start, @Nullable Integer limit);
+}
@@ -0,0 +1,432 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.Deadline;
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.Change;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.features.BranchApi;
+import com.cdancy.bitbucket.rest.features.ProjectApi;
+import com.cdancy.bitbucket.rest.features.PullRequestApi;
+import com.cdancy.bitbucket.rest.features.RepositoryApi;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+
+/**
+ * Factory methods for creating a {@link PageFetcher} on top of each of the
+ * paged endpoints. Every parameter other than start and limit is fixed
+ * at creation time.
+ */
+public final class PageFetchers {
+
+    private static final Set<String> STREAMING_ENDPOINTS = ImmutableSet.of("project:list", "repository:list", "branch:list",
+            "pull-request:list", "pull-request:changes", "pull-request:commits");
+
+    /**
+     * Fetcher for ProjectApi.list.
+     *
+     * @param api the ProjectApi to fetch with
+     * @param name optional name filter
+     * @param permission optional permission filter
+     * @return PageFetcher of Project's
+     */
+    public static PageFetcher<Project> projects(final ProjectApi api,
+                                                @Nullable final String name,
+                                                @Nullable final String permission) {
+        checkNotNull(api, "api");
+        return new PageFetcher<Project>() {
+            @Override
+            public String endpoint() {
+                return "project:list";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("name", name, "permission", permission);
+            }
+
+            @Override
+            public Page<Project> fetch(int start, Integer limit) {
+                return api.list(name, permission, start, limit);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for RepositoryApi.list.
+     *
+     * @param api the RepositoryApi to fetch with
+     * @param project the project to list repositories of
+     * @return PageFetcher of Repository's
+     */
+    public static PageFetcher<Repository> repositories(final RepositoryApi api,
+                                                       final String project) {
+        checkNotNull(api, "api");
+        return new PageFetcher<Repository>() {
+            @Override
+            public String endpoint() {
+                return "repository:list";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("project", project);
+            }
+
+            @Override
+            public Page<Repository> fetch(int start, Integer limit) {
+                return api.list(project, start, limit);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for BranchApi.list.
+     *
+     * @param api the BranchApi to fetch with
+     * @param project the project the repository lives in
+     * @param repo the repository to list branches of
+     * @param base optional base branch or tag
+     * @param details optional flag to request branch details
+     * @param filterText optional text to filter branches by
+     * @param orderBy optional ordering (e.g. ALPHABETICAL or MODIFICATION)
+     * @return PageFetcher of Branch's
+     */
+    public static PageFetcher<Branch> branches(final BranchApi api,
+                                               final String project,
+                                               final String repo,
+                                               @Nullable final String base,
+                                               @Nullable final String details,
+                                               @Nullable final String filterText,
+                                               @Nullable final String orderBy) {
+        checkNotNull(api, "api");
+        return new PageFetcher<Branch>() {
+            @Override
+            public String endpoint() {
+                return "branch:list";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("project", project, "repo", repo, "base", base, "details", details,
+                        "filterText", filterText, "orderBy", orderBy);
+            }
+
+            @Override
+            public Page<Branch> fetch(int start, Integer limit) {
+                return api.list(project, repo, base, details, filterText, orderBy, start, limit);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for PullRequestApi.list.
+     *
+     * @param api the PullRequestApi to fetch with
+     * @param project the project the repository lives in
+     * @param repo the repository to list pull requests of
+     * @param direction optional direction (e.g. INCOMING or OUTGOING)
+     * @param at optional fully-qualified branch ID
+     * @param state optional state (e.g. OPEN, DECLINED, MERGED or ALL)
+     * @param order optional order (e.g. NEWEST or OLDEST)
+     * @param withAttributes optional flag to include attributes
+     * @param withProperties optional flag to include properties
+     * @return PageFetcher of PullRequest's
+     */
+    public static PageFetcher<PullRequest> pullRequests(final PullRequestApi api,
+                                                        final String project,
+                                                        final String repo,
+                                                        @Nullable final String direction,
+                                                        @Nullable final String at,
+                                                        @Nullable final String state,
+                                                        @Nullable final String order,
+                                                        @Nullable final Boolean withAttributes,
+                                                        @Nullable final Boolean withProperties) {
+        checkNotNull(api, "api");
+        return new PageFetcher<PullRequest>() {
+            @Override
+            public String endpoint() {
+                return "pull-request:list";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("project", project, "repo", repo, "direction", direction, "at", at,
+                        "state", state, "order", order, "withAttributes", withAttributes, "withProperties", withProperties);
+            }
+
+            @Override
+            public Page<PullRequest> fetch(int start, Integer limit) {
+                return api.list(project, repo, direction, at, state, order, withAttributes, withProperties, start, limit);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for PullRequestApi.changes.
+     *
+     * @param api the PullRequestApi to fetch with
+     * @param project the project the repository lives in
+     * @param repo the repository the pull request belongs to
+     * @param pullRequestId the pull request to list changes of
+     * @param withComments optional flag to include comment counts
+     * @return PageFetcher of Change's
+     */
+    public static PageFetcher<Change> changes(final PullRequestApi api,
+                                              final String project,
+                                              final String repo,
+                                              final int pullRequestId,
+                                              @Nullable final Boolean withComments) {
+        checkNotNull(api, "api");
+        return new PageFetcher<Change>() {
+            @Override
+            public String endpoint() {
+                return "pull-request:changes";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("project", project, "repo", repo, "pullRequestId", pullRequestId,
+                        "withComments", withComments);
+            }
+
+            @Override
+            public Page<Change> fetch(int start, Integer limit) {
+                return api.changes(project, repo, pullRequestId, withComments, limit, start);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for PullRequestApi.commits.
+     *
+     * @param api the PullRequestApi to fetch with
+     * @param project the project the repository lives in
+     * @param repo the repository the pull request belongs to
+     * @param pullRequestId the pull request to list commits of
+     * @param withCounts optional flag to include author and total counts
+     * @return PageFetcher of Commit's
+     */
+    public static PageFetcher<Commit> commits(final PullRequestApi api,
+                                              final String project,
+                                              final String repo,
+                                              final int pullRequestId,
+                                              @Nullable final Boolean withCounts) {
+        checkNotNull(api, "api");
+        return new PageFetcher<Commit>() {
+            @Override
+            public String endpoint() {
+                return "pull-request:commits";
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return argsOf("project", project, "repo", repo, "pullRequestId", pullRequestId,
+                        "withCounts", withCounts);
+            }
+
+            @Override
+            public Page<Commit> fetch(int start, Integer limit) {
+                return api.commits(project, repo, pullRequestId, withCounts, limit, start);
+            }
+        };
+    }
+
+    /**
+     * Fetcher for the endpoint and arguments recorded in the given cursor.
+     *
+     * @param api the BitbucketApi to fetch with
+     * @param cursor the cursor to recreate the fetcher of
+     * @return PageFetcher for the cursor's endpoint
+     * @throws IllegalArgumentException if the cursor's endpoint is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PageFetcher<T> fromCursor(BitbucketApi api, PageCursor cursor) {
+        checkNotNull(api, "api");
+        Map<String, String> args = cursor.args();
+        PageFetcher<?> fetcher;
+        switch (cursor.endpoint()) {
+            case "project:list":
+                fetcher = projects(api.projectApi(), args.get("name"), args.get("permission"));
+                break;
+            case "repository:list":
+                fetcher = repositories(api.repositoryApi(), args.get("project"));
+                break;
+            case "branch:list":
+                fetcher = branches(api.branchApi(), args.get("project"), args.get("repo"), args.get("base"),
+                        args.get("details"), args.get("filterText"), args.get("orderBy"));
+                break;
+            case "pull-request:list":
+                fetcher = pullRequests(api.pullRequestApi(), args.get("project"), args.get("repo"),
+                        args.get("direction"), args.get("at"), args.get("state"), args.get("order"),
+                        toBoolean(args.get("withAttributes")), toBoolean(args.get("withProperties")));
+                break;
+            case "pull-request:changes":
+                fetcher = changes(api.pullRequestApi(), args.get("project"), args.get("repo"),
+                        Integer.parseInt(args.get("pullRequestId")), toBoolean(args.get("withComments")));
+                break;
+            case "pull-request:commits":
+                fetcher = commits(api.pullRequestApi(), args.get("project"), args.get("repo"),
+                        Integer.parseInt(args.get("pullRequestId")), toBoolean(args.get("withCounts")));
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported endpoint " + cursor.endpoint());
+        }
+        return (PageFetcher<T>) fetcher;
+    }
+
+    /**
+     * Fetcher for the same endpoint and arguments as the given one, which
+     * fetches each page through the endpoint's streaming twin (e.g.
+     * PullRequestApi.listStreaming for pull-request:list). Pages are then
+     * parsed straight off the response rather than read into memory first.
+     * The endpoint and arguments reported are those of the given fetcher,
+     * so cursors taken from either can be used with both.
+     *
+     * @param api the BitbucketApi to fetch with
+     * @param fetcher the fetcher to take the endpoint and arguments from
+     * @return PageFetcher handing out StreamingPage's
+     * @throws IllegalArgumentException if the endpoint has no streaming twin
+     */
+    public static <T> PageFetcher<T> streaming(final BitbucketApi api, final PageFetcher<T> fetcher) {
+        checkNotNull(api, "api");
+        checkNotNull(fetcher, "fetcher");
+        final String endpoint = fetcher.endpoint();
+        final Map<String, String> args = fetcher.args();
+        checkArgument(STREAMING_ENDPOINTS.contains(endpoint), "no streaming twin for endpoint %s", endpoint);
+        return new PageFetcher<T>() {
+            @Override
+            public String endpoint() {
+                return endpoint;
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return args;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Page<T> fetch(int start, Integer limit) {
+                return (Page<T>) fetchStreaming(api, endpoint, args, start, limit);
+            }
+        };
+    }
+
+    /**
+     * Wrap a fetcher so that every page is fetched within the given
+     * deadline, on whichever thread fetches it. A whole walk, including
+     * prefetching and fanned out ones, is thereby bounded by one budget:
+     * once it is spent requests in flight are aborted and fetching a page
+     * throws a DeadlineExceededException.
+     *
+     * @param fetcher the PageFetcher to wrap
+     * @param deadline the deadline to fetch pages within
+     * @return PageFetcher bounded by the deadline
+     */
+    public static <T> PageFetcher<T> withDeadline(final PageFetcher<T> fetcher, final Deadline deadline) {
+        checkNotNull(fetcher, "fetcher");
+        checkNotNull(deadline, "deadline");
+        return new PageFetcher<T>() {
+            @Override
+            public String endpoint() {
+                return fetcher.endpoint();
+            }
+
+            @Override
+            public Map<String, String> args() {
+                return fetcher.args();
+            }
+
+            @Override
+            public Page<T> fetch(final int start, @Nullable final Integer limit) {
+                try {
+                    return deadline.call(new Callable<Page<T>>() {
+                        @Override
+                        public Page<T> call() {
+                            return fetcher.fetch(start, limit);
+                        }
+                    });
+                } catch (Exception e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        };
+    }
+
+    private static StreamingPage<?> fetchStreaming(BitbucketApi api, String endpoint, Map<String, String> args,
+                                                   int start, @Nullable Integer limit) {
+        switch (endpoint) {
+            case "project:list":
+                return api.projectApi().listStreaming(args.get("name"), args.get("permission"), start, limit);
+            case "repository:list":
+                return api.repositoryApi().listStreaming(args.get("project"), start, limit);
+            case "branch:list":
+                return api.branchApi().listStreaming(args.get("project"), args.get("repo"), args.get("base"),
+                        args.get("details"), args.get("filterText"), args.get("orderBy"), start, limit);
+            case "pull-request:list":
+                return api.pullRequestApi().listStreaming(args.get("project"), args.get("repo"),
+                        args.get("direction"), args.get("at"), args.get("state"), args.get("order"),
+                        toBoolean(args.get("withAttributes")), toBoolean(args.get("withProperties")), start, limit);
+            case "pull-request:changes":
+                return api.pullRequestApi().changesStreaming(args.get("project"), args.get("repo"),
+                        Integer.parseInt(args.get("pullRequestId")), toBoolean(args.get("withComments")), limit, start);
+            case "pull-request:commits":
+                return api.pullRequestApi().commitsStreaming(args.get("project"), args.get("repo"),
+                        Integer.parseInt(args.get("pullRequestId")), toBoolean(args.get("withCounts")), limit, start);
+            default:
+                throw new IllegalArgumentException("no streaming twin for endpoint " + endpoint);
+        }
+    }
+
+    // builds an argument map from name/value pairs, leaving out null values
+    private static Map<String, String> argsOf(Object... namesAndValues) {
+        Map<String, String> args = Maps.newLinkedHashMap();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (namesAndValues[i + 1] != null) {
+                args.put(namesAndValues[i].toString(), namesAndValues[i + 1].toString());
+            }
+        }
+        return Collections.unmodifiableMap(args);
+    }
+
+    private static Boolean toBoolean(@Nullable String value) {
+        return value != null ? Boolean.valueOf(value) : null;
+    }
+
+    private PageFetchers() {
+        throw new UnsupportedOperationException("intentionally unimplemented");
+    }
+}
@@ -0,0 +1,324 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Maps;
+
+/**
+ * Learns a page size for each paged endpoint, keyed by the endpoint's
+ * {@code @Named} id, from the latency and number of values of the pages
+ * it observes.
+ *
+ * <p>Starting from the initial limit the page size is doubled, up to the
+ * maximum, for as long as latency stays roughly flat. It is halved, down to
+ * the minimum, whenever a page comes back markedly slower than usual or a
+ * request times out. A page holding fewer values than requested while not
+ * being the last page means the server capped it, in which case that size
+ * becomes the ceiling for the endpoint.</p>
+ *
+ * <p>Learned sizes are kept for the lifetime of the controller, so a single
+ * instance should be shared per client (see {@code BitbucketClient.pageSizes()}).
+ * Fetchers are wired up through {@link #adapt(PageFetcher)}:</p>
+ *
+ * <pre>
+ * for (Branch branch : PagedIterable.of(controller.adapt(PageFetchers.branches(api, "PRJ", "my-repo",
+ *         null, null, null, null)))) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * <p>As the page size may change between requests, walks which derive
+ * offsets from the size of their pages ({@link FanOutPagedIterable},
+ * {@link PrefetchingPagedIterable}, {@link ParallelPages} and
+ * {@link ConsistentPagedIterable}) fix the page size of an adapted fetcher
+ * when they start. Only sequential walks pick up a newly learned size from
+ * one page to the next.</p>
+ */
+public class PageSizeController {
+
+    public static final int DEFAULT_MIN_LIMIT = 25;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+
+    // latency within this factor of the running average counts as flat
+    private static final double FLAT_FACTOR = 1.25;
+
+    // latency beyond this factor of the running average counts as slow
+    private static final double SLOW_FACTOR = 2.0;
+
+    // weight given to the newest sample in the running average
+    private static final double SMOOTHING = 0.3;
+
+    // differences below this many millis are treated as noise
+    private static final double NOISE_FLOOR_MILLIS = 50;
+
+    private final int minLimit;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final ConcurrentMap<String, EndpointState> endpoints = Maps.newConcurrentMap();
+
+    public PageSizeController() {
+        this(DEFAULT_MIN_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT);
+    }
+
+    /**
+     * Create a PageSizeController.
+     *
+     * @param minLimit smallest page size to shrink to
+     * @param initialLimit page size to start each endpoint off with
+     * @param maxLimit largest page size to grow to
+     */
+    public PageSizeController(int minLimit, int initialLimit, int maxLimit) {
+        checkArgument(minLimit > 0, "minLimit must be > 0");
+        checkArgument(initialLimit >= minLimit, "initialLimit must be >= minLimit");
+        checkArgument(maxLimit >= initialLimit, "maxLimit must be >= initialLimit");
+        this.minLimit = minLimit;
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * Page size to use for the next request against the given endpoint.
+     *
+     * @param endpoint the {@code @Named} id of the endpoint
+     * @return the currently learned page size
+     */
+    public int limit(String endpoint) {
+        return state(endpoint).limit();
+    }
+
+    /**
+     * Feed the outcome of a page request back into the controller.
+     *
+     * @param endpoint the {@code @Named} id of the endpoint
+     * @param requestedLimit the page size the request was made with
+     * @param page the page which came back
+     * @param latencyNanos how long the request took
+     */
+    public void onPage(String endpoint, int requestedLimit, Page<?> page, long latencyNanos) {
+        checkNotNull(page, "page");
+        if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+            // an error page says nothing about how the endpoint copes with its size
+            return;
+        }
+        state(endpoint).onPage(requestedLimit, page.values().size(), page.isLastPage(),
+                TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+    }
+
+    /**
+     * Feed a timed out page request back into the controller.
+     *
+     * @param endpoint the {@code @Named} id of the endpoint
+     * @param requestedLimit the page size the request was made with
+     */
+    public void onTimeout(String endpoint, int requestedLimit) {
+        state(endpoint).onTimeout(requestedLimit);
+    }
+
+    /**
+     * Wrap a fetcher so that every request uses, and teaches, the learned
+     * page size of its endpoint. A limit handed to the returned fetcher caps
+     * the learned page size rather than replacing it. A request which times
+     * out is retried with a smaller page size until the minimum is reached.
+     *
+     * @param fetcher the PageFetcher to adapt
+     * @return PageFetcher using learned page sizes
+     */
+    public <T> PageFetcher<T> adapt(PageFetcher<T> fetcher) {
+        return new AdaptedFetcher<T>(checkNotNull(fetcher, "fetcher"));
+    }
+
+    /**
+     * Fix the page size of an adapted fetcher for the duration of a walk
+     * which derives offsets from the size of its pages. The returned
+     * fetcher still teaches the controller but always requests the page
+     * size learned at the time of this call, capped by the given limit.
+     * Fetchers not coming from {@link #adapt(PageFetcher)} are returned as is.
+     *
+     * @param fetcher the PageFetcher the walk was given
+     * @param limit page size the walk was given or null
+     * @return PageFetcher to walk with
+     */
+    static <T> PageFetcher<T> pin(PageFetcher<T> fetcher, @Nullable Integer limit) {
+        return fetcher instanceof AdaptedFetcher
+                ? ((AdaptedFetcher<T>) fetcher).pin(limit)
+                : fetcher;
+    }
+
+    public int minLimit() {
+        return minLimit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    private EndpointState state(String endpoint) {
+        checkNotNull(endpoint, "endpoint");
+        EndpointState state = endpoints.get(endpoint);
+        if (state == null) {
+            EndpointState created = new EndpointState(initialLimit, maxLimit);
+            state = endpoints.putIfAbsent(endpoint, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    private static int capped(int learned, @Nullable Integer limit) {
+        return limit != null ? Math.min(learned, limit) : learned;
+    }
+
+    private static boolean isTimeout(Throwable throwable) {
+        for (Throwable cause : Throwables.getCausalChain(throwable)) {
+            if (cause instanceof SocketTimeoutException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fetcher requesting the learned page size of its endpoint.
+     */
+    private final class AdaptedFetcher<T> implements PageFetcher<T> {
+
+        private final PageFetcher<T> fetcher;
+
+        private AdaptedFetcher(PageFetcher<T> fetcher) {
+            this.fetcher = fetcher;
+        }
+
+        @Override
+        public String endpoint() {
+            return fetcher.endpoint();
+        }
+
+        @Override
+        public Map<String, String> args() {
+            return fetcher.args();
+        }
+
+        @Override
+        public Page<T> fetch(int start, @Nullable Integer cap) {
+            while (true) {
+                int limit = capped(limit(fetcher.endpoint()), cap);
+                try {
+                    return fetchAndLearn(start, limit);
+                } catch (RuntimeException e) {
+                    if (!isTimeout(e) || limit <= minLimit) {
+                        throw e;
+                    }
+                }
+            }
+        }
+
+        private PageFetcher<T> pin(@Nullable Integer cap) {
+            final int limit = capped(limit(fetcher.endpoint()), cap);
+            return new PageFetcher<T>() {
+                @Override
+                public String endpoint() {
+                    return fetcher.endpoint();
+                }
+
+                @Override
+                public Map<String, String> args() {
+                    return fetcher.args();
+                }
+
+                @Override
+                public Page<T> fetch(int start, @Nullable Integer ignored) {
+                    return fetchAndLearn(start, limit);
+                }
+            };
+        }
+
+        private Page<T> fetchAndLearn(int start, int limit) {
+            long started = System.nanoTime();
+            try {
+                Page<T> page = fetcher.fetch(start, limit);
+                onPage(fetcher.endpoint(), limit, page, System.nanoTime() - started);
+                return page;
+            } catch (RuntimeException e) {
+                if (isTimeout(e)) {
+                    onTimeout(fetcher.endpoint(), limit);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Learned state of a single endpoint.
+     */
+    private final class EndpointState {
+
+        private int limit;
+        private int ceiling;
+        private double averageMillis = -1;
+
+        private EndpointState(int limit, int ceiling) {
+            this.limit = limit;
+            this.ceiling = ceiling;
+        }
+
+        private synchronized int limit() {
+            return limit;
+        }
+
+        private synchronized void onPage(int requestedLimit, int values, boolean lastPage, long latencyMillis) {
+            if (values < requestedLimit && !lastPage) {
+                ceiling = Math.max(minLimit, values);
+                limit = Math.min(limit, ceiling);
+            }
+
+            // only samples taken at the current size say anything about it
+            if (requestedLimit == limit) {
+                double reference = Math.max(averageMillis, NOISE_FLOOR_MILLIS);
+                if (averageMillis >= 0 && latencyMillis > reference * SLOW_FACTOR) {
+                    limit = Math.max(minLimit, limit / 2);
+                } else if (values == requestedLimit
+                        && (averageMillis < 0 || latencyMillis <= reference * FLAT_FACTOR)) {
+                    limit = Math.min(ceiling, limit * 2);
+                }
+            }
+
+            averageMillis = averageMillis < 0
+                    ? latencyMillis
+                    : averageMillis + SMOOTHING * (latencyMillis - averageMillis);
+        }
+
+        private synchronized void onTimeout(int requestedLimit) {
+            limit = Math.max(minLimit, Math.min(limit, requestedLimit / 2));
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+/**
+ * Lazy view over every value of a paged endpoint. Nothing is fetched until
+ * iteration begins and each call to {@link #iterator()} starts over from
+ * the configured offset.
+ *
+ * <pre>
+ * for (PullRequest pr : PagedIterable.of(PageFetchers.pullRequests(api, "PRJ", "my-repo",
+ *         null, null, "ALL", null, null, null), 100)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class PagedIterable<T> implements Iterable<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final boolean truncateOnErrors;
+
+    protected PagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit) {
+        this(fetcher, start, limit, false);
+    }
+
+    protected PagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit, boolean truncateOnErrors) {
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        this.start = start;
+        this.limit = limit;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    public static <T> PagedIterable<T> of(PageFetcher<T> fetcher) {
+        return new PagedIterable<T>(fetcher, 0, null);
+    }
+
+    public static <T> PagedIterable<T> of(PageFetcher<T> fetcher, @Nullable Integer limit) {
+        return new PagedIterable<T>(fetcher, 0, limit);
+    }
+
+    public static <T> PagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit) {
+        return new PagedIterable<T>(fetcher, start, limit);
+    }
+
+    /**
+     * Create a PagedIterable carrying on from where the given cursor was
+     * taken. Should the cursor be null, or have been taken from a walk
+     * over a different endpoint or with different arguments, the walk
+     * starts from the beginning instead.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param cursor the cursor to resume from or null
+     * @param limit page size or null for the server default
+     * @return new PagedIterable
+     */
+    public static <T> PagedIterable<T> resume(PageFetcher<T> fetcher, @Nullable PageCursor cursor, @Nullable Integer limit) {
+        return resume(fetcher, cursor, limit, false);
+    }
+
+    /**
+     * Create a PagedIterable carrying on from where the given cursor was
+     * taken, as for {@link #resume(PageFetcher, PageCursor, Integer)}.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param cursor the cursor to resume from or null
+     * @param limit page size or null for the server default
+     * @param truncateOnErrors true to end quietly on a page with errors rather than throw
+     * @return new PagedIterable
+     */
+    public static <T> PagedIterable<T> resume(PageFetcher<T> fetcher, @Nullable PageCursor cursor, @Nullable Integer limit,
+                                              boolean truncateOnErrors) {
+        int start = cursor != null && cursor.matches(fetcher) ? cursor.nextStart() : 0;
+        return new PagedIterable<T>(fetcher, start, limit, truncateOnErrors);
+    }
+
+    public PageFetcher<T> fetcher() {
+        return fetcher;
+    }
+
+    public int start() {
+        return start;
+    }
+
+    @Nullable
+    public Integer limit() {
+        return limit;
+    }
+
+    /**
+     * View of this iterable whose iterators end quietly on a page with
+     * errors rather than throw a {@link PageErrorsException}, leaving the
+     * errors to be checked through {@link PagedIterator#errors()}. The
+     * setting carries over to every view taken from the returned iterable,
+     * bar {@link #parallel(Function)} which has no single point at which to
+     * cut a listing short and so always throws.
+     *
+     * @return new PagedIterable truncating on errors
+     */
+    public PagedIterable<T> truncateOnErrors() {
+        return new PagedIterable<T>(fetcher, start, limit, true);
+    }
+
+    /**
+     * View of this iterable which requests upcoming pages in the background.
+     *
+     * @param executor the executor to issue background requests on
+     * @param pages number of pages to request ahead of the caller
+     * @param maxBufferedPages max number of pages to hold in memory at once
+     * @return new PrefetchingPagedIterable
+     */
+    public PrefetchingPagedIterable<T> readAhead(ExecutorService executor, int pages, int maxBufferedPages) {
+        return PrefetchingPagedIterable.of(fetcher, start, limit, executor, pages, maxBufferedPages, truncateOnErrors);
+    }
+
+    /**
+     * View of this iterable which fetches all remaining pages concurrently
+     * once the first page reveals the total number of values.
+     *
+     * @param executor the executor to issue requests on
+     * @param parallelism max number of pages to have in flight at once
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @param inOrder true to hand out values in offset order, false to hand them out as pages complete
+     * @return new FanOutPagedIterable
+     */
+    public FanOutPagedIterable<T> fanOut(ExecutorService executor, int parallelism,
+                                         Function<? super Page<T>, Integer> totalCount, boolean inOrder) {
+        return FanOutPagedIterable.of(fetcher, start, limit, executor, parallelism, totalCount, inOrder, truncateOnErrors);
+    }
+
+    /**
+     * Reactive Streams view of this iterable which only requests pages
+     * while subscribers have outstanding demand.
+     *
+     * @param executor the executor to issue requests and signal subscribers on
+     * @return new PagedPublisher
+     */
+    public PagedPublisher<T> publisher(Executor executor) {
+        return PagedPublisher.of(fetcher, start, limit, executor, truncateOnErrors);
+    }
+
+    /**
+     * View of this iterable which hands out each value at most once and
+     * optionally re-reads values ahead of each page edge.
+     *
+     * @param key function returning the natural key of a value
+     * @param overlap number of values to re-read ahead of each page edge, 0 to not re-read
+     * @return new ConsistentPagedIterable
+     */
+    public ConsistentPagedIterable<T> consistent(Function<? super T, Long> key, int overlap) {
+        return ConsistentPagedIterable.of(fetcher, start, limit, key, overlap, truncateOnErrors);
+    }
+
+    /**
+     * View of this iterable which ends at the first value failing the given
+     * predicate, without requesting any further pages.
+     *
+     * @param predicate the predicate values must satisfy to keep iterating
+     * @return new TakeWhilePagedIterable
+     */
+    public TakeWhilePagedIterable<T> takeWhile(Predicate<? super T> predicate) {
+        return TakeWhilePagedIterable.of(this, predicate);
+    }
+
+    /**
+     * View of this iterable for running per-value work on a ForkJoinPool.
+     *
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @return new ParallelPages
+     */
+    public ParallelPages<T> parallel(Function<? super Page<T>, Integer> totalCount) {
+        return ParallelPages.of(fetcher, start, limit, totalCount);
+    }
+
+    @Override
+    public PagedIterator<T> iterator() {
+        return new PagedIterator<T>(fetcher, start, limit, truncateOnErrors);
+    }
+}
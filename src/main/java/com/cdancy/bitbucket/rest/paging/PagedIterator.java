@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.UnmodifiableIterator;
+
+/**
+ * Iterator which walks the values of a paged endpoint, fetching the next
+ * page only once the values of the current page have been consumed. At
+ * most a single page is referenced at any point in time.
+ *
+ * <p>Should a page come back with errors attached a
+ * {@link PageErrorsException} is thrown, so a failed walk cannot pass for a
+ * complete one. Iterators created to truncate on errors instead stop
+ * quietly, leaving the errors to be checked through {@link #errors()}.</p>
+ *
+ * <p>The position reached can be captured as a {@link PageCursor} at any
+ * point and handed to {@link PagedIterable#resume(PageFetcher, PageCursor, Integer)}
+ * to carry on from there later.</p>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class PagedIterator<T> extends UnmodifiableIterator<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final Integer limit;
+    private final boolean truncateOnErrors;
+
+    private int nextStart;
+    private boolean lastPage;
+    private Iterator<T> values = ImmutableList.<T> of().iterator();
+    private List<Error> errors = ImmutableList.of();
+
+    // offset of the next value in the current page and just past the last value handed out
+    private int valueOffset;
+    private int handedOutOffset;
+    private boolean handedOut;
+
+    /**
+     * Create a PagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     */
+    public PagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit) {
+        this(fetcher, start, limit, false);
+    }
+
+    /**
+     * Create a PagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param truncateOnErrors true to end iteration quietly on a page with errors rather than throw
+     */
+    public PagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit, boolean truncateOnErrors) {
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        this.nextStart = start;
+        this.handedOutOffset = start;
+        this.limit = limit;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!values.hasNext()) {
+            if (lastPage) {
+                return false;
+            }
+
+            // drop our reference to the exhausted page before requesting the next one
+            values = ImmutableList.<T> of().iterator();
+            Page<T> page = fetcher.fetch(nextStart, limit);
+            if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+                errors = ((ErrorsHolder) page).errors();
+                lastPage = true;
+                if (truncateOnErrors) {
+                    return false;
+                }
+                throw new PageErrorsException("page at offset " + nextStart + " of " + fetcher.endpoint()
+                        + " came back with errors", errors);
+            }
+
+            valueOffset = nextStart;
+
+            // guard against a server handing back a page that does not move us forward
+            lastPage = page.isLastPage() || page.nextPageStart() <= nextStart;
+            nextStart = page.nextPageStart();
+            values = page.values().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T value = values.next();
+        handedOutOffset = ++valueOffset;
+        handedOut = true;
+        return value;
+    }
+
+    /**
+     * Errors attached to the page which ended iteration, if any. Iteration
+     * only ends quietly on errors if this iterator truncates on errors.
+     *
+     * @return list of Error's or empty list if iteration ended normally
+     */
+    public List<Error> errors() {
+        return errors;
+    }
+
+    /**
+     * Cursor to resume from just past the last value returned by
+     * {@link #next()}.
+     *
+     * @return PageCursor for the current position
+     */
+    public PageCursor cursor() {
+        return PageCursor.of(fetcher, handedOutOffset);
+    }
+
+    /**
+     * Cursor to resume from the last value returned by {@link #next()},
+     * so that it is returned again. Meant as the parent cursor of a nested
+     * walk over something belonging to that value.
+     *
+     * @return PageCursor for the last value returned
+     */
+    public PageCursor currentCursor() {
+        return PageCursor.of(fetcher, handedOut ? handedOutOffset - 1 : handedOutOffset);
+    }
+}
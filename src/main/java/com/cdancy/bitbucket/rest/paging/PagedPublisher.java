@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jclouds.javax.annotation.Nullable;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reactive Streams Publisher over every value of a paged endpoint. Pages
+ * are only requested while the subscriber has outstanding demand, so a slow
+ * subscriber holds back HTTP traffic and at most a single page is buffered
+ * per subscription.
+ *
+ * <p>Each subscription walks the endpoint from the configured offset on its
+ * own. Requests and signals to the subscriber happen on the given executor.
+ * A page coming back with errors is signalled as a {@link PageErrorsException},
+ * unless the publisher was created to truncate on errors, in which case the
+ * subscriber is told the listing is complete.</p>
+ *
+ * <pre>
+ * Publisher&lt;Branch&gt; branches = PagedIterable.of(PageFetchers.branches(api, "PRJ", "my-repo",
+ *         null, null, null, null), 100).publisher(executor);
+ * </pre>
+ *
+ * @param <T> type of the values being published
+ */
+public class PagedPublisher<T> implements Publisher<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final Executor executor;
+    private final boolean truncateOnErrors;
+
+    protected PagedPublisher(PageFetcher<T> fetcher, int start, @Nullable Integer limit, Executor executor) {
+        this(fetcher, start, limit, executor, false);
+    }
+
+    protected PagedPublisher(PageFetcher<T> fetcher, int start, @Nullable Integer limit, Executor executor,
+                             boolean truncateOnErrors) {
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        this.executor = checkNotNull(executor, "executor");
+        this.start = start;
+        this.limit = limit;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    /**
+     * Create a PagedPublisher.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to publish
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests and signal subscribers on
+     * @return new PagedPublisher
+     */
+    public static <T> PagedPublisher<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit, Executor executor) {
+        return new PagedPublisher<T>(fetcher, start, limit, executor);
+    }
+
+    /**
+     * Create a PagedPublisher.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to publish
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests and signal subscribers on
+     * @param truncateOnErrors true to complete on a page with errors rather than signal an error
+     * @return new PagedPublisher
+     */
+    public static <T> PagedPublisher<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit, Executor executor,
+                                           boolean truncateOnErrors) {
+        return new PagedPublisher<T>(fetcher, start, limit, executor, truncateOnErrors);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        checkNotNull(subscriber, "subscriber");
+        subscriber.onSubscribe(new PagedSubscription<T>(subscriber, fetcher, start, limit, executor, truncateOnErrors));
+    }
+
+    /**
+     * Subscription turning demand into page requests. Signals are serialized
+     * by only ever having a single drain loop scheduled at a time.
+     */
+    private static final class PagedSubscription<T> implements Subscription, Runnable {
+
+        private final Subscriber<? super T> subscriber;
+        private final PageFetcher<T> fetcher;
+        private final Integer limit;
+        private final Executor executor;
+        private final boolean truncateOnErrors;
+
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger scheduled = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile boolean badRequest;
+
+        // only touched from within the drain loop
+        private int nextStart;
+        private boolean lastPage;
+        private boolean done;
+        private Iterator<T> values = ImmutableList.<T> of().iterator();
+
+        private PagedSubscription(Subscriber<? super T> subscriber, PageFetcher<T> fetcher, int start,
+                                  Integer limit, Executor executor, boolean truncateOnErrors) {
+            this.subscriber = subscriber;
+            this.fetcher = fetcher;
+            this.nextStart = start;
+            this.limit = limit;
+            this.executor = executor;
+            this.truncateOnErrors = truncateOnErrors;
+        }
+
+        @Override
+        public void request(long count) {
+            if (count <= 0) {
+                badRequest = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = requested.get();
+                    next = current + count < 0 ? Long.MAX_VALUE : current + count;
+                } while (!requested.compareAndSet(current, next));
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                drain();
+                missed = scheduled.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drain() {
+            while (!cancelled && !done) {
+                if (badRequest) {
+                    terminate(new IllegalArgumentException("request must be > 0"));
+                    return;
+                }
+
+                // completing takes no demand, a subscriber which asked for exactly what there is is told so
+                if (!values.hasNext() && lastPage) {
+                    done = true;
+                    subscriber.onComplete();
+                    return;
+                }
+
+                long demand = requested.get();
+                if (demand == 0) {
+                    return;
+                }
+
+                if (!values.hasNext()) {
+                    fetchNextPage();
+                    continue;
+                }
+
+                T value = values.next();
+                if (demand != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                try {
+                    subscriber.onNext(value);
+                } catch (RuntimeException e) {
+                    // subscribers must not throw, treat it as a cancellation
+                    cancelled = true;
+                    return;
+                }
+            }
+        }
+
+        private void fetchNextPage() {
+            // drop our reference to the exhausted page before requesting the next one
+            values = ImmutableList.<T> of().iterator();
+            Page<T> page;
+            try {
+                page = fetcher.fetch(nextStart, limit);
+            } catch (RuntimeException e) {
+                terminate(e);
+                return;
+            }
+
+            if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+                if (truncateOnErrors) {
+                    lastPage = true;
+                    return;
+                }
+                terminate(new PageErrorsException("page at offset " + nextStart + " of " + fetcher.endpoint()
+                        + " came back with errors", ((ErrorsHolder) page).errors()));
+                return;
+            }
+
+            // guard against a server handing back a page that does not move us forward
+            lastPage = page.isLastPage() || page.nextPageStart() <= nextStart;
+            nextStart = page.nextPageStart();
+            values = page.values().iterator();
+        }
+
+        private void terminate(Throwable throwable) {
+            done = true;
+            cancelled = true;
+            subscriber.onError(throwable);
+        }
+    }
+}
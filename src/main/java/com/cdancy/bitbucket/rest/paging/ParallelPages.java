@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs per-value work over every value of a paged endpoint on a
+ * ForkJoinPool, splitting the work on page boundaries.
+ *
+ * <p>The first page is used to estimate the size of the listing. If it
+ * reveals the total number of values, the remaining offset range is
+ * split in halves down to single pages, which are then fetched and
+ * processed in parallel. Otherwise pages are fetched one after the other
+ * while the values of each page are processed in parallel. Values are
+ * always returned in offset order.</p>
+ *
+ * <p>No more pages are fetched at once than the pool's parallelism, however
+ * many workers the pool adds to make up for those blocked on I/O.</p>
+ *
+ * <pre>
+ * List&lt;PullRequest&gt; stale = ParallelPages.of(fetcher, 100).filter(pool, isStale);
+ * </pre>
+ *
+ * @param <T> type of the values being processed
+ */
+public class ParallelPages<T> {
+
+    // number of values below which a page is processed by a single task
+    private static final int VALUES_THRESHOLD = 32;
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final Function<? super Page<T>, Integer> totalCount;
+
+    protected ParallelPages(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                            Function<? super Page<T>, Integer> totalCount) {
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        this.fetcher = PageSizeController.pin(checkNotNull(fetcher, "fetcher"), limit);
+        this.totalCount = checkNotNull(totalCount, "totalCount");
+        this.start = start;
+        this.limit = limit;
+    }
+
+    public static <T> ParallelPages<T> of(PageFetcher<T> fetcher, @Nullable Integer limit) {
+        return new ParallelPages<T>(fetcher, 0, limit, Functions.<Integer> constant(null));
+    }
+
+    /**
+     * Create a ParallelPages.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to process
+     * @param limit page size or null for the server default
+     * @param totalCount function returning the total number of values from a page or null if unknown
+     * @return new ParallelPages
+     */
+    public static <T> ParallelPages<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                          Function<? super Page<T>, Integer> totalCount) {
+        return new ParallelPages<T>(fetcher, start, limit, totalCount);
+    }
+
+    /**
+     * Collect all values which satisfy the given predicate.
+     *
+     * @param pool the pool to run on
+     * @param predicate the predicate to apply to each value
+     * @return values satisfying the predicate in offset order
+     * @throws PageErrorsException if any page came back with errors
+     */
+    public List<T> filter(ForkJoinPool pool, final Predicate<? super T> predicate) {
+        checkNotNull(predicate, "predicate");
+        return process(pool, new Function<List<T>, List<T>>() {
+            @Override
+            public List<T> apply(List<T> values) {
+                List<T> matched = Lists.newArrayList();
+                for (T value : values) {
+                    if (predicate.apply(value)) {
+                        matched.add(value);
+                    }
+                }
+                return matched;
+            }
+        });
+    }
+
+    /**
+     * Apply the given function to every value. The function may return
+     * null, which is handed back as is.
+     *
+     * @param pool the pool to run on
+     * @param function the function to apply to each value
+     * @return result of the function for each value in offset order
+     * @throws PageErrorsException if any page came back with errors
+     */
+    public <R> List<R> transform(ForkJoinPool pool, final Function<? super T, ? extends R> function) {
+        checkNotNull(function, "function");
+        return process(pool, new Function<List<T>, List<R>>() {
+            @Override
+            public List<R> apply(List<T> values) {
+                List<R> transformed = Lists.newArrayListWithCapacity(values.size());
+                for (T value : values) {
+                    transformed.add(function.apply(value));
+                }
+                return transformed;
+            }
+        });
+    }
+
+    private <R> List<R> process(ForkJoinPool pool, Function<List<T>, List<R>> work) {
+        checkNotNull(pool, "pool");
+        // not an ImmutableList, transform hands back whatever the function returned, nulls included
+        return Collections.unmodifiableList(pool.invoke(new ListingTask<R>(work, new Semaphore(pool.getParallelism()))));
+    }
+
+    private Page<T> fetch(final int offset, Semaphore fetches) {
+        final PageHolder<T> holder = new PageHolder<T>();
+        try {
+            // waiting for a permit is deliberately not a managed block, the pool
+            // would otherwise add a worker for every page still to be fetched
+            fetches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while fetching page at offset " + offset, e);
+        }
+        try {
+            // let the pool compensate for the worker we block on I/O
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                @Override
+                public boolean block() {
+                    holder.page = fetcher.fetch(offset, limit);
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return holder.page != null;
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while fetching page at offset " + offset, e);
+        } finally {
+            fetches.release();
+        }
+
+        Page<T> page = holder.page;
+        if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+            throw new PageErrorsException("page at offset " + offset + " of " + fetcher.endpoint()
+                    + " came back with errors", ((ErrorsHolder) page).errors());
+        }
+        return page;
+    }
+
+    private static <R> List<R> joinAll(List<ForkJoinTask<List<R>>> tasks) {
+        List<R> joined = Lists.newArrayList();
+        for (ForkJoinTask<List<R>> task : tasks) {
+            joined.addAll(task.join());
+        }
+        return joined;
+    }
+
+    private static final class PageHolder<T> {
+        private volatile Page<T> page;
+    }
+
+    /**
+     * Root of the computation: fetches the first page and decides how to
+     * split the remainder based on what it reveals.
+     */
+    private final class ListingTask<R> extends RecursiveTask<List<R>> {
+
+        private static final long serialVersionUID = 1L;
+        private final Function<List<T>, List<R>> work;
+        private final Semaphore fetches;
+
+        private ListingTask(Function<List<T>, List<R>> work, Semaphore fetches) {
+            this.work = work;
+            this.fetches = fetches;
+        }
+
+        @Override
+        protected List<R> compute() {
+            Page<T> page = fetch(start, fetches);
+            List<ForkJoinTask<List<R>>> parts = Lists.newArrayList();
+            parts.add(new ValuesTask<R>(page.values(), work).fork());
+
+            if (!page.isLastPage() && page.nextPageStart() > start) {
+                Integer total = totalCount.apply(page);
+                if (total != null) {
+                    int stride = page.nextPageStart() - start;
+                    parts.add(new RangeTask<R>(page.nextPageStart(), total, stride, work, fetches).fork());
+                } else {
+                    int offset = page.nextPageStart();
+                    while (true) {
+                        page = fetch(offset, fetches);
+                        parts.add(new ValuesTask<R>(page.values(), work).fork());
+                        if (page.isLastPage() || page.nextPageStart() <= offset) {
+                            break;
+                        }
+                        offset = page.nextPageStart();
+                    }
+                }
+            }
+            return joinAll(parts);
+        }
+    }
+
+    /**
+     * Covers the pages in the offset range [from, to), splitting in halves
+     * until a single page remains.
+     */
+    private final class RangeTask<R> extends RecursiveTask<List<R>> {
+
+        private static final long serialVersionUID = 1L;
+        private final int from;
+        private final int to;
+        private final int stride;
+        private final Function<List<T>, List<R>> work;
+        private final Semaphore fetches;
+
+        private RangeTask(int from, int to, int stride, Function<List<T>, List<R>> work, Semaphore fetches) {
+            this.from = from;
+            this.to = to;
+            this.stride = stride;
+            this.work = work;
+            this.fetches = fetches;
+        }
+
+        @Override
+        protected List<R> compute() {
+            int pages = (to - from + stride - 1) / stride;
+            if (pages <= 1) {
+                return new ValuesTask<R>(fetch(from, fetches).values(), work).compute();
+            }
+
+            int mid = from + (pages / 2) * stride;
+            RangeTask<R> left = new RangeTask<R>(from, mid, stride, work, fetches);
+            left.fork();
+            List<R> right = new RangeTask<R>(mid, to, stride, work, fetches).compute();
+            List<R> joined = Lists.newArrayList(left.join());
+            joined.addAll(right);
+            return joined;
+        }
+    }
+
+    /**
+     * Applies the work to the values of a single page, splitting large
+     * pages in halves.
+     */
+    private final class ValuesTask<R> extends RecursiveTask<List<R>> {
+
+        private static final long serialVersionUID = 1L;
+        private final List<T> values;
+        private final Function<List<T>, List<R>> work;
+
+        private ValuesTask(List<T> values, Function<List<T>, List<R>> work) {
+            this.values = values;
+            this.work = work;
+        }
+
+        @Override
+        protected List<R> compute() {
+            if (values.size() <= VALUES_THRESHOLD) {
+                return work.apply(values);
+            }
+
+            int mid = values.size() / 2;
+            ValuesTask<R> left = new ValuesTask<R>(values.subList(0, mid), work);
+            left.fork();
+            List<R> right = new ValuesTask<R>(values.subList(mid, values.size()), work).compute();
+            List<R> joined = Lists.newArrayList(left.join());
+            joined.addAll(right);
+            return joined;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.jclouds.http.HttpResponse;
+
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.comment.Comments;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.Change;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+
+/**
+ * Response parser handing back a {@link StreamingPage} over the response
+ * payload instead of reading it into memory up front. Each paged value
+ * type has its own concrete parser so it can be named in a
+ * {@code @ResponseParser} annotation.
+ *
+ * @param <T> type of the values in the page
+ */
+public abstract class ParseStreamingPage<T> implements Function<HttpResponse, StreamingPage<T>> {
+
+    private final Gson gson;
+    private final Class<T> valueType;
+
+    protected ParseStreamingPage(Gson gson, Class<T> valueType) {
+        this.gson = checkNotNull(gson, "gson");
+        this.valueType = checkNotNull(valueType, "valueType");
+    }
+
+    @Override
+    public StreamingPage<T> apply(HttpResponse response) {
+        if (response.getPayload() == null) {
+            return StreamingPage.fromErrors(ImmutableList.<Error> of());
+        }
+
+        try {
+            return new StreamingPage<T>(gson, valueType,
+                    new InputStreamReader(response.getPayload().openStream(), Charsets.UTF_8));
+        } catch (IOException e) {
+            response.getPayload().release();
+            throw Throwables.propagate(e);
+        }
+    }
+
+    @Singleton
+    public static class Branches extends ParseStreamingPage<Branch> {
+        @Inject
+        Branches(Gson gson) {
+            super(gson, Branch.class);
+        }
+    }
+
+    @Singleton
+    public static class Changes extends ParseStreamingPage<Change> {
+        @Inject
+        Changes(Gson gson) {
+            super(gson, Change.class);
+        }
+    }
+
+    @Singleton
+    public static class Commits extends ParseStreamingPage<Commit> {
+        @Inject
+        Commits(Gson gson) {
+            super(gson, Commit.class);
+        }
+    }
+
+    @Singleton
+    public static class Projects extends ParseStreamingPage<Project> {
+        @Inject
+        Projects(Gson gson) {
+            super(gson, Project.class);
+        }
+    }
+
+    @Singleton
+    public static class PullRequests extends ParseStreamingPage<PullRequest> {
+        @Inject
+        PullRequests(Gson gson) {
+            super(gson, PullRequest.class);
+        }
+    }
+
+    @Singleton
+    public static class PullRequestComments extends ParseStreamingPage<Comments> {
+        @Inject
+        PullRequestComments(Gson gson) {
+            super(gson, Comments.class);
+        }
+    }
+
+    @Singleton
+    public static class Repositories extends ParseStreamingPage<Repository> {
+        @Inject
+        Repositories(Gson gson) {
+            super(gson, Repository.class);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ExecutorService;
+
+import org.jclouds.javax.annotation.Nullable;
+
+/**
+ * Lazy view over every value of a paged endpoint which fetches upcoming
+ * pages in the background while the current page is being processed.
+ *
+ * <p>Read-ahead is bounded twice: by the number of pages to request ahead
+ * of the caller and by the max number of pages (including the one being
+ * iterated over) allowed to be held in memory at once.</p>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class PrefetchingPagedIterable<T> implements Iterable<T> {
+
+    private final PageFetcher<T> fetcher;
+    private final int start;
+    private final Integer limit;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final int maxBufferedPages;
+    private final boolean truncateOnErrors;
+
+    protected PrefetchingPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                       ExecutorService executor, int readAhead, int maxBufferedPages) {
+        this(fetcher, start, limit, executor, readAhead, maxBufferedPages, false);
+    }
+
+    protected PrefetchingPagedIterable(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                       ExecutorService executor, int readAhead, int maxBufferedPages,
+                                       boolean truncateOnErrors) {
+        checkArgument(start >= 0, "start must be >= 0");
+        checkArgument(limit == null || limit > 0, "limit must be > 0");
+        checkArgument(readAhead >= 0, "readAhead must be >= 0");
+        checkArgument(maxBufferedPages >= 1, "maxBufferedPages must be >= 1");
+        this.fetcher = checkNotNull(fetcher, "fetcher");
+        this.executor = checkNotNull(executor, "executor");
+        this.start = start;
+        this.limit = limit;
+        this.readAhead = readAhead;
+        this.maxBufferedPages = maxBufferedPages;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    /**
+     * Create a PrefetchingPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue background requests on
+     * @param readAhead number of pages to request ahead of the caller
+     * @param maxBufferedPages max number of pages to hold in memory at once
+     * @return new PrefetchingPagedIterable
+     */
+    public static <T> PrefetchingPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                     ExecutorService executor, int readAhead, int maxBufferedPages) {
+        return new PrefetchingPagedIterable<T>(fetcher, start, limit, executor, readAhead, maxBufferedPages);
+    }
+
+    /**
+     * Create a PrefetchingPagedIterable.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue background requests on
+     * @param readAhead number of pages to request ahead of the caller
+     * @param maxBufferedPages max number of pages to hold in memory at once
+     * @param truncateOnErrors true to end iteration quietly on a page with errors rather than throw
+     * @return new PrefetchingPagedIterable
+     */
+    public static <T> PrefetchingPagedIterable<T> of(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                                     ExecutorService executor, int readAhead, int maxBufferedPages,
+                                                     boolean truncateOnErrors) {
+        return new PrefetchingPagedIterable<T>(fetcher, start, limit, executor, readAhead, maxBufferedPages,
+                truncateOnErrors);
+    }
+
+    public int readAhead() {
+        return readAhead;
+    }
+
+    public int maxBufferedPages() {
+        return maxBufferedPages;
+    }
+
+    @Override
+    public PrefetchingPagedIterator<T> iterator() {
+        return new PrefetchingPagedIterator<T>(fetcher, start, limit, executor,
+                Math.min(readAhead, maxBufferedPages - 1), truncateOnErrors);
+    }
+}
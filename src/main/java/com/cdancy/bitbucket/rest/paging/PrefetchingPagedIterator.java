@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jclouds.javax.annotation.Nullable;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Iterator which keeps up to N pages in flight on a background executor
+ * while the caller works through the current page.
+ *
+ * <p>The offsets of pages which have yet to be seen are predicted from the
+ * stride (i.e. nextPageStart - start) of the most recent page. Should the
+ * server hand back a different stride than predicted, all speculative
+ * requests are cancelled and re-issued from the real offset. Requests
+ * issued past the final page are cancelled once the final page arrives.</p>
+ *
+ * <p>Should a page come back with errors attached the outstanding requests
+ * are cancelled and a {@link PageErrorsException} is thrown, unless the
+ * iterator was created to truncate on errors, in which case it ends quietly
+ * and leaves the errors to {@link #errors()}.</p>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class PrefetchingPagedIterator<T> extends AbstractIterator<T> implements Closeable {
+
+    private final PageFetcher<T> fetcher;
+    private final Integer limit;
+    private final ExecutorService executor;
+    private final int readAhead;
+    private final boolean truncateOnErrors;
+    private final Deque<PendingPage<T>> pending = new ArrayDeque<PendingPage<T>>();
+
+    private int nextStart;
+    private int stride;
+    private boolean lastPage;
+    private Iterator<T> values = ImmutableList.<T> of().iterator();
+    private List<Error> errors = ImmutableList.of();
+
+    /**
+     * Create a PrefetchingPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param readAhead max number of pages to have in flight beyond the current page
+     */
+    public PrefetchingPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                    ExecutorService executor, int readAhead) {
+        this(fetcher, start, limit, executor, readAhead, false);
+    }
+
+    /**
+     * Create a PrefetchingPagedIterator.
+     *
+     * @param fetcher the PageFetcher to pull pages from
+     * @param start offset of the first value to return
+     * @param limit page size or null for the server default
+     * @param executor the executor to issue requests on
+     * @param readAhead max number of pages to have in flight beyond the current page
+     * @param truncateOnErrors true to end iteration quietly on a page with errors rather than throw
+     */
+    public PrefetchingPagedIterator(PageFetcher<T> fetcher, int start, @Nullable Integer limit,
+                                    ExecutorService executor, int readAhead, boolean truncateOnErrors) {
+        checkArgument(readAhead >= 0, "readAhead must be >= 0");
+        this.fetcher = PageSizeController.pin(checkNotNull(fetcher, "fetcher"), limit);
+        this.executor = checkNotNull(executor, "executor");
+        this.nextStart = start;
+        this.limit = limit;
+        this.readAhead = readAhead;
+        this.truncateOnErrors = truncateOnErrors;
+    }
+
+    @Override
+    protected T computeNext() {
+        while (!values.hasNext()) {
+            if (lastPage) {
+                close();
+                return endOfData();
+            }
+
+            values = ImmutableList.<T> of().iterator();
+            Page<T> page = take(nextStart);
+            if (page instanceof ErrorsHolder && !((ErrorsHolder) page).errors().isEmpty()) {
+                errors = ((ErrorsHolder) page).errors();
+                lastPage = true;
+                close();
+                if (truncateOnErrors) {
+                    return endOfData();
+                }
+                throw new PageErrorsException("page at offset " + nextStart + " of " + fetcher.endpoint()
+                        + " came back with errors", errors);
+            }
+
+            lastPage = page.isLastPage() || page.nextPageStart() <= nextStart;
+            stride = page.nextPageStart() - nextStart;
+            nextStart = page.nextPageStart();
+            values = page.values().iterator();
+            if (!lastPage) {
+                schedule();
+            }
+        }
+        return values.next();
+    }
+
+    /**
+     * Errors attached to the page which ended iteration, if any. Iteration
+     * only ends quietly on errors if this iterator truncates on errors.
+     *
+     * @return list of Error's or empty list if iteration ended normally
+     */
+    public List<Error> errors() {
+        return errors;
+    }
+
+    /**
+     * Number of pages currently requested but not yet handed to the caller.
+     *
+     * @return count of pending pages
+     */
+    public int pendingPages() {
+        return pending.size();
+    }
+
+    /**
+     * Cancel all outstanding requests. Should be called by callers that
+     * abandon iteration before reaching the last page.
+     */
+    @Override
+    public void close() {
+        for (PendingPage<T> page : pending) {
+            page.future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private Page<T> take(int start) {
+        PendingPage<T> head = pending.poll();
+        if (head == null || head.start != start) {
+            if (head != null) {
+                head.future.cancel(true);
+            }
+            close();
+            head = submit(start);
+        }
+
+        try {
+            return Uninterruptibles.getUninterruptibly(head.future);
+        } catch (ExecutionException e) {
+            close();
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private void schedule() {
+        int offset = pending.isEmpty() ? nextStart : pending.peekLast().start + stride;
+        while (pending.size() < readAhead) {
+            pending.add(submit(offset));
+            offset += stride;
+        }
+    }
+
+    private PendingPage<T> submit(final int start) {
+        Future<Page<T>> future = executor.submit(new Callable<Page<T>>() {
+            @Override
+            public Page<T> call() {
+                return fetcher.fetch(start, limit);
+            }
+        });
+        return new PendingPage<T>(start, future);
+    }
+
+    private static final class PendingPage<T> {
+        private final int start;
+        private final Future<Page<T>> future;
+
+        private PendingPage(int start, Future<Page<T>> future) {
+            this.start = start;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.cdancy.bitbucket.rest.domain.common.ErrorsHolder;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Page whose values are parsed one at a time, straight off the response
+ * stream, as they are iterated over. Neither the payload nor the full list
+ * of values is ever held in memory.
+ *
+ * <p>The paging attributes (start, limit, size, nextPageStart, isLastPage)
+ * are picked up as they are encountered in the payload. Bitbucket writes
+ * some of them after the values array, so they are only guaranteed to be
+ * known once iteration has finished.</p>
+ *
+ * <p>The underlying response is released once the last value has been read.
+ * Callers which stop early must {@link #close()} the page themselves.</p>
+ *
+ * <p>A StreamingPage is also a {@link Page}, so a {@link PageFetcher} can
+ * hand one out (see {@link PageFetchers#streaming}) and every paging view
+ * can walk it. {@link #values()} reads whatever values are left in one go,
+ * which still spares holding the payload in memory next to them.</p>
+ *
+ * <pre>
+ * StreamingPage&lt;PullRequest&gt; page = api.listStreaming("PRJ", "my-repo", null, null, null, null, null, null, 0, 1000);
+ * try {
+ *     while (page.hasNext()) {
+ *         PullRequest pr = page.next();
+ *         ...
+ *     }
+ * } finally {
+ *     page.close();
+ * }
+ * </pre>
+ *
+ * @param <T> type of the values being parsed
+ */
+public class StreamingPage<T> extends AbstractIterator<T> implements Page<T>, Closeable, ErrorsHolder {
+
+    private static final Type ERRORS_TYPE = new TypeToken<List<Error>>() { }.getType();
+
+    private final Gson gson;
+    private final Type valueType;
+    private final JsonReader reader;
+
+    private int start;
+    private int limit;
+    private int size;
+    private int nextPageStart;
+    private boolean lastPage = true;
+    private List<Error> errors = ImmutableList.of();
+    private List<T> values;
+    private boolean inValues;
+    private boolean closed;
+
+    /**
+     * Create a StreamingPage reading the attributes which precede the values
+     * array straight away.
+     *
+     * @param gson the Gson to parse values with
+     * @param valueType type of the values in the page
+     * @param reader the reader over the page payload
+     */
+    public StreamingPage(Gson gson, Type valueType, Reader reader) {
+        this.gson = checkNotNull(gson, "gson");
+        this.valueType = checkNotNull(valueType, "valueType");
+        this.reader = new JsonReader(checkNotNull(reader, "reader"));
+        try {
+            this.reader.beginObject();
+            readAttributes();
+        } catch (IOException e) {
+            close();
+            throw Throwables.propagate(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private StreamingPage(List<Error> errors) {
+        this.gson = null;
+        this.valueType = null;
+        this.reader = null;
+        this.errors = ImmutableList.copyOf(errors);
+        this.closed = true;
+    }
+
+    /**
+     * Create an empty StreamingPage carrying the given errors.
+     *
+     * @param errors the errors to attach
+     * @return closed StreamingPage with no values
+     */
+    public static <T> StreamingPage<T> fromErrors(List<Error> errors) {
+        return new StreamingPage<T>(errors);
+    }
+
+    @Override
+    protected T computeNext() {
+        if (!inValues) {
+            close();
+            return endOfData();
+        }
+
+        try {
+            if (reader.hasNext()) {
+                return gson.fromJson(reader, valueType);
+            }
+
+            reader.endArray();
+            inValues = false;
+            readAttributes();
+            close();
+            return endOfData();
+        } catch (IOException e) {
+            close();
+            throw Throwables.propagate(e);
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // reads attributes up to the start of the values array or the end of the page
+    private void readAttributes() throws IOException {
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if ("values".equals(name)) {
+                reader.beginArray();
+                inValues = true;
+                return;
+            } else if ("start".equals(name)) {
+                start = reader.nextInt();
+            } else if ("limit".equals(name)) {
+                limit = reader.nextInt();
+            } else if ("size".equals(name)) {
+                size = reader.nextInt();
+            } else if ("nextPageStart".equals(name)) {
+                nextPageStart = reader.nextInt();
+            } else if ("isLastPage".equals(name)) {
+                lastPage = reader.nextBoolean();
+            } else if ("errors".equals(name)) {
+                List<Error> parsed = gson.fromJson(reader, ERRORS_TYPE);
+                errors = ImmutableList.copyOf(parsed);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Values not yet iterated over, read off the response in one go the
+     * first time this is called. The page is released afterwards, so
+     * every attribute is known by the time this returns.
+     *
+     * @return the remaining values
+     */
+    @Override
+    public List<T> values() {
+        if (values == null) {
+            values = Collections.unmodifiableList(Lists.newArrayList(this));
+        }
+        return values;
+    }
+
+    @Override
+    public int start() {
+        return start;
+    }
+
+    @Override
+    public int limit() {
+        return limit;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int nextPageStart() {
+        return nextPageStart;
+    }
+
+    @Override
+    public boolean isLastPage() {
+        return lastPage;
+    }
+
+    @Override
+    public List<Error> errors() {
+        return errors;
+    }
+
+    /**
+     * Release the underlying response. Attributes written after any values
+     * which have not been read yet remain unknown.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            inValues = false;
+            try {
+                reader.close();
+            } catch (IOException e) {
+                // nothing left to read from it either way
+            }
+        }
+    }
+}
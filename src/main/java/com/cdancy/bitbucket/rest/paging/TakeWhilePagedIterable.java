@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.google.common.base.Predicate;
+
+/**
+ * Lazy view over the leading values of a paged endpoint which satisfy a
+ * predicate. Meant for ordered listings, such as pull requests requested
+ * with order=NEWEST, where the first value failing the predicate means no
+ * later value can satisfy it, so no further pages need to be requested.
+ *
+ * <pre>
+ * PageFetcher&lt;PullRequest&gt; fetcher = PageFetchers.pullRequests(api, "PRJ", "my-repo",
+ *         null, null, "ALL", "NEWEST", null, null);
+ * for (PullRequest pr : PagedIterable.of(fetcher, 100)
+ *         .takeWhile(TakeWhilePagedIterable.updatedSince(watermark))) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class TakeWhilePagedIterable<T> implements Iterable<T> {
+
+    private final PagedIterable<T> pages;
+    private final Predicate<? super T> predicate;
+
+    protected TakeWhilePagedIterable(PagedIterable<T> pages, Predicate<? super T> predicate) {
+        this.pages = checkNotNull(pages, "pages");
+        this.predicate = checkNotNull(predicate, "predicate");
+    }
+
+    public static <T> TakeWhilePagedIterable<T> of(PagedIterable<T> pages, Predicate<? super T> predicate) {
+        return new TakeWhilePagedIterable<T>(pages, predicate);
+    }
+
+    /**
+     * Predicate holding for pull requests updated at or after the given
+     * watermark.
+     *
+     * @param watermark epoch millis to compare PullRequest.updatedDate against
+     * @return predicate on PullRequest's
+     */
+    public static Predicate<PullRequest> updatedSince(final long watermark) {
+        return new Predicate<PullRequest>() {
+            @Override
+            public boolean apply(PullRequest input) {
+                return input.updatedDate() >= watermark;
+            }
+        };
+    }
+
+    @Override
+    public TakeWhilePagedIterator<T> iterator() {
+        return new TakeWhilePagedIterator<T>(pages.iterator(), predicate);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import com.cdancy.bitbucket.rest.domain.common.Error;
+import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
+
+/**
+ * Iterator which hands out values of a paged endpoint for as long as they
+ * satisfy a predicate. As pages are only requested once the values of the
+ * current page have been consumed, no further page is requested after the
+ * first value which fails the predicate.
+ *
+ * @param <T> type of the values being iterated over
+ */
+public class TakeWhilePagedIterator<T> extends AbstractIterator<T> {
+
+    private final PagedIterator<T> delegate;
+    private final Predicate<? super T> predicate;
+    private boolean stopped;
+
+    /**
+     * Create a TakeWhilePagedIterator.
+     *
+     * @param delegate the PagedIterator to pull values from
+     * @param predicate the predicate values must satisfy to keep iterating
+     */
+    public TakeWhilePagedIterator(PagedIterator<T> delegate, Predicate<? super T> predicate) {
+        this.delegate = checkNotNull(delegate, "delegate");
+        this.predicate = checkNotNull(predicate, "predicate");
+    }
+
+    @Override
+    protected T computeNext() {
+        if (!stopped && delegate.hasNext()) {
+            T value = delegate.next();
+            if (predicate.apply(value)) {
+                return value;
+            }
+            stopped = true;
+        }
+        return endOfData();
+    }
+
+    /**
+     * Whether iteration ended because a value failed the predicate, as
+     * opposed to running out of pages.
+     *
+     * @return true if the predicate ended iteration
+     */
+    public boolean stoppedByPredicate() {
+        return stopped;
+    }
+
+    /**
+     * Errors attached to the page which ended iteration, if any.
+     *
+     * @return list of Error's or empty list if iteration ended normally
+     */
+    public List<Error> errors() {
+        return delegate.errors();
+    }
+}
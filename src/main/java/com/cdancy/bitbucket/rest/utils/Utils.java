@@ -17,14 +17,28 @@
 
 package com.cdancy.bitbucket.rest.utils;
 
+import java.lang.reflect.Field;
 import java.util.List;
 import java.util.Map;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.gson.FieldNamingStrategy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 
 public class Utils {
 
+    // the domain objects have their fields named as in the JSON read from the server, but for a leading
+    // underscore on names which are reserved in java; jclouds Json instead names them by the position
+    // of their @SerializedNames and cannot read back what it writes
+    private static final Gson WRITER = new GsonBuilder().setFieldNamingStrategy(new FieldNamingStrategy() {
+                @Override
+                public String translateName(Field field) {
+                    return field.getName().startsWith("_") ? field.getName().substring(1) : field.getName();
+                }
+            }).create();
+
     public static <T> List<T> nullToEmpty(Iterable<? extends T> input) {
         return (List<T>) (input == null ? ImmutableList.<T> of() : ImmutableList.copyOf(input));
     }
@@ -32,4 +46,15 @@ public class Utils {
     public static <K, V> Map<K, V> nullToEmpty(Map<? extends K, ? extends V> input) {
         return (Map<K, V>) (input == null ? ImmutableMap.<K, V> of() : ImmutableMap.copyOf(input));
     }
+
+    /**
+     * Write the given domain object as the JSON the server sends for it, so
+     * that it can be read back with jclouds Json.
+     *
+     * @param value the domain object
+     * @return JSON form of value
+     */
+    public static String toJson(Object value) {
+        return WRITER.toJson(value);
+    }
 }
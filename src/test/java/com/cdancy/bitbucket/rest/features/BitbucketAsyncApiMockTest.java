@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.AsyncApiProxies;
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.BitbucketAsyncApi;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link BitbucketAsyncApi} class.
+ */
+@Test(groups = "unit", testName = "BitbucketAsyncApiMockTest")
+public class BitbucketAsyncApiMockTest extends BaseBitbucketMockTest {
+
+    public void testGetPullRequest() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        try {
+            BitbucketAsyncApi async = AsyncApiProxies.create(baseApi, executor);
+            ListenableFuture<PullRequest> future = async.pullRequestApi().get("PRJ", "my-repo", 101);
+            PullRequest pr = future.get(10, TimeUnit.SECONDS);
+            assertThat(pr).isNotNull();
+            assertThat(pr.errors()).isEmpty();
+            assertThat(pr.id()).isEqualTo(101);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests/101");
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testGetProjectOnErrorUsesFallback() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-not-exist.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(2));
+        try {
+            Project project = AsyncApiProxies.create(baseApi, executor).projectApi().get("HelloWorld")
+                    .get(10, TimeUnit.SECONDS);
+            assertThat(project).isNotNull();
+            assertThat(project.errors()).isNotEmpty();
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects/HelloWorld");
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testEveryAsyncApiHasBlockingCounterpart() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            // creating each twin checks that all of its methods map onto the blocking api
+            BitbucketAsyncApi async = AsyncApiProxies.create(baseApi, MoreExecutors.newDirectExecutorService());
+            assertThat(async.branchApi()).isNotNull();
+            assertThat(async.commentsApi()).isNotNull();
+            assertThat(async.commitsApi()).isNotNull();
+            assertThat(async.projectApi()).isNotNull();
+            assertThat(async.pullRequestApi()).isNotNull();
+            assertThat(async.repositoryApi()).isNotNull();
+            assertThat(async.systemApi()).isNotNull();
+            assertThat(async.tagApi()).isNotNull();
+            assertThat(server.getRequestCount()).isEqualTo(0);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMissingCounterpartIsRejected() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            AsyncApiProxies.create(Unmapped.class, baseApi.projectApi(), MoreExecutors.newDirectExecutorService());
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    interface Unmapped {
+        ListenableFuture<Project> fetch(String project);
+    }
+}
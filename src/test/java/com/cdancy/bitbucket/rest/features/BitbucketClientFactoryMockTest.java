@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static com.google.common.io.BaseEncoding.base64;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.BitbucketClientFactory;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link BitbucketClientFactory} class.
+ */
+@Test(groups = "unit", testName = "BitbucketClientFactoryMockTest")
+public class BitbucketClientFactoryMockTest extends BaseBitbucketMockTest {
+
+    public void testClientsShareContextButNotCredentials() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        }
+        BitbucketClientFactory factory = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .credentials("admin:password").buildFactory();
+        try {
+            BitbucketClient teamA = factory.client("team-a:secret");
+            BitbucketClient teamB = factory.client(base64().encode("team-b:secret".getBytes()));
+            BitbucketClient admin = factory.client("admin:password");
+            assertThat(teamA.factory()).isSameAs(factory);
+            assertThat(teamA.pageSizes()).isSameAs(teamB.pageSizes());
+            assertThat(teamA.connectionStats()).isSameAs(admin.connectionStats());
+
+            assertThat(teamA.api().projectApi().get("PRJ").errors()).isEmpty();
+            assertThat(teamB.api().projectApi().get("PRJ").errors()).isEmpty();
+            assertThat(admin.api().projectApi().get("PRJ").errors()).isEmpty();
+            assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo(basic("team-a:secret"));
+            assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo(basic("team-b:secret"));
+            assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo(basic("admin:password"));
+
+            // closing the api of one tenant leaves the shared context alone
+            teamA.api().close();
+            assertThat(teamB.api().projectApi().get("PRJ").errors()).isEmpty();
+            assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo(basic("team-b:secret"));
+        } finally {
+            factory.close();
+            server.shutdown();
+        }
+    }
+
+    public void testConcurrentTenantsKeepTheirCredentials() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        final ConcurrentMap<String, String> authByPath = Maps.newConcurrentMap();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                authByPath.put(request.getPath(), request.getHeader("Authorization"));
+                return new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200);
+            }
+        });
+        BitbucketClientFactory factory = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).buildFactory();
+        try {
+            List<ListenableFuture<Project>> futures = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                String tenant = "team-" + (i % 4);
+                futures.add(factory.client(tenant + ":secret").async().projectApi().get(tenant + "-" + i));
+            }
+            assertThat(Futures.allAsList(futures).get(10, TimeUnit.SECONDS)).hasSize(20);
+
+            assertThat(authByPath).hasSize(20);
+            for (int i = 0; i < 20; i++) {
+                String tenant = "team-" + (i % 4);
+                assertThat(authByPath.get("/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects/" + tenant + "-" + i))
+                        .isEqualTo(basic(tenant + ":secret"));
+            }
+        } finally {
+            factory.close();
+            server.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testClosedFactoryHandsOutNoClients() {
+        BitbucketClientFactory factory = BitbucketClient.builder().buildFactory();
+        factory.close();
+        factory.client("team-a:secret");
+    }
+
+    private static String basic(String credentials) {
+        return "Basic " + base64().encode(credentials.getBytes());
+    }
+}
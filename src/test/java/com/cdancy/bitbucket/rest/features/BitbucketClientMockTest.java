@@ -19,10 +19,27 @@ package com.cdancy.bitbucket.rest.features;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.testng.annotations.Test;
 
 import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.BitbucketClientFactory;
+import com.cdancy.bitbucket.rest.config.ExecutionMode;
+import com.cdancy.bitbucket.rest.config.HttpDriver;
+import com.cdancy.bitbucket.rest.config.VirtualThreads;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
 import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
 
 @Test(groups = "unit", testName = "BitbucketClientMockTest")
 public class BitbucketClientMockTest extends BaseBitbucketMockTest {
@@ -32,4 +49,159 @@ public class BitbucketClientMockTest extends BaseBitbucketMockTest {
         BitbucketClient client = BitbucketClient.builder().build();
         assertThat(client).isNotNull();
     }
+
+    public void testVirtualThreadExecutionMode() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .executionMode(ExecutionMode.VIRTUAL_THREADS).build();
+        try {
+            // falls back to platform threads on JDKs without virtual threads
+            assertThat(client.executionMode()).isEqualTo(VirtualThreads.isSupported()
+                    ? ExecutionMode.VIRTUAL_THREADS : ExecutionMode.PLATFORM_THREADS);
+
+            PullRequest pr = client.async().pullRequestApi().get("PRJ", "my-repo", 101).get(10, TimeUnit.SECONDS);
+            assertThat(pr.errors()).isEmpty();
+            assertThat(pr.id()).isEqualTo(101);
+            assertThat(server.takeRequest().getPath()).endsWith("/projects/PRJ/repos/my-repo/pull-requests/101");
+        } finally {
+            client.api().close();
+            server.shutdown();
+        }
+    }
+
+    public void testJavaNetHttpDriver() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-not-exist.json")).setResponseCode(404));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(HttpDriver.JAVA_NET_HTTP).build();
+        try {
+            // falls back to HttpURLConnection on JDKs without java.net.http
+            assertThat(client.httpDriver()).isEqualTo(HttpDriver.JAVA_NET_HTTP.isSupported()
+                    ? HttpDriver.JAVA_NET_HTTP : HttpDriver.URL_CONNECTION);
+
+            Project project = client.api().projectApi().get("PRJ");
+            assertThat(project.errors()).isEmpty();
+            assertThat(project.key()).isEqualTo("HELLO");
+
+            Project missing = client.api().projectApi().get("NOPE");
+            assertThat(missing.errors()).isNotEmpty();
+            assertThat(server.takeRequest().getPath()).endsWith("/projects/PRJ");
+            assertThat(server.takeRequest().getPath()).endsWith("/projects/NOPE");
+        } finally {
+            client.api().close();
+            server.shutdown();
+        }
+    }
+
+    public void testPooledDriverReusesConnections() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        }
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(HttpDriver.OKHTTP).maxIdleConnections(2).keepAlive(1, TimeUnit.MINUTES)
+                .connectTimeout(5, TimeUnit.SECONDS).socketTimeout(5, TimeUnit.SECONDS).build();
+        try {
+            assertThat(client.httpDriver()).isEqualTo(HttpDriver.OKHTTP);
+            for (int i = 0; i < 3; i++) {
+                Project project = client.api().projectApi().get("PRJ");
+                assertThat(project.errors()).isEmpty();
+            }
+            assertThat(client.connectionStats().connectionsOpened()).isEqualTo(1);
+            assertThat(client.connectionStats().connectionsReused()).isEqualTo(2);
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        } finally {
+            client.api().close();
+            server.shutdown();
+        }
+    }
+
+    public void testPooledDriverLimitsConnectionsPerHost() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        }
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(HttpDriver.OKHTTP).maxConnectionsPerHost(1).build();
+        try {
+            List<ListenableFuture<Project>> futures = Lists.newArrayList();
+            for (int i = 0; i < 4; i++) {
+                futures.add(client.async().projectApi().get("PRJ" + i));
+            }
+            for (Project project : Futures.allAsList(futures).get(10, TimeUnit.SECONDS)) {
+                assertThat(project.errors()).isEmpty();
+            }
+
+            // with a single connection allowed every request after the first reuses it
+            assertThat(client.connectionStats().connectionsOpened()).isEqualTo(1);
+            assertThat(client.connectionStats().connectionsReused()).isEqualTo(3);
+        } finally {
+            client.api().close();
+            server.shutdown();
+        }
+    }
+
+    public void testAsyncPoolIsBoundedByUserThreads() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        final String body = payloadFromResource("/project.json");
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int current = inFlight.incrementAndGet();
+                int max = maxInFlight.get();
+                while (current > max && !maxInFlight.compareAndSet(max, current)) {
+                    max = maxInFlight.get();
+                }
+                Thread.sleep(100);
+                inFlight.decrementAndGet();
+                return new MockResponse().setBody(body).setResponseCode(200);
+            }
+        });
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).userThreads(2).build();
+        try {
+            List<ListenableFuture<Project>> futures = Lists.newArrayList();
+            for (int i = 0; i < 6; i++) {
+                futures.add(client.async().projectApi().get("PRJ" + i));
+            }
+            for (Project project : Futures.allAsList(futures).get(10, TimeUnit.SECONDS)) {
+                assertThat(project.errors()).isEmpty();
+            }
+            assertThat(server.getRequestCount()).isEqualTo(6);
+            assertThat(maxInFlight.get()).isLessThanOrEqualTo(2);
+        } finally {
+            client.close();
+            server.shutdown();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testCloseClosesOwnFactory() {
+        BitbucketClient client = BitbucketClient.builder().build();
+        client.close();
+        client.factory().client("");
+    }
+
+    public void testCloseLeavesSharedFactoryOpen() {
+        BitbucketClientFactory factory = BitbucketClient.builder().buildFactory();
+        try {
+            factory.client("team-a:secret").close();
+            assertThat(factory.client("team-b:secret")).isNotNull();
+        } finally {
+            factory.close();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testPoolSettingsRequirePooledDriver() {
+        BitbucketClient.builder().maxIdleConnections(10).build();
+    }
 }
@@ -31,6 +31,7 @@ import com.cdancy.bitbucket.rest.domain.comment.Parent;
 import com.cdancy.bitbucket.rest.domain.pullrequest.CommentPage;
 import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
 import com.cdancy.bitbucket.rest.options.CreateComment;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 import com.google.common.collect.ImmutableMap;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
@@ -187,6 +188,31 @@ public class CommentsApiMockTest extends BaseBitbucketMockTest {
         }
     }
 
+    public void testGetPullRequestCommentsStreaming() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-comments.json"))
+                .setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        CommentsApi api = baseApi.commentsApi();
+        try {
+
+            StreamingPage<Comments> pcr = api.commentsStreaming("project", "repo", 101, "hej", null, 25);
+            assertThat(pcr).isNotNull();
+            assertThat(pcr.errors()).isEmpty();
+            assertThat(pcr.next().text()).isEqualTo("comment in diff");
+            assertThat(pcr.next().text()).isEqualTo("another commet in diff");
+            assertThat(pcr.hasNext()).isFalse();
+
+            Map<String, ?> queryParams = ImmutableMap.of("path", "hej", "limit", 25);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                        + "/projects/project/repos/repo/pull-requests/101/comments", queryParams);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
     public void testDeleteComment() throws Exception {
         MockWebServer server = mockEtcdJavaWebServer();
 
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.CommitCache;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link CommitCache} class.
+ */
+@Test(groups = "unit", testName = "CommitCacheMockTest")
+public class CommitCacheMockTest extends BaseBitbucketMockTest {
+
+    private static final String COMMIT_ID = "abcdef0123abcdef4567abcdef8987abcdef6543";
+    private static final String COMMITS_PATH = "/rest/api/" + BitbucketApiMetadata.API_VERSION
+            + "/projects/PRJ/repos/my-repo/commits/";
+
+    public void testFullIdIsServedFromCache() throws Exception {
+        assertFullIdIsServedFromCache(false);
+    }
+
+    public void testFullIdIsServedFromCacheOffHeap() throws Exception {
+        assertFullIdIsServedFromCache(true);
+    }
+
+    public void testAbbreviatedIdsAndBranchesGoToServer() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/commit.json")).setResponseCode(200));
+        }
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .commitCache(100, false).build();
+        try {
+            CommitsApi api = client.api().commitsApi();
+            api.get("PRJ", "my-repo", "abcdef0", null);
+            api.get("PRJ", "my-repo", "abcdef0", null);
+            api.get("PRJ", "my-repo", "master", null);
+            api.get("PRJ", "my-repo", "master", null);
+
+            assertThat(server.getRequestCount()).isEqualTo(4);
+            assertThat(client.commitCache().size()).isZero();
+            assertThat(client.commitCache().hitCount()).isZero();
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testErrorsAreNotCached() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/commit-error.json")).setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/commit.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .commitCache(100, false).build();
+        try {
+            assertThat(client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null).errors()).isNotEmpty();
+            assertThat(client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null).errors()).isEmpty();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testEvictsLeastRecentlyUsedBeyondSize() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/commit.json")).setResponseCode(200));
+        }
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .commitCache(1, false).build();
+        try {
+            String otherCommitId = "0123456789012345678901234567890123456789";
+            client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null);
+            client.api().commitsApi().get("PRJ", "my-repo", otherCommitId, null);
+            client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null);
+
+            assertThat(server.getRequestCount()).isEqualTo(3);
+            assertThat(client.commitCache().evictionCount()).isEqualTo(2);
+            assertThat(client.commitCache().size()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    private void assertFullIdIsServedFromCache(boolean offHeap) throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/commit.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .commitCache(offHeap ? 1024 * 1024 : 100, offHeap).build();
+        try {
+            Commit first = client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null);
+            Commit second = client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID.toUpperCase(), null);
+            assertThat(first.errors()).isEmpty();
+            assertThat(second).isEqualTo(first);
+
+            assertSent(server, "GET", COMMITS_PATH + COMMIT_ID);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            CommitCache cache = client.commitCache();
+            assertThat(cache.isOffHeap()).isEqualTo(offHeap);
+            assertThat(cache.hitCount()).isEqualTo(1);
+            assertThat(cache.missCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+}
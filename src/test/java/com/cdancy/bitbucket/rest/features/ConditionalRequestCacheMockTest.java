@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.BitbucketClientFactory;
+import com.cdancy.bitbucket.rest.config.HttpDriver;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.filters.ConditionalRequestCache;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.net.HttpHeaders;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link ConditionalRequestCache} class.
+ */
+@Test(groups = "unit", testName = "ConditionalRequestCacheMockTest")
+public class ConditionalRequestCacheMockTest extends BaseBitbucketMockTest {
+
+    private static final String REPOS_PATH = "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects/PRJ/repos/";
+
+    public void testNotModifiedIsAnsweredFromCache() throws Exception {
+        assertNotModifiedIsAnsweredFromCache(HttpDriver.URL_CONNECTION);
+    }
+
+    public void testNotModifiedIsAnsweredFromCacheOverPooledDriver() throws Exception {
+        assertNotModifiedIsAnsweredFromCache(HttpDriver.OKHTTP);
+    }
+
+    public void testNotModifiedIsAnsweredFromCacheOverJavaNetHttp() throws Exception {
+        // falls back to HttpURLConnection on JDKs without java.net.http
+        assertNotModifiedIsAnsweredFromCache(HttpDriver.JAVA_NET_HTTP);
+    }
+
+    public void testCachedResponsesAreKeptApartPerCredential() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(repository("\"v1\""));
+        server.enqueue(repository("\"v1\""));
+        BitbucketClientFactory factory = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .conditionalRequestCache(1024 * 1024).buildFactory();
+        try {
+            factory.client("team-a:secret").api().repositoryApi().get("PRJ", "my-repo");
+            factory.client("team-b:secret").api().repositoryApi().get("PRJ", "my-repo");
+
+            assertThat(server.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+            assertThat(server.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+            assertThat(factory.conditionalRequestCache().missCount()).isEqualTo(2);
+        } finally {
+            factory.close();
+            server.shutdown();
+        }
+    }
+
+    public void testEvictsLeastRecentlyUsedBeyondBudget() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(repository("\"a1\""));
+        server.enqueue(repository("\"b1\""));
+        server.enqueue(repository("\"a1\""));
+        // room for one repository only
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .conditionalRequestCache(1500).build();
+        try {
+            client.api().repositoryApi().get("PRJ", "repo-a");
+            client.api().repositoryApi().get("PRJ", "repo-b");
+            client.api().repositoryApi().get("PRJ", "repo-a");
+
+            server.takeRequest();
+            server.takeRequest();
+            RecordedRequest request = server.takeRequest();
+            assertThat(request.getPath()).isEqualTo(REPOS_PATH + "repo-a");
+            assertThat(request.getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+            ConditionalRequestCache cache = client.conditionalRequestCache();
+            assertThat(cache.evictionCount()).isEqualTo(2);
+            assertThat(cache.sizeBytes()).isPositive().isLessThanOrEqualTo(1500);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testCacheIsOffByDefault() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(repository("\"v1\""));
+        server.enqueue(repository("\"v1\""));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).build();
+        try {
+            client.api().repositoryApi().get("PRJ", "my-repo");
+            client.api().repositoryApi().get("PRJ", "my-repo");
+
+            server.takeRequest();
+            assertThat(server.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+            assertThat(client.conditionalRequestCache().missCount()).isZero();
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    private void assertNotModifiedIsAnsweredFromCache(HttpDriver httpDriver) throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(repository("\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader(HttpHeaders.ETAG, "\"v1\""));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(httpDriver).conditionalRequestCache(1024 * 1024).build();
+        try {
+            Repository first = client.api().repositoryApi().get("PRJ", "my-repo");
+            Repository second = client.api().repositoryApi().get("PRJ", "my-repo");
+            assertThat(first.errors()).isEmpty();
+            assertThat(second).isEqualTo(first);
+
+            assertThat(server.takeRequest().getHeader(HttpHeaders.IF_NONE_MATCH)).isNull();
+            RecordedRequest revalidation = server.takeRequest();
+            assertThat(revalidation.getPath()).isEqualTo(REPOS_PATH + "my-repo");
+            assertThat(revalidation.getHeader(HttpHeaders.IF_NONE_MATCH)).isEqualTo("\"v1\"");
+            ConditionalRequestCache cache = client.conditionalRequestCache();
+            assertThat(cache.hitCount()).isEqualTo(1);
+            assertThat(cache.missCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    private MockResponse repository(String etag) {
+        return new MockResponse().setBody(payloadFromResource("/repository.json")).setResponseCode(200)
+                .setHeader(HttpHeaders.ETAG, etag);
+    }
+}
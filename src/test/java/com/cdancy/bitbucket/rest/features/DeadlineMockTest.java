@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.Deadline;
+import com.cdancy.bitbucket.rest.config.HttpDriver;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
+import com.cdancy.bitbucket.rest.exception.DeadlineExceededException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.cdancy.bitbucket.rest.paging.PageFetchers;
+import com.cdancy.bitbucket.rest.paging.PagedIterable;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+/**
+ * Mock tests for the {@link Deadline} class.
+ */
+@Test(groups = "unit", testName = "DeadlineMockTest")
+public class DeadlineMockTest extends BaseBitbucketMockTest {
+
+    public void testDeadlineAbortsRequestInFlight() throws Exception {
+        assertAbortsRequestInFlight(HttpDriver.URL_CONNECTION);
+    }
+
+    public void testDeadlineAbortsRequestInFlightOverPooledDriver() throws Exception {
+        assertAbortsRequestInFlight(HttpDriver.OKHTTP);
+    }
+
+    public void testDeadlineAbortsRequestInFlightOverJavaNetHttp() throws Exception {
+        // falls back to HttpURLConnection on JDKs without java.net.http
+        assertAbortsRequestInFlight(HttpDriver.JAVA_NET_HTTP);
+    }
+
+    public void testExpiredDeadlineSendsNothing() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        final BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).build();
+        try {
+            Deadline.after(0, TimeUnit.MILLISECONDS).call(new Callable<Project>() {
+                @Override
+                public Project call() {
+                    return client.api().projectApi().get("PRJ");
+                }
+            });
+            fail("expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertThat(server.getRequestCount()).isZero();
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testCancellingAsyncCallAbortsRequest() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).build();
+        // a single worker, which only gets to the second call once the first one has been aborted
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+        try {
+            ListenableFuture<ChangePage> hanging = client.async(executor).pullRequestApi().changes("PRJ", "my-repo", 101, null, null, null);
+            server.takeRequest();
+            hanging.cancel(true);
+            try {
+                hanging.get();
+                fail("expected CancellationException");
+            } catch (CancellationException e) {
+                // expected
+            }
+
+            Project project = client.async(executor).projectApi().get("PRJ").get(10, TimeUnit.SECONDS);
+            assertThat(project.errors()).isEmpty();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testDeadlineBoundsWholeCrawl() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).build();
+        long started = System.nanoTime();
+        try {
+            Iterator<Project> projects = PagedIterable.of(PageFetchers.withDeadline(
+                    PageFetchers.projects(client.api().projectApi(), null, null),
+                    Deadline.after(1, TimeUnit.SECONDS)), 2).iterator();
+            assertThat(projects.next().key()).isEqualTo("PRJ1");
+            assertThat(projects.next().key()).isEqualTo("PRJ2");
+            try {
+                projects.next();
+                fail("expected DeadlineExceededException");
+            } catch (DeadlineExceededException e) {
+                assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started)).isLessThan(10);
+            }
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testDeadlineLeavesPooledConnectionsOfFinishedExchangesAlone() throws Exception {
+        final MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200)
+                .setBodyDelayTimeMs(500));
+        // only reached if the concurrent request was aborted and retried
+        server.enqueue(new MockResponse().setResponseCode(500));
+        final BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(HttpDriver.OKHTTP).coalesceRequests(false).build();
+        final ExecutorService other = Executors.newSingleThreadExecutor();
+        final AtomicReference<Future<Project>> concurrent = new AtomicReference<Future<Project>>();
+        final Deadline deadline = Deadline.after(10, TimeUnit.SECONDS);
+        try {
+            deadline.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    assertThat(client.api().projectApi().get("PRJ").errors()).isEmpty();
+                    assertThat(client.api().projectApi().get("PRJ").errors()).isEmpty();
+                    // goes out over the connection the two requests above have handed back to the pool
+                    concurrent.set(other.submit(new Callable<Project>() {
+                        @Override
+                        public Project call() {
+                            return client.api().projectApi().get("PRJ");
+                        }
+                    }));
+                    for (int i = 0; i < 3; i++) {
+                        server.takeRequest();
+                    }
+                    deadline.cancel();
+                    return null;
+                }
+            });
+            fail("expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            Project project = concurrent.get().get(10, TimeUnit.SECONDS);
+            assertThat(project.errors()).isEmpty();
+            assertThat(server.getRequestCount()).isEqualTo(3);
+            assertThat(client.factory().connectionStats().connectionsOpened()).isEqualTo(1);
+        } finally {
+            other.shutdownNow();
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    private void assertAbortsRequestInFlight(HttpDriver httpDriver) throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        final BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .httpDriver(httpDriver).build();
+        long started = System.nanoTime();
+        try {
+            Deadline.after(500, TimeUnit.MILLISECONDS).call(new Callable<ChangePage>() {
+                @Override
+                public ChangePage call() {
+                    return client.api().pullRequestApi().changes("PRJ", "my-repo", 101, null, null, null);
+                }
+            });
+            fail("expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            // well before the 60 second socket timeout jclouds would otherwise wait for
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started)).isLessThan(10);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+}
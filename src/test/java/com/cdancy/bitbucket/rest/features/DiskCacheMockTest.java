@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.DiskCache;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link DiskCache} class.
+ */
+@Test(groups = "unit", testName = "DiskCacheMockTest", singleThreaded = true)
+public class DiskCacheMockTest extends BaseBitbucketMockTest {
+
+    private static final String COMMIT_ID = "abcdef0123abcdef4567abcdef8987abcdef6543";
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() {
+        directory = Files.createTempDir();
+    }
+
+    /**
+     * Delete the segment and lock files along with the directory.
+     */
+    @AfterMethod(alwaysRun = true)
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        for (File file : files != null ? files : new File[0]) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    public void testValuesSurviveReopening() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 4096, 1024);
+        disk.put("one", bytes("first"));
+        disk.put("two", bytes("second"));
+        disk.put("one", bytes("first again"));
+        disk.remove("two");
+        disk.close();
+
+        disk = DiskCache.open(directory, 4096, 1024);
+        try {
+            assertThat(disk.size()).isEqualTo(1);
+            assertThat(new String(disk.get("one"), Charsets.UTF_8)).isEqualTo("first again");
+            assertThat(disk.get("two")).isNull();
+            assertThat(disk.deadBytes()).isPositive();
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testDirectoryIsLocked() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 4096, 1024);
+        try {
+            DiskCache.open(directory, 4096, 1024);
+            throw new AssertionError("expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("in use");
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testTornRecordIsIgnored() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 4096, 1024);
+        disk.put("one", bytes("first"));
+        disk.put("two", bytes("second"));
+        disk.close();
+
+        // flip the last byte of the second value, as if the write had been cut short
+        File segment = new File(directory, "segment-0.dat");
+        byte[] content = Files.toByteArray(segment);
+        int last = indexOf(content, bytes("second")) + 5;
+        content[last] = (byte) ~content[last];
+        Files.write(content, segment);
+
+        disk = DiskCache.open(directory, 4096, 1024);
+        try {
+            assertThat(disk.size()).isEqualTo(1);
+            assertThat(new String(disk.get("one"), Charsets.UTF_8)).isEqualTo("first");
+            disk.put("three", bytes("third"));
+        } finally {
+            disk.close();
+        }
+        disk = DiskCache.open(directory, 4096, 1024);
+        try {
+            assertThat(new String(disk.get("three"), Charsets.UTF_8)).isEqualTo("third");
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testOverwrittenValuesAreCompactedAway() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 2048, 512);
+        try {
+            byte[] value = new byte[100];
+            for (int i = 0; i < 40; i++) {
+                value[0] = (byte) i;
+                disk.put("key-" + (i % 3), value);
+            }
+
+            assertThat(disk.compactionCount()).isPositive();
+            assertThat(disk.diskBytes()).isLessThanOrEqualTo(2048);
+            assertThat(disk.size()).isEqualTo(3);
+            assertThat(disk.get("key-0")[0]).isEqualTo((byte) 39);
+            assertThat(disk.get("key-1")[0]).isEqualTo((byte) 37);
+            assertThat(disk.get("key-2")[0]).isEqualTo((byte) 38);
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testOldestValuesAreDroppedWhenFull() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 2048, 512);
+        try {
+            for (int i = 0; i < 40; i++) {
+                disk.put("key-" + i, new byte[100]);
+            }
+
+            assertThat(disk.diskBytes()).isLessThanOrEqualTo(2048);
+            assertThat(disk.get("key-0")).isNull();
+            assertThat(disk.get("key-39")).isNotNull();
+            assertThat(disk.put("too-large", new byte[512])).isFalse();
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testOldestValuesAreDroppedFirstAfterCompaction() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 2048, 512);
+        try {
+            // four values to a segment, so three segments' worth
+            for (int i = 0; i < 12; i++) {
+                disk.put(String.format("key-%02d", i), new byte[100]);
+            }
+            disk.compact();
+            for (int i = 12; i < 20; i++) {
+                disk.put(String.format("key-%02d", i), new byte[100]);
+            }
+
+            for (int i = 0; i < 4; i++) {
+                assertThat(disk.get(String.format("key-%02d", i))).isNull();
+            }
+            for (int i = 4; i < 20; i++) {
+                assertThat(disk.get(String.format("key-%02d", i))).isNotNull();
+            }
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testDeadBytesGoWithDroppedSegment() throws Exception {
+        DiskCache disk = DiskCache.open(directory, 2048, 512);
+        try {
+            disk.put("key-00", new byte[100]);
+            disk.put("key-00", new byte[100]);
+            assertThat(disk.deadBytes()).isPositive();
+            // fill the first segment and three more, then one more value to drop the first
+            for (int i = 1; i < 16; i++) {
+                disk.put(String.format("key-%02d", i), new byte[100]);
+            }
+
+            assertThat(disk.get("key-00")).isNull();
+            assertThat(disk.deadBytes()).isZero();
+            assertThat(disk.compactionCount()).isZero();
+        } finally {
+            disk.close();
+        }
+    }
+
+    public void testCommitIsServedFromDiskAfterRestart() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/commit.json")).setResponseCode(200));
+        DiskCache disk = DiskCache.open(directory, 1024 * 1024);
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).diskCache(disk).build();
+        Commit first;
+        try {
+            first = client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null);
+            assertThat(first.errors()).isEmpty();
+        } finally {
+            client.factory().close();
+            disk.close();
+        }
+
+        disk = DiskCache.open(directory, 1024 * 1024);
+        client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).diskCache(disk).build();
+        try {
+            Commit second = client.api().commitsApi().get("PRJ", "my-repo", COMMIT_ID, null);
+
+            assertThat(second).isEqualTo(first);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            assertThat(client.commitCache().diskHitCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            disk.close();
+            server.shutdown();
+        }
+    }
+
+    public void testPullRequestChangesAreServedFromDiskPerVersion() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-changes.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-changes.json")).setResponseCode(200));
+        DiskCache disk = DiskCache.open(directory, 1024 * 1024);
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString()).diskCache(disk).build();
+        try {
+            PullRequestApi api = client.api().pullRequestApi();
+            PullRequest pullRequest = api.get("PRJ", "my-repo", 101);
+            ChangePage first = client.pullRequestChangesCache().changes(api, client.credentials(), "PRJ", "my-repo",
+                    pullRequest, null, 12);
+            ChangePage second = client.pullRequestChangesCache().changes(api, client.credentials(), "PRJ", "my-repo",
+                    pullRequest, null, 12);
+
+            assertThat(second).isEqualTo(first);
+            assertThat(second.values().get(0).path()._toString()).isEqualTo("new/path/to/file");
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            server.takeRequest();
+            assertThat(server.takeRequest().getPath()).contains("withComments=false");
+
+            PullRequest rescoped = PullRequest.create(pullRequest.id(), pullRequest.version() + 1, pullRequest.title(),
+                    pullRequest.description(), pullRequest.state(), pullRequest.open(), pullRequest.closed(),
+                    pullRequest.createdDate(), pullRequest.updatedDate(), pullRequest.fromRef(), pullRequest.toRef(),
+                    pullRequest.locked(), pullRequest.author(), pullRequest.reviewers(), pullRequest.participants(),
+                    pullRequest.links(), pullRequest.errors());
+            client.pullRequestChangesCache().changes(api, client.credentials(), "PRJ", "my-repo", rescoped, null, 12);
+
+            assertThat(server.getRequestCount()).isEqualTo(3);
+            assertThat(client.pullRequestChangesCache().hitCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            disk.close();
+            server.shutdown();
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(Charsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] content, byte[] part) throws IOException {
+        for (int i = 0; i + part.length <= content.length; i++) {
+            int matched = 0;
+            while (matched < part.length && content[i + matched] == part[matched]) {
+                matched++;
+            }
+            if (matched == part.length) {
+                return i;
+            }
+        }
+        throw new IOException("not found");
+    }
+}
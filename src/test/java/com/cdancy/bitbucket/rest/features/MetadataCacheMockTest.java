@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.BitbucketClientFactory;
+import com.cdancy.bitbucket.rest.MetadataCache;
+import com.cdancy.bitbucket.rest.domain.branch.Branch;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link MetadataCache} class.
+ */
+@Test(groups = "unit", testName = "MetadataCacheMockTest")
+public class MetadataCacheMockTest extends BaseBitbucketMockTest {
+
+    private static final String PROJECTS_PATH = "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects/";
+    private static final String BRANCHES_PATH = "/rest/api/" + BitbucketApiMetadata.API_VERSION
+            + "/projects/PRJ/repos/my-repo/branches";
+
+    public void testLookupsAreServedFromCache() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/branch-default.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/branch-model.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .metadataCache(MetadataCache.builder().build()).build();
+        try {
+            BitbucketApi api = client.api();
+            for (int i = 0; i < 2; i++) {
+                assertThat(api.projectApi().get("PRJ").errors()).isEmpty();
+                assertThat(api.repositoryApi().get("PRJ", "my-repo").errors()).isEmpty();
+                assertThat(api.branchApi().getDefault("PRJ", "my-repo").errors()).isEmpty();
+                assertThat(api.branchApi().model("PRJ", "my-repo").errors()).isEmpty();
+            }
+
+            assertThat(server.getRequestCount()).isEqualTo(4);
+            MetadataCache cache = client.metadataCache();
+            assertThat(cache.hitCount()).isEqualTo(4);
+            assertThat(cache.missCount()).isEqualTo(4);
+            assertThat(cache.stats(MetadataCache.Resource.DEFAULT_BRANCH).hitCount()).isEqualTo(1);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testMutationsInvalidateForAllCredentials() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/branch-default.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(204));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/branch-default.json")).setResponseCode(200));
+        BitbucketClientFactory factory = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .metadataCache(MetadataCache.builder().build()).buildFactory();
+        try {
+            BitbucketApi reader = factory.client("reader:secret").api();
+            Branch before = reader.branchApi().getDefault("PRJ", "my-repo");
+            assertThat(factory.client("admin:secret").api().branchApi().updateDefault("PRJ", "my-repo", "refs/heads/develop"))
+                    .isTrue();
+            Branch after = reader.branchApi().getDefault("PRJ", "my-repo");
+            assertThat(after).isEqualTo(before);
+
+            assertSent(server, "GET", BRANCHES_PATH + "/default");
+            assertSent(server, "PUT", BRANCHES_PATH + "/default");
+            assertSent(server, "GET", BRANCHES_PATH + "/default");
+            assertThat(factory.metadataCache().hitCount()).isZero();
+        } finally {
+            factory.close();
+            server.shutdown();
+        }
+    }
+
+    public void testFailedLookupsAreNotKept() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-not-exist.json")).setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .metadataCache(MetadataCache.builder().build()).build();
+        try {
+            assertThat(client.api().projectApi().get("PRJ").errors()).isNotEmpty();
+            assertThat(client.api().projectApi().get("PRJ").errors()).isEmpty();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testEntriesExpireAndAreEvicted() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/project.json")).setResponseCode(200));
+        }
+        MetadataCache cache = MetadataCache.builder().maximumSize(1)
+                .timeToLive(MetadataCache.Resource.PROJECT, 200, TimeUnit.MILLISECONDS).build();
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .metadataCache(cache).build();
+        try {
+            client.api().projectApi().get("PRJ");
+            client.api().projectApi().get("OTHER");
+            // PRJ was evicted to make room for OTHER
+            client.api().projectApi().get("PRJ");
+            assertThat(cache.evictionCount()).isEqualTo(2);
+
+            Thread.sleep(400);
+            Project expired = client.api().projectApi().get("PRJ");
+            assertThat(expired.errors()).isEmpty();
+
+            assertThat(server.getRequestCount()).isEqualTo(4);
+            assertSent(server, "GET", PROJECTS_PATH + "PRJ");
+            assertSent(server, "GET", PROJECTS_PATH + "OTHER");
+            assertSent(server, "GET", PROJECTS_PATH + "PRJ");
+            assertSent(server, "GET", PROJECTS_PATH + "PRJ");
+            assertThat(cache.hitCount()).isZero();
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketClient;
+import com.cdancy.bitbucket.rest.NotFoundCache;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.cdancy.bitbucket.rest.options.CreateTag;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link NotFoundCache} class.
+ */
+@Test(groups = "unit", testName = "NotFoundCacheMockTest")
+public class NotFoundCacheMockTest extends BaseBitbucketMockTest {
+
+    public void testMissesAreServedFromCache() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-not-exist.json")).setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-not-exist.json")).setResponseCode(404));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .notFoundCache(new NotFoundCache()).build();
+        try {
+            BitbucketApi api = client.api();
+            for (int i = 0; i < 3; i++) {
+                Repository repository = api.repositoryApi().get("PRJ", "missing");
+                assertThat(repository.errors()).hasSize(1);
+                assertThat(repository.errors().get(0).exceptionName()).endsWith("NoSuchRepositoryException");
+                assertThat(api.tagApi().get("PRJ", "my-repo", "missing")).isNull();
+                PullRequest pullRequest = api.pullRequestApi().get("PRJ", "my-repo", 101);
+                assertThat(pullRequest.errors()).hasSize(1);
+            }
+
+            assertThat(server.getRequestCount()).isEqualTo(3);
+            assertThat(client.notFoundCache().hitCount()).isEqualTo(6);
+            assertThat(client.notFoundCache().size()).isEqualTo(3);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testFoundLookupsAreNotCached() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .notFoundCache(new NotFoundCache()).build();
+        try {
+            assertThat(client.api().repositoryApi().get("PRJ", "my-repo").errors()).isEmpty();
+            assertThat(client.api().repositoryApi().get("PRJ", "my-repo").errors()).isEmpty();
+
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(client.notFoundCache().size()).isZero();
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testCreateInvalidatesProject() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/tag.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/tag.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .notFoundCache(new NotFoundCache()).build();
+        try {
+            TagApi api = client.api().tagApi();
+            assertThat(api.get("PRJ", "my-repo", "release")).isNull();
+            assertThat(api.get("OTHER", "my-repo", "release")).isNull();
+            assertThat(api.get("PRJ", "my-repo", "release")).isNull();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+
+            api.create("PRJ", "my-repo", CreateTag.create("release", "abcdef0", null));
+
+            assertThat(api.get("PRJ", "my-repo", "release")).isNotNull();
+            assertThat(api.get("OTHER", "my-repo", "release")).isNull();
+            assertThat(server.getRequestCount()).isEqualTo(4);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+
+    public void testMissesExpire() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/tag.json")).setResponseCode(200));
+        BitbucketClient client = BitbucketClient.builder().endPoint(server.getUrl("/").toString())
+                .notFoundCache(new NotFoundCache(100, TimeUnit.MILLISECONDS, 100)).build();
+        try {
+            TagApi api = client.api().tagApi();
+            assertThat(api.get("PRJ", "my-repo", "release")).isNull();
+            Thread.sleep(200);
+            assertThat(api.get("PRJ", "my-repo", "release")).isNotNull();
+
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            client.factory().close();
+            server.shutdown();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.cdancy.bitbucket.rest.domain.project.Project;
 import com.cdancy.bitbucket.rest.domain.project.ProjectPage;
 import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
 import com.cdancy.bitbucket.rest.options.CreateProject;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 import com.google.common.collect.ImmutableMap;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
@@ -212,6 +213,31 @@ public class ProjectApiMockTest extends BaseBitbucketMockTest {
         }
     }
     
+    public void testGetProjectListStreaming() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        try (BitbucketApi baseApi = api(server.getUrl("/"))) {
+            ProjectApi api = baseApi.projectApi();
+
+            StreamingPage<Project> projectPage = api.listStreaming(null, null, 0, 2);
+
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects",
+                    ImmutableMap.of("start", 0, "limit", 2));
+
+            // attributes written ahead of the values are known before iterating
+            assertThat(projectPage.errors()).isEmpty();
+            assertThat(projectPage.isLastPage()).isFalse();
+            assertThat(projectPage.nextPageStart()).isEqualTo(2);
+
+            assertThat(projectPage.next().key()).isEqualTo("PRJ1");
+            projectPage.close();
+            assertThat(projectPage.hasNext()).isFalse();
+        } finally {
+            server.shutdown();
+        }
+    }
+
     public void testGetProjectListNonExistent() throws Exception {
         MockWebServer server = mockEtcdJavaWebServer();
 
@@ -25,7 +25,9 @@ import org.testng.annotations.Test;
 
 import com.cdancy.bitbucket.rest.BitbucketApi;
 import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
 import com.cdancy.bitbucket.rest.domain.commit.CommitPage;
+import com.cdancy.bitbucket.rest.domain.pullrequest.Change;
 import com.cdancy.bitbucket.rest.domain.pullrequest.ChangePage;
 import com.cdancy.bitbucket.rest.domain.pullrequest.MergeStatus;
 import com.cdancy.bitbucket.rest.domain.pullrequest.MinimalRepository;
@@ -35,6 +37,7 @@ import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestPage;
 import com.cdancy.bitbucket.rest.domain.pullrequest.Reference;
 import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
 import com.cdancy.bitbucket.rest.options.CreatePullRequest;
+import com.cdancy.bitbucket.rest.paging.StreamingPage;
 import com.google.common.collect.ImmutableMap;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.MockWebServer;
@@ -141,6 +144,50 @@ public class PullRequestApiMockTest extends BaseBitbucketMockTest {
         }
     }
 
+    public void testListPullRequestStreaming() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        PullRequestApi api = baseApi.pullRequestApi();
+        try {
+            StreamingPage<PullRequest> pr = api.listStreaming(project, repo, null, null, null, null, null, null, null, 10);
+            assertThat(pr).isNotNull();
+            assertThat(pr.errors()).isEmpty();
+            assertThat(pr.size()).isEqualTo(1);
+            assertThat(pr.hasNext()).isTrue();
+            assertThat(pr.next().id()).isEqualTo(101);
+            assertThat(pr.hasNext()).isFalse();
+            assertThat(pr.isLastPage()).isTrue();
+            Map<String, ?> queryParams = ImmutableMap.of("limit", 10);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests", queryParams);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testListPullRequestStreamingNonExistent() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page-error.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        PullRequestApi api = baseApi.pullRequestApi();
+        try {
+            StreamingPage<PullRequest> pr = api.listStreaming(project, repo, null, null, null, null, null, null, null, 10);
+            assertThat(pr).isNotNull();
+            assertThat(pr.errors()).isNotEmpty();
+            assertThat(pr.hasNext()).isFalse();
+            Map<String, ?> queryParams = ImmutableMap.of("limit", 10);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests", queryParams);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
     public void testDeclinePullRequest() throws Exception {
         MockWebServer server = mockEtcdJavaWebServer();
 
@@ -369,4 +416,71 @@ public class PullRequestApiMockTest extends BaseBitbucketMockTest {
             server.shutdown();
         }
     }
+
+    public void testGetPullRequestChangesStreaming() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-changes.json"))
+                .setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        PullRequestApi api = baseApi.pullRequestApi();
+        try {
+
+            StreamingPage<Change> pcr = api.changesStreaming(project, repo, 101, true, 12, null);
+            assertThat(pcr).isNotNull();
+            assertThat(pcr.errors()).isEmpty();
+            assertThat(pcr.next().path()._toString()).isEqualTo("new/path/to/file");
+            assertThat(pcr.hasNext()).isFalse();
+
+            Map<String, ?> queryParams = ImmutableMap.of("withComments", true, "limit", 12);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests/101/changes", queryParams);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testGetPullRequestCommitsStreaming() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json"))
+                .setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        PullRequestApi api = baseApi.pullRequestApi();
+        try {
+
+            StreamingPage<Commit> pcr = api.commitsStreaming(project, repo, 101, true, 1, null);
+            assertThat(pcr).isNotNull();
+            assertThat(pcr.errors()).isEmpty();
+            assertThat(pcr.values()).hasSize(1);
+            assertThat(pcr.isLastPage()).isTrue();
+
+            Map<String, ?> queryParams = ImmutableMap.of("withCounts", true, "limit", 1);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests/101/commits", queryParams);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testGetPullRequestCommitsStreamingOnError() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/commit-error.json"))
+                .setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        PullRequestApi api = baseApi.pullRequestApi();
+        try {
+
+            StreamingPage<Commit> pcr = api.commitsStreaming(project, repo, 101, true, 1, null);
+            assertThat(pcr).isNotNull();
+            assertThat(pcr.errors()).isNotEmpty();
+            assertThat(pcr.values()).isEmpty();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
 }
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.PullRequestMutationExecutor;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PullRequestMutationExecutor} class.
+ */
+@Test(groups = "unit", testName = "PullRequestMutationExecutorMockTest")
+public class PullRequestMutationExecutorMockTest extends BaseBitbucketMockTest {
+
+    public void testSerializesMutationsOfOnePullRequest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        PullRequestMutationExecutor mutations = new PullRequestMutationExecutor(executor);
+        try {
+            final CountDownLatch release = new CountDownLatch(1);
+            final AtomicInteger running = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            final List<Integer> order = Lists.newCopyOnWriteArrayList();
+            List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+            for (int i = 0; i < 20; i++) {
+                final int index = i;
+                futures.add(mutations.submit("PRJ", "my-repo", 101, new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        if (running.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        release.await(10, TimeUnit.SECONDS);
+                        order.add(index);
+                        running.decrementAndGet();
+                        return index;
+                    }
+                }));
+            }
+            assertThat(mutations.queueDepth("PRJ", "my-repo", 101)).isEqualTo(20);
+            assertThat(mutations.queuedMutations()).isEqualTo(20);
+            assertThat(mutations.activePullRequests()).isEqualTo(1);
+            assertThat(mutations.maxQueueDepth()).isEqualTo(20);
+
+            release.countDown();
+            Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+            assertThat(overlaps.get()).isZero();
+            for (int i = 0; i < 20; i++) {
+                assertThat(order.get(i)).isEqualTo(i);
+            }
+            assertThat(mutations.queueDepth("PRJ", "my-repo", 101)).isZero();
+            assertThat(mutations.queuedMutations()).isZero();
+            assertThat(mutations.activePullRequests()).isZero();
+            assertThat(mutations.completedMutations()).isEqualTo(20);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testRunsDifferentPullRequestsConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        PullRequestMutationExecutor mutations = new PullRequestMutationExecutor(executor);
+        try {
+            // each mutation only completes once both are running at the same time
+            final CountDownLatch bothRunning = new CountDownLatch(2);
+            Callable<Boolean> mutation = new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    bothRunning.countDown();
+                    return bothRunning.await(10, TimeUnit.SECONDS);
+                }
+            };
+            ListenableFuture<Boolean> first = mutations.submit("PRJ", "my-repo", 101, mutation);
+            ListenableFuture<Boolean> second = mutations.submit("PRJ", "my-repo", 102, mutation);
+            assertThat(first.get(20, TimeUnit.SECONDS)).isTrue();
+            assertThat(second.get(20, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public void testMutationsThroughApiKeepSubmissionOrder() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setResponseCode(204));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-merge.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        PullRequestMutationExecutor mutations = new PullRequestMutationExecutor(executor);
+        try {
+            ListenableFuture<Boolean> deleted = mutations.deleteComment(baseApi.commentsApi(), "PRJ", "my-repo", 101, 1, 1);
+            ListenableFuture<PullRequest> merged = mutations.merge(baseApi.pullRequestApi(), "PRJ", "my-repo", 101, 1);
+            assertThat(deleted.get(10, TimeUnit.SECONDS)).isTrue();
+            assertThat(merged.get(10, TimeUnit.SECONDS).errors()).isEmpty();
+
+            Map<String, ?> queryParams = ImmutableMap.of("version", 1);
+            assertSent(server, "DELETE", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests/101/comments/1", queryParams);
+            assertSent(server, "POST", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests/101/merge", queryParams);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.AsyncApiProxies;
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.PullRequestSnapshots;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequestSnapshot;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link PullRequestSnapshots} class.
+ */
+@Test(groups = "unit", testName = "PullRequestSnapshotsMockTest")
+public class PullRequestSnapshotsMockTest extends BaseBitbucketMockTest {
+
+    public void testFetchIssuesRequestsConcurrently() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        final CountDownLatch arrived = new CountDownLatch(5);
+        final AtomicBoolean concurrent = new AtomicBoolean(true);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // answer only once all five requests are outstanding at the same time
+                arrived.countDown();
+                if (!arrived.await(10, TimeUnit.SECONDS)) {
+                    concurrent.set(false);
+                }
+                return respond(request, false);
+            }
+        });
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(5));
+        try {
+            PullRequestSnapshot snapshot = PullRequestSnapshots.fetch(AsyncApiProxies.create(baseApi, executor),
+                    "PRJ", "my-repo", 101, "some/file.txt").get(20, TimeUnit.SECONDS);
+            assertThat(concurrent.get()).isTrue();
+            assertThat(snapshot.isComplete()).isTrue();
+            assertThat(snapshot.pullRequest().id()).isEqualTo(101);
+            assertThat(snapshot.changes().values()).isNotEmpty();
+            assertThat(snapshot.commits().values()).isNotEmpty();
+            assertThat(snapshot.mergeStatus().canMerge()).isTrue();
+            assertThat(snapshot.comments()).isNotNull();
+            assertThat(server.getRequestCount()).isEqualTo(5);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testFetchWithPartialFailure() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return respond(request, true);
+            }
+        });
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+        try {
+            PullRequestSnapshot snapshot = PullRequestSnapshots.fetch(AsyncApiProxies.create(baseApi, executor),
+                    "PRJ", "my-repo", 101, null).get(20, TimeUnit.SECONDS);
+            assertThat(snapshot.isComplete()).isFalse();
+            assertThat(snapshot.errors()).isNotEmpty();
+            assertThat(snapshot.changes().errors()).isNotEmpty();
+            assertThat(snapshot.changes().values()).isEmpty();
+            assertThat(snapshot.pullRequest().errors()).isEmpty();
+            assertThat(snapshot.pullRequest().id()).isEqualTo(101);
+            assertThat(snapshot.commits().errors()).isEmpty();
+            assertThat(snapshot.mergeStatus().errors()).isEmpty();
+            assertThat(snapshot.comments()).isNull();
+            assertThat(server.getRequestCount()).isEqualTo(4);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    private MockResponse respond(RecordedRequest request, boolean failChanges) {
+        String path = request.getPath();
+        if (path.contains("/changes")) {
+            return failChanges
+                    ? new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404)
+                    : new MockResponse().setBody(payloadFromResource("/pull-request-changes.json")).setResponseCode(200);
+        } else if (path.contains("/commits")) {
+            return new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200);
+        } else if (path.contains("/merge")) {
+            return new MockResponse().setBody(payloadFromResource("/pull-request-can-merge-succeed.json")).setResponseCode(200);
+        } else if (path.contains("/comments")) {
+            return new MockResponse().setBody(payloadFromResource("/pull-request-comments.json")).setResponseCode(200);
+        }
+        return new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.RequestCoalescer;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+/**
+ * Mock tests for the {@link RequestCoalescer} class.
+ */
+@Test(groups = "unit", testName = "RequestCoalescerMockTest")
+public class RequestCoalescerMockTest extends BaseBitbucketMockTest {
+
+    public void testIdenticalGetsInFlightAreCoalesced() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        final String body = payloadFromResource("/repository.json");
+        final CountDownLatch release = new CountDownLatch(1);
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // hold the response back until every caller has joined the request in flight
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody(body).setResponseCode(200);
+            }
+        });
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ListeningExecutorService executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(5));
+        try {
+            RequestCoalescer coalescer = new RequestCoalescer();
+            final RepositoryApi api = coalescer.wrap(baseApi, "admin:password").repositoryApi();
+
+            List<ListenableFuture<Repository>> futures = Lists.newArrayList();
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(new Callable<Repository>() {
+                    @Override
+                    public Repository call() {
+                        return api.get("PRJ", "myrepo");
+                    }
+                }));
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (coalescer.requestsCoalesced() < 4 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+
+            List<Repository> repositories = Futures.allAsList(futures).get(10, TimeUnit.SECONDS);
+            assertThat(repositories).hasSize(5);
+            for (Repository repository : repositories) {
+                assertThat(repository).isSameAs(repositories.get(0));
+                assertThat(repository.errors()).isEmpty();
+            }
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            assertThat(coalescer.requestsCoalesced()).isEqualTo(4);
+            assertThat(coalescer.requestsInFlight()).isEqualTo(0);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testCompletedRequestsAreNotShared() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-not-exist.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            RequestCoalescer coalescer = new RequestCoalescer();
+            RepositoryApi api = coalescer.wrap(baseApi, "admin:password").repositoryApi();
+
+            assertThat(api.get("PRJ", "myrepo").errors()).isEmpty();
+            assertThat(api.get("PRJ", "myrepo").errors()).isNotEmpty();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(coalescer.requestsCoalesced()).isEqualTo(0);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
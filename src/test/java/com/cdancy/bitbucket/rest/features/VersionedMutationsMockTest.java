@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.features;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.VersionedMutations;
+import com.cdancy.bitbucket.rest.domain.comment.Comments;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link VersionedMutations} class.
+ */
+@Test(groups = "unit", testName = "VersionedMutationsMockTest")
+public class VersionedMutationsMockTest extends BaseBitbucketMockTest {
+
+    private static final String PULL_REQUEST_PATH = "/rest/api/" + BitbucketApiMetadata.API_VERSION
+            + "/projects/PRJ/repos/my-repo/pull-requests/101";
+
+    public void testMergeWithCurrentVersionSendsNoGet() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-merge.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PullRequest known = knownPullRequest(server, baseApi);
+            VersionedMutations mutations = new VersionedMutations(baseApi);
+            PullRequest merged = mutations.merge("PRJ", "my-repo", known);
+            assertThat(merged.errors()).isEmpty();
+            assertThat(mutations.staleVersionRetries()).isZero();
+
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(1));
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testMergeRetriesWithReportedVersion() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-out-of-date.json")).setResponseCode(409));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-merge.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PullRequest known = knownPullRequest(server, baseApi);
+            VersionedMutations mutations = new VersionedMutations(baseApi);
+            PullRequest merged = mutations.merge("PRJ", "my-repo", known);
+            assertThat(merged.errors()).isEmpty();
+            assertThat(mutations.staleVersionRetries()).isEqualTo(1);
+
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(1));
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(2));
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testMergeRetriesWithRefetchedVersion() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-out-of-date.json")
+                .replaceFirst("\"currentVersion\": 2,", "")).setResponseCode(409));
+        server.enqueue(new MockResponse().setBody(pullRequestWithVersion(2)).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-merge.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PullRequest known = knownPullRequest(server, baseApi);
+            VersionedMutations mutations = new VersionedMutations(baseApi);
+            PullRequest merged = mutations.merge("PRJ", "my-repo", known);
+            assertThat(merged.errors()).isEmpty();
+            assertThat(mutations.staleVersionRetries()).isEqualTo(1);
+
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(1));
+            assertSent(server, "GET", PULL_REQUEST_PATH);
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(2));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testDeclineGivesUpAfterMaxAttempts() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-out-of-date.json")).setResponseCode(409));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-out-of-date.json")).setResponseCode(409));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PullRequest known = knownPullRequest(server, baseApi);
+            VersionedMutations mutations = new VersionedMutations(baseApi, 2);
+            PullRequest declined = mutations.decline("PRJ", "my-repo", known);
+            assertThat(declined.errors()).isNotEmpty();
+            assertThat(declined.errors().get(0).exceptionName()).endsWith("PullRequestOutOfDateException");
+
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/decline", version(1));
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/decline", version(2));
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testMergeFailingForOtherReasonsSendsNoGet() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(409));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PullRequest known = knownPullRequest(server, baseApi);
+            VersionedMutations mutations = new VersionedMutations(baseApi);
+            assertThat(mutations.merge("PRJ", "my-repo", known).errors()).isNotEmpty();
+            assertThat(mutations.staleVersionRetries()).isZero();
+
+            assertSent(server, "POST", PULL_REQUEST_PATH + "/merge", version(1));
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testDeleteCommentRetriesWithRefetchedVersion() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/comments.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-out-of-date.json")).setResponseCode(409));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/comments.json")
+                .replaceFirst("\"version\": 1", "\"version\": 2")).setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(204));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            Comments known = baseApi.commentsApi().get("PRJ", "my-repo", 101, 1);
+            server.takeRequest();
+            VersionedMutations mutations = new VersionedMutations(baseApi);
+            assertThat(mutations.deleteComment("PRJ", "my-repo", 101, known)).isTrue();
+            assertThat(mutations.staleVersionRetries()).isEqualTo(1);
+
+            assertSent(server, "DELETE", PULL_REQUEST_PATH + "/comments/1", version(1));
+            assertSent(server, "GET", PULL_REQUEST_PATH + "/comments/1");
+            assertSent(server, "DELETE", PULL_REQUEST_PATH + "/comments/1", version(2));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    private PullRequest knownPullRequest(MockWebServer server, BitbucketApi baseApi) throws InterruptedException {
+        PullRequest known = baseApi.pullRequestApi().get("PRJ", "my-repo", 101);
+        server.takeRequest();
+        assertThat(known.version()).isEqualTo(1);
+        return known;
+    }
+
+    private String pullRequestWithVersion(int version) {
+        return payloadFromResource("/pull-request.json").replaceFirst("\"version\": 1", "\"version\": " + version);
+    }
+
+    private static Map<String, ?> version(int version) {
+        return ImmutableMap.of("version", version);
+    }
+}
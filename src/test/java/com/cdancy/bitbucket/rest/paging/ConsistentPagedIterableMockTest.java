@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link ConsistentPagedIterable} class.
+ */
+@Test(groups = "unit", testName = "ConsistentPagedIterableMockTest")
+public class ConsistentPagedIterableMockTest extends BaseBitbucketMockTest {
+
+    final String reposPath = "/rest/api/1.0/projects/PRJ1/repos";
+
+    public void testDeDuplicatesOverlappingPages() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            ConsistentPagedIterator<Repository> it = PagedIterable.of(PageFetchers.repositories(baseApi.repositoryApi(), "PRJ1"), 2)
+                    .consistent(ConsistentPagedIterable.repositoryId(), 1).iterator();
+            List<Repository> repositories = Lists.newArrayList(it);
+            assertThat(repositories).hasSize(3);
+            assertThat(repositories.get(2).id()).isEqualTo(103);
+            assertThat(it.duplicatesSkipped()).isEqualTo(2);
+
+            assertSent(server, "GET", reposPath, ImmutableMap.of("limit", 2, "start", 0));
+            assertSent(server, "GET", reposPath, ImmutableMap.of("limit", 2, "start", 1));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testThrowsOnPageErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            ConsistentPagedIterator<Repository> it = ConsistentPagedIterable.of(PageFetchers.repositories(baseApi.repositoryApi(),
+                    "PRJ1"), 0, 2, ConsistentPagedIterable.repositoryId(), 0).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+            assertThat(it.errors()).isNotEmpty();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testTruncatesOnPageErrorsWhenAskedTo() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            ConsistentPagedIterator<Repository> it = ConsistentPagedIterable.of(PageFetchers.repositories(baseApi.repositoryApi(),
+                    "PRJ1"), 0, 2, ConsistentPagedIterable.repositoryId(), 0, true).iterator();
+            assertThat(Lists.newArrayList(it)).hasSize(2);
+            assertThat(it.errors()).isNotEmpty();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testLongHashSet() {
+        LongHashSet set = new LongHashSet();
+        for (long i = -1000; i < 1000; i++) {
+            assertThat(set.add(i * 31)).isTrue();
+        }
+        assertThat(set.size()).isEqualTo(2000);
+        assertThat(set.add(0)).isFalse();
+        assertThat(set.add(31 * 999)).isFalse();
+        assertThat(set.contains(-31 * 1000)).isTrue();
+        assertThat(set.contains(1)).isFalse();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.base.Functions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link FanOutPagedIterable} class.
+ */
+@Test(groups = "unit", testName = "FanOutPagedIterableMockTest")
+public class FanOutPagedIterableMockTest extends BaseBitbucketMockTest {
+
+    final String commitsPath = "/rest/api/1.0/projects/PRJ/repos/my-repo/pull-requests/101/commits";
+
+    public void testFanOutInOrder() throws Exception {
+        runFanOut(true);
+    }
+
+    public void testFanOutUnordered() throws Exception {
+        runFanOut(false);
+    }
+
+    private void runFanOut(boolean inOrder) throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PageFetcher<Commit> fetcher = PageFetchers.commits(baseApi.pullRequestApi(), "PRJ", "my-repo", 101, true);
+            List<Commit> commits = Lists.newArrayList(PagedIterable.of(fetcher, 1)
+                    .fanOut(executor, 2, FanOutPagedIterable.commitTotalCount(), inOrder));
+            assertThat(commits).hasSize(3);
+            assertThat(server.getRequestCount()).isEqualTo(3);
+
+            Set<String> paths = Sets.newHashSet();
+            for (int i = 0; i < 3; i++) {
+                paths.add(server.takeRequest().getPath());
+            }
+            assertThat(paths).containsOnly(commitsPath + "?withCounts=true&limit=1&start=0",
+                    commitsPath + "?withCounts=true&limit=1&start=1",
+                    commitsPath + "?withCounts=true&limit=1&start=2");
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testFallsBackToSequentialWithoutTotal() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Project> projects = Lists.newArrayList(PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .fanOut(executor, 2, Functions.<Integer> constant(null), true));
+            assertThat(projects).hasSize(5);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testThrowsOnPageErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FanOutPagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .fanOut(executor, 2, Functions.<Integer> constant(null), true).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+            assertThat(it.errors()).isNotEmpty();
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testTruncatesOnPageErrorsWhenAskedTo() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            FanOutPagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .truncateOnErrors().fanOut(executor, 2, Functions.<Integer> constant(null), true).iterator();
+            assertThat(Lists.newArrayList(it)).hasSize(2);
+            assertThat(it.errors()).isNotEmpty();
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
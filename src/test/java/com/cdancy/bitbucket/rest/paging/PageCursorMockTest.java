@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PageCursor} class.
+ */
+@Test(groups = "unit", testName = "PageCursorMockTest")
+public class PageCursorMockTest extends BaseBitbucketMockTest {
+
+    final String projectsPath = "/rest/api/1.0/projects";
+
+    public void testEncodeDecode() {
+        PageCursor cursor = PageCursor.create("project:list", ImmutableMap.of("name", "my"), 50,
+                PageCursor.create("repository:list", ImmutableMap.of("project", "PRJ1"), 25, null));
+        PageCursor decoded = PageCursor.decode(cursor.encode());
+        assertThat(decoded).isEqualTo(cursor);
+        assertThat(decoded.child().nextStart()).isEqualTo(25);
+    }
+
+    public void testResumeAfterLastValue() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PagedIterator<Project> projects = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2).iterator();
+            projects.next();
+            assertThat(projects.cursor().nextStart()).isEqualTo(1);
+            assertThat(projects.currentCursor().nextStart()).isEqualTo(0);
+            projects.next();
+            String checkpoint = projects.cursor().encode();
+
+            PageFetcher<Project> fetcher = PageFetchers.fromCursor(baseApi, PageCursor.decode(checkpoint));
+            PagedIterator<Project> resumed = PagedIterable.resume(fetcher, PageCursor.decode(checkpoint), 2).iterator();
+            assertThat(resumed.next().key()).isEqualTo("PRJ1");
+
+            assertSent(server, "GET", projectsPath, ImmutableMap.of("limit", 2, "start", 0));
+            assertSent(server, "GET", projectsPath, ImmutableMap.of("limit", 2, "start", 2));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testResumeNested() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PageCursor saved = PageCursor.create("project:list", ImmutableMap.<String, String> of(), 1,
+                    PageCursor.create("repository:list", ImmutableMap.of("project", "PRJ1"), 1, null));
+
+            PagedIterator<Project> projects = PagedIterable.resume(
+                    PageFetchers.projects(baseApi.projectApi(), null, null), saved, 2).iterator();
+            Project project = projects.next();
+            PageFetcher<Repository> fetcher = PageFetchers.repositories(baseApi.repositoryApi(), project.key());
+            assertThat(saved.child().matches(fetcher)).isTrue();
+            PagedIterator<Repository> repos = PagedIterable.resume(fetcher, saved.child(), 2).iterator();
+            repos.next();
+
+            PageCursor checkpoint = projects.currentCursor().withChild(repos.cursor());
+            assertThat(checkpoint.nextStart()).isEqualTo(1);
+            assertThat(checkpoint.child().nextStart()).isEqualTo(2);
+
+            assertSent(server, "GET", projectsPath, ImmutableMap.of("limit", 2, "start", 1));
+            assertSent(server, "GET", projectsPath + "/PRJ1/repos", ImmutableMap.of("limit", 2, "start", 1));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
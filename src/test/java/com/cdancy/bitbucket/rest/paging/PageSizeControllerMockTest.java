@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.project.ProjectPage;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PageSizeController} class.
+ */
+@Test(groups = "unit", testName = "PageSizeControllerMockTest")
+public class PageSizeControllerMockTest extends BaseBitbucketMockTest {
+
+    final String reposPath = "/rest/api/1.0/projects/PRJ1/repos";
+    final Project project = Project.create("PRJ1", 1, "Project 1", null, false, "NORMAL", null, null);
+
+    public void testAdaptedFetcherGrowsLimit() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PageSizeController controller = new PageSizeController(2, 2, 8);
+            PageFetcher<Repository> fetcher = controller.adapt(PageFetchers.repositories(baseApi.repositoryApi(), "PRJ1"));
+            List<Repository> repositories = Lists.newArrayList(PagedIterable.of(fetcher));
+            assertThat(repositories).hasSize(5);
+            assertThat(controller.limit("repository:list")).isEqualTo(4);
+
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 0, "limit", 2));
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 2, "limit", 4));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testCallerLimitCapsLearnedLimit() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PageSizeController controller = new PageSizeController(2, 2, 8);
+            PageFetcher<Repository> fetcher = controller.adapt(PageFetchers.repositories(baseApi.repositoryApi(), "PRJ1"));
+            List<Repository> repositories = Lists.newArrayList(PagedIterable.of(fetcher, 2));
+            assertThat(repositories).hasSize(5);
+            assertThat(controller.limit("repository:list")).isEqualTo(4);
+
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 0, "limit", 2));
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 2, "limit", 2));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testOffsetDerivingWalkKeepsItsLimit() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PageSizeController controller = new PageSizeController(2, 2, 8);
+            PageFetcher<Repository> fetcher = controller.adapt(PageFetchers.repositories(baseApi.repositoryApi(), "PRJ1"));
+            List<Repository> repositories = Lists.newArrayList(PagedIterable.of(fetcher)
+                    .consistent(ConsistentPagedIterable.repositoryId(), 0));
+            // both pages hold repo-1 and repo-2, which are handed out once
+            assertThat(repositories).hasSize(3);
+            // the walk still teaches the controller, it just does not act on it
+            assertThat(controller.limit("repository:list")).isEqualTo(4);
+
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 0, "limit", 2));
+            assertSent(server, "GET", reposPath, ImmutableMap.of("start", 2, "limit", 2));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testShrinksOnSlowPage() {
+        PageSizeController controller = new PageSizeController(10, 40, 100);
+        controller.onPage("project:list", 40, page(40, false), TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(controller.limit("project:list")).isEqualTo(80);
+
+        controller.onPage("project:list", 80, page(80, false), TimeUnit.MILLISECONDS.toNanos(1000));
+        assertThat(controller.limit("project:list")).isEqualTo(40);
+        assertThat(controller.limit("repository:list")).isEqualTo(40);
+    }
+
+    public void testServerCapBecomesCeiling() {
+        PageSizeController controller = new PageSizeController(10, 40, 100);
+        controller.onPage("project:list", 40, page(30, false), TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(controller.limit("project:list")).isEqualTo(30);
+
+        controller.onPage("project:list", 30, page(30, false), TimeUnit.MILLISECONDS.toNanos(10));
+        assertThat(controller.limit("project:list")).isEqualTo(30);
+    }
+
+    public void testShrinksOnTimeout() {
+        PageSizeController controller = new PageSizeController(10, 40, 100);
+        controller.onTimeout("project:list", 40);
+        assertThat(controller.limit("project:list")).isEqualTo(20);
+        controller.onTimeout("project:list", 20);
+        controller.onTimeout("project:list", 10);
+        assertThat(controller.limit("project:list")).isEqualTo(10);
+    }
+
+    private ProjectPage page(int size, boolean isLastPage) {
+        return ProjectPage.create(0, size, size, size, isLastPage, Collections.nCopies(size, project), null);
+    }
+}
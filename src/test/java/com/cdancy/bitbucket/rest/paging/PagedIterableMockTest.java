@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.BitbucketApiMetadata;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.domain.repository.Repository;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PagedIterable} class.
+ */
+@Test(groups = "unit", testName = "PagedIterableMockTest")
+public class PagedIterableMockTest extends BaseBitbucketMockTest {
+
+    public void testIterateAllPages() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PagedIterable<Project> projects = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2);
+            List<Project> found = Lists.newArrayList(projects);
+            assertThat(found).hasSize(5);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+
+            Map<String, ?> firstPage = ImmutableMap.of("start", 0, "limit", 2);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects", firstPage);
+            Map<String, ?> secondPage = ImmutableMap.of("start", 2, "limit", 2);
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION + "/projects", secondPage);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testNextPageFetchedLazily() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2).iterator();
+            assertThat(server.getRequestCount()).isEqualTo(0);
+            it.next();
+            it.next();
+            assertThat(server.getRequestCount()).isEqualTo(1);
+            it.next();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testIterationThrowsOnError() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+            assertThat(it.errors()).isNotEmpty();
+            assertThat(it.hasNext()).isFalse();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testIterationStopsOnErrorWhenTruncating() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page-error.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PagedIterator<PullRequest> it = PagedIterable.of(PageFetchers.pullRequests(baseApi.pullRequestApi(),
+                    "PRJ", "my-repo", null, null, null, null, null, null)).truncateOnErrors().iterator();
+            assertThat(it.hasNext()).isFalse();
+            assertThat(it.errors()).isNotEmpty();
+            assertSent(server, "GET", "/rest/api/" + BitbucketApiMetadata.API_VERSION
+                    + "/projects/PRJ/repos/my-repo/pull-requests", ImmutableMap.of("start", 0));
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testReadAheadThrowsOnError() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .readAhead(executor, 1, 2).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testConsistentThrowsOnError() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            ConsistentPagedIterator<Repository> it = PagedIterable.of(PageFetchers.repositories(baseApi.repositoryApi(), "PRJ1"), 2)
+                    .consistent(ConsistentPagedIterable.repositoryId(), 0).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testViewsKeepTruncatingOnErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/repository-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> projects = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .truncateOnErrors().readAhead(executor, 1, 2).iterator();
+            assertThat(Lists.newArrayList(projects)).hasSize(2);
+            assertThat(projects.errors()).isNotEmpty();
+
+            ConsistentPagedIterator<Repository> repositories = PagedIterable.of(PageFetchers.repositories(baseApi.repositoryApi(),
+                    "PRJ1"), 2).truncateOnErrors().consistent(ConsistentPagedIterable.repositoryId(), 0).iterator();
+            assertThat(Lists.newArrayList(repositories)).hasSize(2);
+            assertThat(repositories.errors()).isNotEmpty();
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testIterateStreamingPages() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            PageFetcher<Project> fetcher = PageFetchers.streaming(baseApi, PageFetchers.projects(baseApi.projectApi(), null, null));
+            assertThat(fetcher.endpoint()).isEqualTo("project:list");
+            assertThat(fetcher.fetch(0, 2)).isInstanceOf(StreamingPage.class);
+
+            List<Project> found = Lists.newArrayList(PagedIterable.of(fetcher, 2, 2));
+            assertThat(found).hasSize(3);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PagedPublisher} class.
+ */
+@Test(groups = "unit", testName = "PagedPublisherMockTest")
+public class PagedPublisherMockTest extends BaseBitbucketMockTest {
+
+    public void testDemandDrivesPageRequests() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            projects(baseApi).subscribe(subscriber);
+            assertThat(server.getRequestCount()).isEqualTo(0);
+
+            subscriber.subscription.request(2);
+            assertThat(subscriber.values).hasSize(2);
+            assertThat(server.getRequestCount()).isEqualTo(1);
+
+            subscriber.subscription.request(1);
+            assertThat(subscriber.values).hasSize(3);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+            assertThat(subscriber.completed).isFalse();
+
+            subscriber.subscription.request(Long.MAX_VALUE);
+            assertThat(subscriber.values).hasSize(5);
+            assertThat(subscriber.completed).isTrue();
+            assertThat(subscriber.error).isNull();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testCompletesWhenDemandMatchesTotal() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            projects(baseApi).subscribe(subscriber);
+            subscriber.subscription.request(5);
+            assertThat(subscriber.values).hasSize(5);
+            assertThat(subscriber.completed).isTrue();
+            assertThat(subscriber.error).isNull();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testSignalsPageErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            projects(baseApi).subscribe(subscriber);
+            subscriber.subscription.request(1);
+            assertThat(subscriber.values).isEmpty();
+            assertThat(subscriber.error).isInstanceOf(PageErrorsException.class);
+            assertThat(subscriber.completed).isFalse();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testCompletesOnPageErrorsWhenTruncating() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            RecordingSubscriber subscriber = new RecordingSubscriber();
+            PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2).truncateOnErrors()
+                    .publisher(MoreExecutors.directExecutor()).subscribe(subscriber);
+            subscriber.subscription.request(1);
+            assertThat(subscriber.values).isEmpty();
+            assertThat(subscriber.error).isNull();
+            assertThat(subscriber.completed).isTrue();
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    private PagedPublisher<Project> projects(BitbucketApi baseApi) {
+        return PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                .publisher(MoreExecutors.directExecutor());
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Project> {
+
+        final List<Project> values = Lists.newArrayList();
+        Subscription subscription;
+        Throwable error;
+        boolean completed;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Project project) {
+            values.add(project);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.commit.Commit;
+import com.cdancy.bitbucket.rest.domain.common.Page;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link ParallelPages} class.
+ */
+@Test(groups = "unit", testName = "ParallelPagesMockTest")
+public class ParallelPagesMockTest extends BaseBitbucketMockTest {
+
+    public void testTransformWithKnownTotal() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            PageFetcher<Commit> fetcher = PageFetchers.commits(baseApi.pullRequestApi(), "PRJ", "my-repo", 101, true);
+            List<String> ids = PagedIterable.of(fetcher, 1).parallel(FanOutPagedIterable.commitTotalCount())
+                    .transform(pool, new Function<Commit, String>() {
+                        @Override
+                        public String apply(Commit input) {
+                            return input.id();
+                        }
+                    });
+            assertThat(ids).hasSize(3);
+            assertThat(server.getRequestCount()).isEqualTo(3);
+        } finally {
+            pool.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testTransformKeepsNullResults() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            PageFetcher<Commit> fetcher = PageFetchers.commits(baseApi.pullRequestApi(), "PRJ", "my-repo", 101, true);
+            List<String> messages = PagedIterable.of(fetcher, 1).parallel(FanOutPagedIterable.commitTotalCount())
+                    .transform(pool, Functions.<String> constant(null));
+            assertThat(messages).hasSize(3).containsOnly((String) null);
+        } finally {
+            pool.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testCapsPagesInFlightAtParallelism() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits-truncated.json")).setResponseCode(200));
+        for (int i = 1; i < 12; i++) {
+            server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-commits.json")).setResponseCode(200));
+        }
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            final PageFetcher<Commit> delegate = PageFetchers.commits(baseApi.pullRequestApi(), "PRJ", "my-repo", 101, true);
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger maxInFlight = new AtomicInteger();
+            PageFetcher<Commit> fetcher = new PageFetcher<Commit>() {
+                @Override
+                public String endpoint() {
+                    return delegate.endpoint();
+                }
+
+                @Override
+                public Map<String, String> args() {
+                    return delegate.args();
+                }
+
+                @Override
+                public Page<Commit> fetch(int start, Integer limit) {
+                    int current = inFlight.incrementAndGet();
+                    int max = maxInFlight.get();
+                    while (current > max && !maxInFlight.compareAndSet(max, current)) {
+                        max = maxInFlight.get();
+                    }
+                    try {
+                        Thread.sleep(50);
+                        return delegate.fetch(start, limit);
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                }
+            };
+            List<Commit> commits = ParallelPages.of(fetcher, 0, 1, Functions.<Integer> constant(12))
+                    .filter(pool, Predicates.<Commit> alwaysTrue());
+            assertThat(commits).hasSize(12);
+            assertThat(server.getRequestCount()).isEqualTo(12);
+            assertThat(maxInFlight.get()).isLessThanOrEqualTo(pool.getParallelism());
+        } finally {
+            pool.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testFilterWithoutTotal() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<Project> projects = ParallelPages.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .filter(pool, new Predicate<Project>() {
+                        @Override
+                        public boolean apply(Project input) {
+                            return !input.key().equals("PRJ1");
+                        }
+                    });
+            assertThat(projects).hasSize(3);
+            assertThat(projects.get(0).key()).isEqualTo("PRJ2");
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            pool.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testThrowsOnPageErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelPages.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .filter(pool, new Predicate<Project>() {
+                        @Override
+                        public boolean apply(Project input) {
+                            return true;
+                        }
+                    });
+            fail("Expected PageErrorsException");
+        } catch (PageErrorsException e) {
+            assertThat(e.errors()).isNotEmpty();
+        } finally {
+            pool.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.testng.Assert.fail;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.project.Project;
+import com.cdancy.bitbucket.rest.exception.PageErrorsException;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link PrefetchingPagedIterable} class.
+ */
+@Test(groups = "unit", testName = "PrefetchingPagedIterableMockTest")
+public class PrefetchingPagedIterableMockTest extends BaseBitbucketMockTest {
+
+    public void testPagesRequestedAheadOfConsumer() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .readAhead(executor, 2, 3).iterator();
+            it.next();
+
+            // both speculative pages are requested while the first page is still being consumed
+            Set<String> paths = Sets.newHashSet();
+            for (int i = 0; i < 3; i++) {
+                paths.add(server.takeRequest().getPath());
+            }
+            assertThat(paths).contains("/rest/api/1.0/projects?start=2&limit=2", "/rest/api/1.0/projects?start=4&limit=2");
+
+            List<Project> rest = Lists.newArrayList(it);
+            assertThat(rest).hasSize(4);
+            assertThat(it.pendingPages()).isEqualTo(0);
+            assertThat(it.errors()).isEmpty();
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testMaxBufferedPagesCapsReadAhead() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-full.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> it = PagedIterable.of(PageFetchers.projects(baseApi.projectApi(), null, null), 2)
+                    .readAhead(executor, 5, 2).iterator();
+            it.next();
+            assertThat(it.pendingPages()).isEqualTo(1);
+
+            assertThat(Lists.newArrayList(it)).hasSize(4);
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testThrowsOnPageErrors() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> it = PrefetchingPagedIterable.of(PageFetchers.projects(baseApi.projectApi(),
+                    null, null), 0, 2, executor, 1, 2).iterator();
+            it.next();
+            it.next();
+            try {
+                it.hasNext();
+                fail("Expected PageErrorsException");
+            } catch (PageErrorsException e) {
+                assertThat(e.errors()).isNotEmpty();
+            }
+            assertThat(it.errors()).isNotEmpty();
+            assertThat(it.pendingPages()).isEqualTo(0);
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testTruncatesOnPageErrorsWhenAskedTo() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/project-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/errors.json")).setResponseCode(404));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrefetchingPagedIterator<Project> it = PrefetchingPagedIterable.of(PageFetchers.projects(baseApi.projectApi(),
+                    null, null), 0, 2, executor, 1, 2, true).iterator();
+            assertThat(Lists.newArrayList(it)).hasSize(2);
+            assertThat(it.errors()).isNotEmpty();
+        } finally {
+            executor.shutdownNow();
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cdancy.bitbucket.rest.paging;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import com.cdancy.bitbucket.rest.BitbucketApi;
+import com.cdancy.bitbucket.rest.domain.pullrequest.PullRequest;
+import com.cdancy.bitbucket.rest.internal.BaseBitbucketMockTest;
+import com.google.common.collect.Lists;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+/**
+ * Mock tests for the {@link TakeWhilePagedIterable} class.
+ */
+@Test(groups = "unit", testName = "TakeWhilePagedIterableMockTest")
+public class TakeWhilePagedIterableMockTest extends BaseBitbucketMockTest {
+
+    public void testStopsAtWatermark() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            TakeWhilePagedIterator<PullRequest> it = pullRequests(baseApi)
+                    .takeWhile(TakeWhilePagedIterable.updatedSince(250)).iterator();
+            List<PullRequest> prs = Lists.newArrayList(it);
+            assertThat(prs).hasSize(1);
+            assertThat(prs.get(0).id()).isEqualTo(103);
+            assertThat(it.stoppedByPredicate()).isTrue();
+            assertThat(server.getRequestCount()).isEqualTo(1);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    public void testRunsOutOfPages() throws Exception {
+        MockWebServer server = mockEtcdJavaWebServer();
+
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page-truncated.json")).setResponseCode(200));
+        server.enqueue(new MockResponse().setBody(payloadFromResource("/pull-request-page.json")).setResponseCode(200));
+        BitbucketApi baseApi = api(server.getUrl("/"));
+        try {
+            TakeWhilePagedIterator<PullRequest> it = pullRequests(baseApi)
+                    .takeWhile(TakeWhilePagedIterable.updatedSince(100)).iterator();
+            List<PullRequest> prs = Lists.newArrayList(it);
+            assertThat(prs).hasSize(3);
+            assertThat(it.stoppedByPredicate()).isFalse();
+            assertThat(server.getRequestCount()).isEqualTo(2);
+        } finally {
+            baseApi.close();
+            server.shutdown();
+        }
+    }
+
+    private PagedIterable<PullRequest> pullRequests(BitbucketApi baseApi) {
+        return PagedIterable.of(PageFetchers.pullRequests(baseApi.pullRequestApi(), "PRJ", "my-repo",
+                null, null, "ALL", "NEWEST", null, null), 2);
+    }
+}